@@ -0,0 +1,168 @@
+import bench.MapOps;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiConsumer;
+
+/**
+ * The maps that the benchmarks compare, behind the MapOps interface.
+ */
+public class BenchMaps {
+
+  /**
+   * Build the map named by impl: "SkipList", "UnrolledSkipList", "ConcurrentSkipList", "TreeMap"
+   * or "ConcurrentSkipListMap". The skip lists' node heights are seeded, so every fork builds
+   * the same list.
+   */
+  public static MapOps create(String impl) {
+    switch (impl) {
+      case "SkipList":
+        return new SkipListOps(new SkipList<Integer, Integer>((i, j) -> Integer.compare(i, j),
+            LevelGenerator.seeded(0.5, 42)));
+      case "UnrolledSkipList":
+        return new SimpleMapOps(new UnrolledSkipList<Integer, Integer>(
+            (i, j) -> Integer.compare(i, j), LevelGenerator.seeded(0.5, 42),
+            UnrolledSkipList.DEFAULT_CHUNK_SIZE));
+      case "ConcurrentSkipList":
+        return new SimpleMapOps(
+            new ConcurrentSkipList<Integer, Integer>((i, j) -> Integer.compare(i, j)));
+      case "TreeMap":
+        return new JdkMapOps(new TreeMap<Integer, Integer>());
+      case "ConcurrentSkipListMap":
+        return new JdkMapOps(new ConcurrentSkipListMap<Integer, Integer>());
+      default:
+        throw new IllegalArgumentException("Unknown map " + impl);
+    } // switch
+  } // create(String)
+
+  /**
+   * Our own maps.
+   */
+  static class SimpleMapOps implements MapOps {
+    final SimpleMap<Integer, Integer> map;
+
+    SimpleMapOps(SimpleMap<Integer, Integer> map) {
+      this.map = map;
+    } // SimpleMapOps(SimpleMap)
+
+    @Override
+    public Object set(Integer key, Integer value) {
+      return map.set(key, value);
+    } // set(Integer, Integer)
+
+    @Override
+    public Object get(Integer key) {
+      // A miss is reported by an exception, and its cost is part of what we measure
+      try {
+        return map.get(key);
+      } catch (IndexOutOfBoundsException e) {
+        return null;
+      } // try/catch
+    } // get(Integer)
+
+    @Override
+    public boolean containsKey(Integer key) {
+      return map.containsKey(key);
+    } // containsKey(Integer)
+
+    @Override
+    public Object remove(Integer key) {
+      return map.remove(key);
+    } // remove(Integer)
+
+    @Override
+    public Object increment(Integer key) {
+      // A get and a set, each searching from the top
+      Object old = get(key);
+      return map.set(key, (old == null) ? 1 : (Integer) old + 1);
+    } // increment(Integer)
+
+    @Override
+    public long iterate() {
+      long sum = 0;
+      for (Iterator<Integer> it = map.keys(); it.hasNext();) {
+        sum += it.next();
+      } // for
+      return sum;
+    } // iterate()
+
+    @Override
+    public void forEach(BiConsumer<Integer, Integer> action) {
+      map.forEach(action);
+    } // forEach(BiConsumer)
+  } // class SimpleMapOps
+
+  /**
+   * A SkipList, which can miss without an exception and update in one search.
+   */
+  static class SkipListOps extends SimpleMapOps {
+    final SkipList<Integer, Integer> list;
+
+    SkipListOps(SkipList<Integer, Integer> list) {
+      super(list);
+      this.list = list;
+    } // SkipListOps(SkipList)
+
+    @Override
+    public Object find(Integer key) {
+      return list.find(key);
+    } // find(Integer)
+
+    @Override
+    public Object increment(Integer key) {
+      return list.merge(key, 1, Integer::sum);
+    } // increment(Integer)
+  } // class SkipListOps
+
+  /**
+   * The JDK's sorted maps, for comparison.
+   */
+  static class JdkMapOps implements MapOps {
+    final Map<Integer, Integer> map;
+
+    JdkMapOps(Map<Integer, Integer> map) {
+      this.map = map;
+    } // JdkMapOps(Map)
+
+    @Override
+    public Object set(Integer key, Integer value) {
+      return map.put(key, value);
+    } // set(Integer, Integer)
+
+    @Override
+    public Object get(Integer key) {
+      return map.get(key);
+    } // get(Integer)
+
+    @Override
+    public boolean containsKey(Integer key) {
+      return map.containsKey(key);
+    } // containsKey(Integer)
+
+    @Override
+    public Object remove(Integer key) {
+      return map.remove(key);
+    } // remove(Integer)
+
+    @Override
+    public Object increment(Integer key) {
+      return map.merge(key, 1, Integer::sum);
+    } // increment(Integer)
+
+    @Override
+    public long iterate() {
+      long sum = 0;
+      for (Integer key : map.keySet()) {
+        sum += key;
+      } // for
+      return sum;
+    } // iterate()
+
+    @Override
+    public void forEach(BiConsumer<Integer, Integer> action) {
+      map.forEach(action);
+    } // forEach(BiConsumer)
+  } // class JdkMapOps
+
+} // class BenchMaps
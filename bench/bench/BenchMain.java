@@ -0,0 +1,26 @@
+package bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks, taking the usual JMH command-line options, with the GC profiler turned on
+ * so that every result also reports allocation (bytes/op) and GC counts.
+ */
+public class BenchMain {
+
+  public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+    CommandLineOptions cmd = new CommandLineOptions(args);
+    ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd);
+    if (cmd.getProfilers().isEmpty()) {
+      options.addProfiler(GCProfiler.class);
+    } // if
+    new Runner(options.build()).run();
+  } // main(String[])
+
+} // class BenchMain
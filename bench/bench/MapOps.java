@@ -0,0 +1,67 @@
+package bench;
+
+import java.util.function.BiConsumer;
+
+/**
+ * The map operations that the benchmarks measure. The implementations live in the default
+ * package (next to SkipList), in BenchMaps, since JMH benchmarks cannot be in the default
+ * package and classes in a named package cannot refer to it.
+ */
+public interface MapOps {
+
+  /**
+   * Set the value associated with key.
+   */
+  Object set(Integer key, Integer value);
+
+  /**
+   * Get the value associated with key, or null if there is none.
+   */
+  Object get(Integer key);
+
+  /**
+   * Get the value associated with key, or null if there is none, by the cheapest way the map
+   * offers to miss. By default, the same as get.
+   */
+  default Object find(Integer key) {
+    return get(key);
+  } // find(Integer)
+
+  /**
+   * Determine if a key appears in the map.
+   */
+  boolean containsKey(Integer key);
+
+  /**
+   * Remove the value with the given key.
+   */
+  Object remove(Integer key);
+
+  /**
+   * Add one to the value associated with key (or set it to 1), as a counter would.
+   */
+  Object increment(Integer key);
+
+  /**
+   * Walk all of the keys with an iterator, returning something that depends on each of them.
+   */
+  long iterate();
+
+  /**
+   * Apply a function to each key/value pair.
+   */
+  void forEach(BiConsumer<Integer, Integer> action);
+
+  /**
+   * Build the map named by impl, through BenchMaps.create.
+   */
+  static MapOps create(String impl) {
+    try {
+      return (MapOps) Class.forName("BenchMaps").getMethod("create", String.class)
+          .invoke(null, impl);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Cannot create " + impl, e);
+    } // try/catch
+  } // create(String)
+
+} // interface MapOps
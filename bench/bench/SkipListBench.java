@@ -0,0 +1,186 @@
+package bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Microbenchmarks of the basic map operations on a map holding size entries. The map holds the
+ * even keys 0, 2, ..., 2 * (size - 1); hits look up random even keys, and misses random odd ones.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class SkipListBench {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * How many random keys we cycle through (a power of two, so we can mask).
+   */
+  static final int PROBES = 1 << 16;
+
+  // +------------+--------------------------------------------------
+  // | Parameters |
+  // +------------+
+
+  @Param({"SkipList", "UnrolledSkipList", "ConcurrentSkipList", "TreeMap", "ConcurrentSkipListMap"})
+  public String impl;
+
+  @Param({"100", "10000", "1000000", "10000000"})
+  public int size;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  MapOps map;
+
+  /**
+   * Keys that are in the map, in random order.
+   */
+  Integer[] hits;
+
+  /**
+   * Keys that are not in the map, in random order.
+   */
+  Integer[] misses;
+
+  /**
+   * Which probe to use next.
+   */
+  int cursor;
+
+  // +-------+-------------------------------------------------------
+  // | Setup |
+  // +-------+
+
+  @Setup(Level.Trial)
+  public void setup() {
+    Random random = new Random(42);
+    map = MapOps.create(impl);
+    int[] order = new int[size];
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+    } // for
+    for (int i = size - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int temp = order[i];
+      order[i] = order[j];
+      order[j] = temp;
+    } // for
+    for (int i = 0; i < size; i++) {
+      map.set(2 * order[i], order[i]);
+    } // for
+    hits = new Integer[PROBES];
+    misses = new Integer[PROBES];
+    for (int i = 0; i < PROBES; i++) {
+      hits[i] = 2 * random.nextInt(size);
+      misses[i] = 2 * random.nextInt(size) + 1;
+    } // for
+  } // setup()
+
+  int next() {
+    cursor = (cursor + 1) & (PROBES - 1);
+    return cursor;
+  } // next()
+
+  // +------------+--------------------------------------------------
+  // | Benchmarks |
+  // +------------+
+
+  @Benchmark
+  public Object getHit() {
+    return map.get(hits[next()]);
+  } // getHit()
+
+  @Benchmark
+  public Object getMiss() {
+    return map.get(misses[next()]);
+  } // getMiss()
+
+  @Benchmark
+  public Object findHit() {
+    return map.find(hits[next()]);
+  } // findHit()
+
+  @Benchmark
+  public Object findMiss() {
+    return map.find(misses[next()]);
+  } // findMiss()
+
+  @Benchmark
+  public boolean containsKeyHit() {
+    return map.containsKey(hits[next()]);
+  } // containsKeyHit()
+
+  @Benchmark
+  public boolean containsKeyMiss() {
+    return map.containsKey(misses[next()]);
+  } // containsKeyMiss()
+
+  /**
+   * Set a key that is already there.
+   */
+  @Benchmark
+  public Object setExisting() {
+    Integer key = hits[next()];
+    return map.set(key, key);
+  } // setExisting()
+
+  /**
+   * Insert a new key and remove it again, so the map keeps its size.
+   */
+  @Benchmark
+  public Object setThenRemove() {
+    Integer key = misses[next()];
+    map.set(key, key);
+    return map.remove(key);
+  } // setThenRemove()
+
+  /**
+   * Remove a key and put it back, so the map keeps its size.
+   */
+  @Benchmark
+  public Object removeThenSet() {
+    Integer key = hits[next()];
+    map.remove(key);
+    return map.set(key, key);
+  } // removeThenSet()
+
+  /**
+   * Add one to the value of a key that is already there: a read-modify-write.
+   */
+  @Benchmark
+  public Object incrementExisting() {
+    return map.increment(hits[next()]);
+  } // incrementExisting()
+
+  @Benchmark
+  public long iterateKeys() {
+    return map.iterate();
+  } // iterateKeys()
+
+  @Benchmark
+  public void forEach(Blackhole bh) {
+    map.forEach((key, value) -> bh.consume(value));
+  } // forEach(Blackhole)
+
+} // class SkipListBench
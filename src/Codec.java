@@ -0,0 +1,70 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Turns keys or values into bytes and back, for the logs and files that hold skip lists.
+ */
+public interface Codec<T> {
+
+  /**
+   * Write one value.
+   */
+  public void write(T value, DataOutput out) throws IOException;
+
+  /**
+   * Read one value, as written by write.
+   */
+  public T read(DataInput in) throws IOException;
+
+  /**
+   * Integers, as four bytes.
+   */
+  public static final Codec<Integer> INTEGER = new Codec<Integer>() {
+    @Override
+    public void write(Integer value, DataOutput out) throws IOException {
+      out.writeInt(value);
+    } // write(Integer, DataOutput)
+
+    @Override
+    public Integer read(DataInput in) throws IOException {
+      return in.readInt();
+    } // read(DataInput)
+  };
+
+  /**
+   * Longs, as eight bytes.
+   */
+  public static final Codec<Long> LONG = new Codec<Long>() {
+    @Override
+    public void write(Long value, DataOutput out) throws IOException {
+      out.writeLong(value);
+    } // write(Long, DataOutput)
+
+    @Override
+    public Long read(DataInput in) throws IOException {
+      return in.readLong();
+    } // read(DataInput)
+  };
+
+  /**
+   * Strings, as a length and then UTF-8 bytes (so, unlike writeUTF, of any length).
+   */
+  public static final Codec<String> STRING = new Codec<String>() {
+    @Override
+    public void write(String value, DataOutput out) throws IOException {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    } // write(String, DataOutput)
+
+    @Override
+    public String read(DataInput in) throws IOException {
+      byte[] bytes = new byte[in.readInt()];
+      in.readFully(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    } // read(DataInput)
+  };
+
+} // interface Codec
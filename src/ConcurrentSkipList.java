@@ -0,0 +1,535 @@
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicMarkableReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * A lock-free implementation of skip lists that may be shared by many threads.
+ *
+ * Each level link is an AtomicMarkableReference, updated by compare-and-set. A node is removed
+ * in two steps: remove first claims its value (setting it to null, which is the point at which
+ * the removal takes effect), then marks the node's links from the top level down. Any thread
+ * that later walks past a marked link snips the node out. get never writes and never retries,
+ * so it is wait-free. Iteration is weakly consistent: it reflects some of the updates made while
+ * it runs, and never throws ConcurrentModificationException.
+ */
+public class ConcurrentSkipList<K, V> implements SimpleMap<K, V> {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The maximum height of the skip list.
+   */
+  static final int MAX_HEIGHT = 32;
+
+  @SuppressWarnings("rawtypes")
+  static final AtomicIntegerFieldUpdater<ConcurrentSkipList> TOP_LEVEL =
+      AtomicIntegerFieldUpdater.newUpdater(ConcurrentSkipList.class, "topLevel");
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * A sentinel node that comes before every other node.
+   */
+  final CSLNode<K, V> head;
+
+  /**
+   * The highest level any node has been linked into, where searches start. It is raised before
+   * a node is linked above it, and never lowered.
+   */
+  volatile int topLevel;
+
+  /**
+   * The comparator used to determine the ordering in the list.
+   */
+  final Comparator<K> comparator;
+
+  /**
+   * The number of values in the list.
+   */
+  final LongAdder size;
+
+  /**
+   * Each thread's preds and succs arrays for set and remove, so that they need not allocate
+   * new ones on every call.
+   */
+  final ThreadLocal<CSLNode<K, V>[][]> scratch;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new skip list that orders values using the specified comparator.
+   */
+  public ConcurrentSkipList(Comparator<K> comparator) {
+    this.head = new CSLNode<K, V>(null, null, MAX_HEIGHT);
+    this.comparator = comparator;
+    this.size = new LongAdder();
+    this.scratch = ThreadLocal.withInitial(() -> newNodeArrays());
+  } // ConcurrentSkipList(Comparator<K>)
+
+  /**
+   * Create a new skip list that orders values using a not-very-clever default comparator.
+   */
+  public ConcurrentSkipList() {
+    this((k1, k2) -> k1.toString().compareTo(k2.toString()));
+  } // ConcurrentSkipList()
+
+  // +-------------------+-------------------------------------------
+  // | SimpleMap methods |
+  // +-------------------+
+
+  @Override
+  public V set(K key, V value) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    } // if
+    CSLNode<K, V>[][] arrays = scratch.get();
+    CSLNode<K, V>[] preds = arrays[0];
+    CSLNode<K, V>[] succs = arrays[1];
+    int top = randomHeight();
+    while (true) {
+      if (find(key, preds, succs, top)) {
+        // Replace the value, unless a remove claimed the node first
+        CSLNode<K, V> node = succs[0];
+        V old = node.value;
+        if (old == null) {
+          // Finish that removal rather than wait for its thread to, so that find snips the node
+          // out and the next round inserts afresh
+          mark(node);
+        } else if (node.casValue(old, value)) {
+          return old;
+        } // if/else
+        continue;
+      } // if
+
+      CSLNode<K, V> node = new CSLNode<K, V>(key, value, top);
+      for (int i = 0; i < top; i++) {
+        node.next[i].set(succs[i], false);
+      } // for
+      // Linking level 0 is the point at which the insertion takes effect
+      if (!preds[0].next[0].compareAndSet(succs[0], node, false, false)) {
+        continue;
+      } // if
+      size.increment();
+      raiseTopLevel(top - 1);
+      linkUpperLevels(node, preds, succs);
+      return null;
+    } // while
+  } // set(K,V)
+
+  @Override
+  public V get(K key) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    } // if
+    V value = find(key);
+    if (value == null) {
+      throw new IndexOutOfBoundsException("OutOfBounds");
+    } // if
+    return value;
+  } // get(K)
+
+  @Override
+  public int size() {
+    return (int) size.sum();
+  } // size()
+
+  @Override
+  public boolean containsKey(K key) {
+    return key != null && find(key) != null;
+  } // containsKey(K)
+
+  @Override
+  public V remove(K key) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    } // if
+    CSLNode<K, V>[][] arrays = scratch.get();
+    CSLNode<K, V>[] preds = arrays[0];
+    CSLNode<K, V>[] succs = arrays[1];
+    if (!find(key, preds, succs)) {
+      return null;
+    } // if
+    CSLNode<K, V> node = succs[0];
+
+    // Claim the value; whoever nulls it out is the one that removed it
+    V old;
+    do {
+      old = node.value;
+      if (old == null) {
+        return null;
+      } // if
+    } while (!node.casValue(old, null));
+    size.decrement();
+
+    // Mark the links, then let find snip the node out
+    mark(node);
+    find(key, preds, succs);
+    return old;
+  } // remove(K)
+
+  @Override
+  public Iterator<K> keys() {
+    return keysOf(nodes(head.next(0)));
+  } // keys()
+
+  /**
+   * Get an iterator for the keys no smaller than from, in order. Finding the first takes
+   * O(log n).
+   */
+  public Iterator<K> keys(K from) {
+    CSLNode<K, V>[][] arrays = this.scratch.get();
+    find(from, arrays[0], arrays[1]);
+    return keysOf(nodes(arrays[1][0]));
+  } // keys(K)
+
+  @Override
+  public Iterator<V> values() {
+    return new Iterator<V>() {
+      /**
+       * The node after the one whose value is next.
+       */
+      CSLNode<K, V> curr = head.next(0);
+
+      /**
+       * The next value to return (null if there is none). Read once, when the iterator reaches
+       * its node, since a remove may null it out at any moment.
+       */
+      V nextValue = advance();
+
+      /**
+       * Move past the next node that still has a value, and return that value.
+       */
+      V advance() {
+        while (this.curr != null) {
+          V value = this.curr.value;
+          this.curr = this.curr.next(0);
+          if (value != null) {
+            return value;
+          } // if
+        } // while
+        return null;
+      } // advance()
+
+      @Override
+      public boolean hasNext() {
+        return this.nextValue != null;
+      } // hasNext()
+
+      @Override
+      public V next() {
+        if (this.nextValue == null) {
+          throw new NoSuchElementException();
+        } // if
+        V result = this.nextValue;
+        this.nextValue = advance();
+        return result;
+      } // next()
+    };
+  } // values()
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    for (CSLNode<K, V> curr = head.next(0); curr != null; curr = curr.next(0)) {
+      V value = curr.value;
+      if (value != null) {
+        action.accept(curr.key, value);
+      } // if
+    } // for
+  } // forEach(BiConsumer)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Find the value associated with key without modifying the list (or null, if there is none).
+   * Marked nodes are stepped over rather than snipped, so this never retries.
+   */
+  V find(K key) {
+    CSLNode<K, V> pred = head;
+    CSLNode<K, V> curr = null;
+    for (int level = this.topLevel; level >= 0; level--) {
+      curr = pred.next(level);
+      while (curr != null) {
+        CSLNode<K, V> succ = curr.next(level);
+        if (curr.next[level].isMarked()) {
+          curr = succ;
+        } else if (comparator.compare(curr.key, key) < 0) {
+          pred = curr;
+          curr = succ;
+        } else {
+          break;
+        } // if/else
+      } // while
+    } // for
+    if (curr != null && comparator.compare(curr.key, key) == 0) {
+      return curr.value;
+    } // if
+    return null;
+  } // find(K)
+
+  /**
+   * Fill preds and succs with the nodes on either side of key at each level in use, snipping out
+   * any marked nodes along the way.
+   *
+   * @return true if a node with the given key is in the list.
+   */
+  boolean find(K key, CSLNode<K, V>[] preds, CSLNode<K, V>[] succs) {
+    return find(key, preds, succs, 1);
+  } // find(K, CSLNode<K, V>[], CSLNode<K, V>[])
+
+  /**
+   * Like find(key, preds, succs), but fill at least the lowest height levels, for a node of
+   * that height to be linked in.
+   */
+  boolean find(K key, CSLNode<K, V>[] preds, CSLNode<K, V>[] succs, int height) {
+    retry: while (true) {
+      CSLNode<K, V> pred = head;
+      CSLNode<K, V> curr = null;
+      for (int level = Math.max(this.topLevel, height - 1); level >= 0; level--) {
+        curr = pred.next(level);
+        while (curr != null) {
+          AtomicMarkableReference<CSLNode<K, V>> link = curr.next[level];
+          CSLNode<K, V> succ = link.getReference();
+          if (link.isMarked()) {
+            // A marked link never changes again, so reading it once more gives the successor
+            // it was marked with (without the holder array that get(boolean[]) needs)
+            succ = link.getReference();
+            if (!pred.next[level].compareAndSet(curr, succ, false, false)) {
+              continue retry;
+            } // if
+            curr = succ;
+          } else if (comparator.compare(curr.key, key) < 0) {
+            pred = curr;
+            curr = succ;
+          } else {
+            break;
+          } // if/else
+        } // while
+        preds[level] = pred;
+        succs[level] = curr;
+      } // for
+      return curr != null && comparator.compare(curr.key, key) == 0;
+    } // while
+  } // find(K, CSLNode<K, V>[], CSLNode<K, V>[], int)
+
+  /**
+   * Link a node that is already in level 0 into its upper levels. Gives up quietly if the node
+   * is removed in the meantime.
+   */
+  void linkUpperLevels(CSLNode<K, V> node, CSLNode<K, V>[] preds, CSLNode<K, V>[] succs) {
+    for (int level = 1; level < node.next.length; level++) {
+      while (true) {
+        AtomicMarkableReference<CSLNode<K, V>> link = node.next[level];
+        CSLNode<K, V> expected = link.getReference();
+        if (link.isMarked()) {
+          return;
+        } // if
+        if (expected != succs[level] && !link.compareAndSet(expected, succs[level], false, false)) {
+          return;
+        } // if
+        if (preds[level].next[level].compareAndSet(succs[level], node, false, false)) {
+          break;
+        } // if
+        find(node.key, preds, succs, node.next.length);
+        if (succs[0] != node) {
+          return;
+        } // if
+      } // while
+    } // for
+  } // linkUpperLevels(CSLNode<K, V>, CSLNode<K, V>[], CSLNode<K, V>[])
+
+  /**
+   * Make sure searches start at level or above.
+   */
+  void raiseTopLevel(int level) {
+    int top;
+    while ((top = this.topLevel) < level) {
+      if (TOP_LEVEL.compareAndSet(this, top, level)) {
+        return;
+      } // if
+    } // while
+  } // raiseTopLevel(int)
+
+  /**
+   * Mark the links of a node whose value has been claimed, from the top level down, so that
+   * no thread links anything after it and the next find snips it out. Any thread may do this,
+   * and more than one may do it at once.
+   */
+  static <K, V> void mark(CSLNode<K, V> node) {
+    for (int level = node.next.length - 1; level >= 0; level--) {
+      AtomicMarkableReference<CSLNode<K, V>> link = node.next[level];
+      while (!link.isMarked()) {
+        link.attemptMark(link.getReference(), true);
+      } // while
+    } // for
+  } // mark(CSLNode<K, V>)
+
+  /**
+   * Pick a random height for a new node, without sharing a generator between threads.
+   */
+  int randomHeight() {
+    int bits = ThreadLocalRandom.current().nextInt() | (1 << (MAX_HEIGHT - 1));
+    return Integer.numberOfTrailingZeros(bits) + 1;
+  } // randomHeight()
+
+  /**
+   * Create an array with room for one node per level.
+   */
+  @SuppressWarnings("unchecked")
+  static <K, V> CSLNode<K, V>[] newNodeArray() {
+    return (CSLNode<K, V>[]) new CSLNode<?, ?>[MAX_HEIGHT];
+  } // newNodeArray()
+
+  /**
+   * Create a pair of arrays for preds and succs.
+   */
+  @SuppressWarnings("unchecked")
+  static <K, V> CSLNode<K, V>[][] newNodeArrays() {
+    return (CSLNode<K, V>[][]) new CSLNode<?, ?>[][] {newNodeArray(), newNodeArray()};
+  } // newNodeArrays()
+
+  /**
+   * Get an iterator for the keys of the nodes that nit returns.
+   */
+  static <K, V> Iterator<K> keysOf(Iterator<CSLNode<K, V>> nit) {
+    return new Iterator<K>() {
+      @Override
+      public boolean hasNext() {
+        return nit.hasNext();
+      } // hasNext()
+
+      @Override
+      public K next() {
+        return nit.next().key;
+      } // next()
+    };
+  } // keysOf(Iterator<CSLNode<K, V>>)
+
+  /**
+   * Get an iterator for the live nodes from start on, in order.
+   */
+  static <K, V> Iterator<CSLNode<K, V>> nodes(CSLNode<K, V> start) {
+    return new Iterator<CSLNode<K, V>>() {
+
+      /**
+       * A reference to the next node to return.
+       */
+      CSLNode<K, V> next = skipDeleted(start);
+
+      @Override
+      public boolean hasNext() {
+        return this.next != null;
+      } // hasNext()
+
+      @Override
+      public CSLNode<K, V> next() {
+        if (this.next == null) {
+          throw new NoSuchElementException();
+        } // if
+        CSLNode<K, V> temp = this.next;
+        this.next = skipDeleted(this.next.next(0));
+        return temp;
+      } // next()
+    }; // new Iterator
+  } // nodes(CSLNode<K, V>)
+
+  /**
+   * Find the first node, starting at node, that has not been removed.
+   */
+  static <K, V> CSLNode<K, V> skipDeleted(CSLNode<K, V> node) {
+    while (node != null && node.value == null) {
+      node = node.next(0);
+    } // while
+    return node;
+  } // skipDeleted(CSLNode<K, V>)
+
+} // class ConcurrentSkipList
+
+
+/**
+ * Nodes in the concurrent skip list.
+ */
+class CSLNode<K, V> {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  @SuppressWarnings("rawtypes")
+  static final AtomicReferenceFieldUpdater<CSLNode, Object> VALUE =
+      AtomicReferenceFieldUpdater.newUpdater(CSLNode.class, Object.class, "value");
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The key.
+   */
+  final K key;
+
+  /**
+   * The value. Null once the node has been removed.
+   */
+  volatile V value;
+
+  /**
+   * Pointers to the next nodes, each with a mark that says this node is being removed.
+   */
+  final AtomicMarkableReference<CSLNode<K, V>>[] next;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new node of height n with the specified key and value.
+   */
+  public CSLNode(K key, V value, int n) {
+    this.key = key;
+    this.value = value;
+    this.next = newLinkArray(n);
+    for (int i = 0; i < n; i++) {
+      this.next[i] = new AtomicMarkableReference<CSLNode<K, V>>(null, false);
+    } // for
+  } // CSLNode(K, V, int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the next node at level n.
+   */
+  public CSLNode<K, V> next(int n) {
+    return this.next[n].getReference();
+  } // next(int)
+
+  /**
+   * Replace the value, if it is still expected.
+   */
+  boolean casValue(V expected, V value) {
+    return VALUE.compareAndSet(this, expected, value);
+  } // casValue(V, V)
+
+  /**
+   * Create an array of n links, all null.
+   */
+  @SuppressWarnings("unchecked")
+  static <K, V> AtomicMarkableReference<CSLNode<K, V>>[] newLinkArray(int n) {
+    return (AtomicMarkableReference<CSLNode<K, V>>[]) new AtomicMarkableReference<?>[n];
+  } // newLinkArray(int)
+} // CSLNode<K,V>
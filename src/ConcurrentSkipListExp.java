@@ -0,0 +1,72 @@
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An experiment that measures how the throughput of ConcurrentSkipList scales as threads are
+ * added, from 1 up to the number of available cores (or the number given on the command line).
+ */
+public class ConcurrentSkipListExp {
+
+  public static void main(String[] args) throws InterruptedException {
+    int maxThreads = (args.length > 0) ? Integer.parseInt(args[0])
+        : Runtime.getRuntime().availableProcessors();
+    // customize size of the key space and length of each run here
+    int amount = 1000000;
+    long millis = 2000;
+
+    ConcurrentSkipList<Integer, Integer> sL =
+        new ConcurrentSkipList<Integer, Integer>((i, j) -> Integer.compare(i, j));
+    for (int i = 0; i < amount; i += 2) {
+      sL.set(i, i);
+    } // for
+
+    // 80% get, 10% set, 10% remove over uniformly random keys
+    System.out.println("Keys: " + amount + ", mix: 80% get / 10% set / 10% remove");
+    System.out.println("threads,ops_per_sec");
+    ArrayList<Integer> counts = new ArrayList<Integer>();
+    for (int threads = 1; threads < maxThreads; threads *= 2) {
+      counts.add(threads);
+    } // for
+    counts.add(maxThreads);
+    for (int threads : counts) {
+      LongAdder ops = new LongAdder();
+      CountDownLatch start = new CountDownLatch(1);
+      long deadline = System.nanoTime() + millis * 1000000L;
+      ArrayList<Thread> workers = new ArrayList<Thread>();
+      for (int t = 0; t < threads; t++) {
+        Thread worker = new Thread(() -> {
+          ThreadLocalRandom random = ThreadLocalRandom.current();
+          long done = 0;
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          } // try/catch
+          while ((done & 1023) != 0 || System.nanoTime() < deadline) {
+            int key = random.nextInt(amount);
+            int op = random.nextInt(10);
+            if (op == 0) {
+              sL.set(key, key);
+            } else if (op == 1) {
+              sL.remove(key);
+            } else {
+              sL.containsKey(key);
+            } // if/else
+            done++;
+          } // while
+          ops.add(done);
+        });
+        worker.start();
+        workers.add(worker);
+      } // for
+      start.countDown();
+      for (Thread worker : workers) {
+        worker.join();
+      } // for
+      System.out.println(threads + "," + (ops.sum() * 1000 / millis));
+    } // for
+  } // main(String[])
+
+} // class ConcurrentSkipListExp
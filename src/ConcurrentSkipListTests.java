@@ -0,0 +1,232 @@
+import static org.junit.Assert.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+/**
+ * Some tests of the concurrent skip list, including multithreaded stress tests.
+ */
+public class ConcurrentSkipListTests {
+
+  /**
+   * The number of threads used by the stress tests.
+   */
+  static final int THREADS = 8;
+
+  /**
+   * Run one task on each of THREADS threads, all starting together, and rethrow the first
+   * failure.
+   */
+  static void runTogether(Task task) throws Exception {
+    CountDownLatch start = new CountDownLatch(1);
+    AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    ArrayList<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < THREADS; t++) {
+      int id = t;
+      Thread thread = new Thread(() -> {
+        try {
+          start.await();
+          task.run(id);
+        } catch (Throwable e) {
+          failure.compareAndSet(null, e);
+        } // try/catch
+      });
+      thread.start();
+      threads.add(thread);
+    } // for
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    } // for
+    if (failure.get() != null) {
+      throw new AssertionError("A worker failed", failure.get());
+    } // if
+  } // runTogether(Task)
+
+  /**
+   * Something for one thread of a stress test to do.
+   */
+  interface Task {
+    void run(int id) throws Exception;
+  } // interface Task
+
+  /**
+   * The basic operations should behave like a sorted map when used from one thread.
+   */
+  @Test
+  public void sequentialAgainstTreeMap() {
+    ConcurrentSkipList<Integer, String> ints =
+        new ConcurrentSkipList<Integer, String>((i, j) -> i - j);
+    TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+    Random random = new Random();
+    for (int i = 0; i < 5000; i++) {
+      int key = random.nextInt(300);
+      if (random.nextBoolean()) {
+        assertEquals(expected.put(key, "v" + i), ints.set(key, "v" + i));
+      } else {
+        assertEquals(expected.remove(key), ints.remove(key));
+      } // if/else
+    } // for
+    assertEquals(expected.size(), ints.size());
+    Iterator<Integer> keys = ints.keys();
+    for (Integer key : expected.keySet()) {
+      assertEquals(key, keys.next());
+      assertEquals(expected.get(key), ints.get(key));
+    } // for
+    assertFalse(keys.hasNext());
+    for (int from = -1; from < 310; from += 31) {
+      assertEquals(new ArrayList<Integer>(expected.tailMap(from).keySet()),
+          SkipListTests.toList(ints.keys(from)));
+    } // for
+  } // sequentialAgainstTreeMap()
+
+  /**
+   * Each thread works on its own keys; afterwards, each thread's keys should be exactly the ones
+   * it left in, and the list should be in order.
+   */
+  @Test
+  public void stressDisjointKeys() throws Exception {
+    ConcurrentSkipList<Integer, Integer> ints =
+        new ConcurrentSkipList<Integer, Integer>((i, j) -> i - j);
+    ArrayList<TreeMap<Integer, Integer>> expected = new ArrayList<TreeMap<Integer, Integer>>();
+    for (int t = 0; t < THREADS; t++) {
+      expected.add(new TreeMap<Integer, Integer>());
+    } // for
+    runTogether((id) -> {
+      Random random = new Random(id);
+      TreeMap<Integer, Integer> mine = expected.get(id);
+      for (int i = 0; i < 20000; i++) {
+        int key = random.nextInt(1000) * THREADS + id;
+        if (random.nextInt(3) == 0) {
+          assertEquals(mine.remove(key), ints.remove(key));
+        } else {
+          assertEquals(mine.put(key, i), ints.set(key, i));
+        } // if/else
+      } // for
+    });
+    int total = 0;
+    for (TreeMap<Integer, Integer> mine : expected) {
+      total += mine.size();
+      for (Integer key : mine.keySet()) {
+        assertEquals(mine.get(key), ints.get(key));
+      } // for
+    } // for
+    assertEquals(total, ints.size());
+    assertTrue(SkipListTests.inOrder(ints.keys()));
+  } // stressDisjointKeys()
+
+  /**
+   * All threads fight over the same small set of keys; each successful remove must match exactly
+   * one earlier insertion, and readers must never see a key out of order or a missing value.
+   */
+  @Test
+  public void stressSharedKeys() throws Exception {
+    ConcurrentSkipList<Integer, Integer> ints =
+        new ConcurrentSkipList<Integer, Integer>((i, j) -> i - j);
+    int[] inserted = new int[THREADS];
+    int[] removed = new int[THREADS];
+    runTogether((id) -> {
+      Random random = new Random(id);
+      for (int i = 0; i < 20000; i++) {
+        int key = random.nextInt(64);
+        switch (random.nextInt(5)) {
+          case 0:
+            if (ints.set(key, id) == null) {
+              inserted[id]++;
+            } // if
+            break;
+          case 1:
+            if (ints.remove(key) != null) {
+              removed[id]++;
+            } // if
+            break;
+          case 2:
+            ints.containsKey(key);
+            break;
+          case 3:
+            for (Iterator<Integer> values = ints.values(); values.hasNext();) {
+              assertNotNull(values.next());
+            } // for
+            break;
+          default:
+            assertTrue(SkipListTests.inOrder(ints.keys()));
+        } // switch
+      } // for
+    });
+    int balance = 0;
+    for (int t = 0; t < THREADS; t++) {
+      balance += inserted[t] - removed[t];
+    } // for
+    int count = 0;
+    for (Iterator<Integer> it = ints.keys(); it.hasNext(); it.next()) {
+      count++;
+    } // for
+    assertEquals(balance, ints.size());
+    assertEquals(balance, count);
+  } // stressSharedKeys()
+
+  /**
+   * A set that meets a node whose value a remove has claimed, but whose links that remove has
+   * not marked yet, finishes the removal and inserts afresh instead of waiting for it.
+   */
+  @Test(timeout = 10000)
+  public void setFinishesPendingRemoval() {
+    ConcurrentSkipList<Integer, String> ints =
+        new ConcurrentSkipList<Integer, String>((i, j) -> i - j);
+    ints.set(1, "one");
+    ints.set(2, "two");
+    ints.set(3, "three");
+    // Stop a remove of 2 just after it claims the value
+    CSLNode<Integer, String> two = ints.head.next(0).next(0);
+    assertTrue(two.casValue("two", null));
+    ints.size.decrement();
+    assertEquals(null, ints.set(2, "deux"));
+    assertEquals("deux", ints.get(2));
+    assertEquals(3, ints.size());
+    assertTrue(two.next[0].isMarked());
+    assertEquals(Arrays.asList(1, 2, 3), SkipListTests.toList(ints.keys()));
+    assertEquals(Arrays.asList("one", "deux", "three"), SkipListTests.toList(ints.values()));
+  } // setFinishesPendingRemoval()
+
+  /**
+   * Searches start at the highest level in use rather than at MAX_HEIGHT, and no node reaches
+   * above it, even when threads insert at once.
+   */
+  @Test(timeout = 10000)
+  public void topLevelCoversEveryNode() throws Exception {
+    ConcurrentSkipList<Integer, String> ints =
+        new ConcurrentSkipList<Integer, String>((i, j) -> i - j);
+    assertEquals(0, ints.topLevel);
+    ArrayList<Thread> writers = new ArrayList<Thread>();
+    for (int t = 0; t < 4; t++) {
+      int base = t * 1000;
+      Thread writer = new Thread(() -> {
+        for (int i = base; i < base + 1000; i++) {
+          ints.set(i, "v" + i);
+        } // for
+      });
+      writer.start();
+      writers.add(writer);
+    } // for
+    for (Thread writer : writers) {
+      writer.join();
+    } // for
+    int top = ints.topLevel;
+    assertTrue(top > 0 && top < 24);
+    for (int level = top + 1; level < ConcurrentSkipList.MAX_HEIGHT; level++) {
+      assertNull(ints.head.next(level));
+    } // for
+    for (CSLNode<Integer, String> node = ints.head.next(0); node != null; node = node.next(0)) {
+      assertTrue(node.next.length - 1 <= top);
+    } // for
+    for (int i = 0; i < 4000; i++) {
+      assertEquals("v" + i, ints.get(i));
+    } // for
+  } // topLevelCoversEveryNode()
+
+} // class ConcurrentSkipListTests
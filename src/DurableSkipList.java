@@ -0,0 +1,383 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+/**
+ * A SkipList whose changes are written to a log, so that it can be rebuilt after a crash. The
+ * state lives in a directory: a checkpoint (every entry, in order, as of some moment) and a log
+ * of every change since. Opening the directory bulk-loads the checkpoint and replays the log, in
+ * batches.
+ *
+ * A change is applied to the list, then appended to the log (and undone if it cannot be), and
+ * then, with the lock released, set or remove waits for the log to be synced according to its
+ * policy (see WriteAheadLog). Under Sync.ALWAYS, they return only once their change is on the
+ * disk, but threads that change the list at the same time share one fsync. If that sync fails,
+ * other threads may already have seen the change, so the list is marked failed and every later
+ * operation throws UncheckedIOException. Once the log grows past the checkpoint threshold, the
+ * next change writes a new checkpoint and empties the log.
+ *
+ * Unlike SkipList, this class may be used by several threads at once: each operation locks the
+ * list (except while waiting for the log). keys() and values() iterate over copies.
+ */
+public class DurableSkipList<K, V> implements SimpleMap<K, V>, AutoCloseable {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The name of the checkpoint in the directory.
+   */
+  static final String CHECKPOINT = "checkpoint";
+
+  /**
+   * The name of the log in the directory.
+   */
+  static final String LOG = "log";
+
+  /**
+   * The default size at which the log is replaced by a checkpoint: 64 MiB.
+   */
+  static final long DEFAULT_CHECKPOINT_BYTES = 1L << 26;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The entries.
+   */
+  SkipList<K, V> list;
+
+  /**
+   * The log of changes since the last checkpoint.
+   */
+  final WriteAheadLog<K, V> log;
+
+  /**
+   * Where the checkpoint and log live.
+   */
+  final Path dir;
+
+  final Codec<K> keyCodec;
+  final Codec<V> valueCodec;
+
+  /**
+   * How big the log may get before we write a checkpoint.
+   */
+  long checkpointBytes = DEFAULT_CHECKPOINT_BYTES;
+
+  /**
+   * The number of checkpoints written.
+   */
+  long checkpoints;
+
+  /**
+   * Why a change already made to the list never reached the disk (null if none has failed).
+   */
+  IOException failure;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Open (or create) the list stored in dir, recovering it from its checkpoint and log. Under
+   * Sync.INTERVAL, the log is synced every intervalMillis.
+   *
+   * @throws IOException if the files cannot be read or the log cannot be opened.
+   */
+  public DurableSkipList(Path dir, Comparator<K> comparator, Codec<K> keyCodec,
+      Codec<V> valueCodec, WriteAheadLog.Sync sync, long intervalMillis) throws IOException {
+    Files.createDirectories(dir);
+    this.dir = dir;
+    this.keyCodec = keyCodec;
+    this.valueCodec = valueCodec;
+    this.list = recover(dir, comparator, keyCodec, valueCodec);
+    this.log = new WriteAheadLog<K, V>(dir.resolve(LOG), keyCodec, valueCodec, sync,
+        intervalMillis);
+  } // DurableSkipList(Path, Comparator<K>, Codec<K>, Codec<V>, WriteAheadLog.Sync, long)
+
+  /**
+   * Open (or create) the list stored in dir, with every change synced before it returns.
+   *
+   * @throws IOException if the files cannot be read or the log cannot be opened.
+   */
+  public DurableSkipList(Path dir, Comparator<K> comparator, Codec<K> keyCodec,
+      Codec<V> valueCodec) throws IOException {
+    this(dir, comparator, keyCodec, valueCodec, WriteAheadLog.Sync.ALWAYS, 0);
+  } // DurableSkipList(Path, Comparator<K>, Codec<K>, Codec<V>)
+
+  // +-------------------+-------------------------------------------
+  // | SimpleMap methods |
+  // +-------------------+
+
+  /**
+   * Set the value associated with key, once the change is in the log. The list is changed
+   * first, so that a key the list cannot order never reaches the log, and the change is undone
+   * if it cannot be logged.
+   *
+   * @throws UncheckedIOException if the log cannot be written.
+   */
+  @Override
+  public V set(K key, V value) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    } // if
+    long seq;
+    V result;
+    synchronized (this) {
+      checkHealthy();
+      result = this.list.set(key, value);
+      seq = logged(WriteAheadLog.SET, key, value, result);
+      maybeCheckpoint();
+    } // synchronized
+    awaitLog(seq);
+    return result;
+  } // set(K, V)
+
+  @Override
+  public synchronized V get(K key) {
+    checkHealthy();
+    return this.list.get(key);
+  } // get(K)
+
+  @Override
+  public synchronized int size() {
+    checkHealthy();
+    return this.list.size();
+  } // size()
+
+  @Override
+  public synchronized boolean containsKey(K key) {
+    checkHealthy();
+    return this.list.containsKey(key);
+  } // containsKey(K)
+
+  /**
+   * Remove the value with the given key, once the change is in the log. (Removing a key that is
+   * not there is not logged.)
+   *
+   * @throws UncheckedIOException if the log cannot be written.
+   */
+  @Override
+  public V remove(K key) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    } // if
+    long seq;
+    V result;
+    synchronized (this) {
+      checkHealthy();
+      result = this.list.remove(key);
+      if (result == null) {
+        return null;
+      } // if
+      seq = logged(WriteAheadLog.REMOVE, key, null, result);
+      maybeCheckpoint();
+    } // synchronized
+    awaitLog(seq);
+    return result;
+  } // remove(K)
+
+  @Override
+  public synchronized Iterator<K> keys() {
+    checkHealthy();
+    ArrayList<K> copy = new ArrayList<K>(this.list.size());
+    this.list.keys().forEachRemaining(copy::add);
+    return copy.iterator();
+  } // keys()
+
+  @Override
+  public synchronized Iterator<V> values() {
+    checkHealthy();
+    ArrayList<V> copy = new ArrayList<V>(this.list.size());
+    this.list.values().forEachRemaining(copy::add);
+    return copy.iterator();
+  } // values()
+
+  @Override
+  public synchronized void forEach(BiConsumer<? super K, ? super V> action) {
+    checkHealthy();
+    this.list.forEach(action);
+  } // forEach(BiConsumer)
+
+  // +----------------------+----------------------------------------
+  // | Checkpoints and logs |
+  // +----------------------+
+
+  /**
+   * Write every entry to a new checkpoint (a SkipListSnapshot) and empty the log. The
+   * checkpoint is written to a temporary file and renamed into place, and the rename is synced
+   * before the log is emptied, so a crash part way leaves the old checkpoint and log (which
+   * still describe the list).
+   *
+   * @throws UncheckedIOException if the checkpoint cannot be written.
+   */
+  public synchronized void checkpoint() {
+    checkHealthy();
+    try {
+      Path temp = this.dir.resolve(CHECKPOINT + ".tmp");
+      SkipListSnapshot.write(this.list, temp, this.keyCodec, this.valueCodec);
+      Files.move(temp, this.dir.resolve(CHECKPOINT), StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+      SkipListSnapshot.syncDirectory(this.dir);
+      this.log.reset();
+      this.checkpoints++;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } // try/catch
+  } // checkpoint()
+
+  /**
+   * Write a checkpoint whenever the log grows past bytes.
+   */
+  public synchronized void setCheckpointBytes(long bytes) {
+    this.checkpointBytes = bytes;
+  } // setCheckpointBytes(long)
+
+  /**
+   * Get the number of checkpoints written since the list was opened.
+   */
+  public synchronized long checkpoints() {
+    return this.checkpoints;
+  } // checkpoints()
+
+  /**
+   * Get the log.
+   */
+  public WriteAheadLog<K, V> log() {
+    return this.log;
+  } // log()
+
+  /**
+   * Sync the log and close it. The list may not be changed afterwards.
+   *
+   * @throws UncheckedIOException if the log cannot be synced or closed.
+   */
+  @Override
+  public synchronized void close() {
+    try {
+      this.log.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } // try/catch
+  } // close()
+
+  /**
+   * Rebuild the list stored in dir: bulk-load the checkpoint (which is in order), then replay the
+   * log, applying each run of sets with setAll and each run of removes with removeAll.
+   *
+   * @throws IOException if the files cannot be read.
+   */
+  static <K, V> SkipList<K, V> recover(Path dir, Comparator<K> comparator, Codec<K> keyCodec,
+      Codec<V> valueCodec) throws IOException {
+    SkipList<K, V> list;
+    Path checkpoint = dir.resolve(CHECKPOINT);
+    if (Files.exists(checkpoint)) {
+      list = SkipListSnapshot.load(checkpoint, comparator, keyCodec, valueCodec);
+    } else {
+      list = new SkipList<K, V>(comparator);
+    } // if/else
+
+    Path log = dir.resolve(LOG);
+    if (Files.exists(log)) {
+      TreeMap<K, V> sets = new TreeMap<K, V>(comparator);
+      ArrayList<K> removes = new ArrayList<K>();
+      WriteAheadLog.replay(log, keyCodec, valueCodec, (op, key, value) -> {
+        if (op == WriteAheadLog.SET) {
+          if (!removes.isEmpty()) {
+            list.removeAll(removes);
+            removes.clear();
+          } // if
+          sets.put(key, value);
+        } else {
+          if (!sets.isEmpty()) {
+            list.setAll(sets);
+            sets.clear();
+          } // if
+          removes.add(key);
+        } // if/else
+      });
+      list.setAll(sets);
+      list.removeAll(removes);
+    } // if
+    return list;
+  } // recover(Path, Comparator<K>, Codec<K>, Codec<V>)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Append a change that has just been made to the list to the log, or, if that fails, undo it
+   * by giving key its old value back (or removing it, if old is null). Call only while holding
+   * the lock.
+   */
+  long logged(byte op, K key, V value, V old) {
+    try {
+      return this.log.append(op, key, value);
+    } catch (IOException | RuntimeException e) {
+      if (old == null) {
+        this.list.remove(key);
+      } else {
+        this.list.set(key, old);
+      } // if/else
+      if (e instanceof IOException) {
+        throw new UncheckedIOException((IOException) e);
+      } // if
+      throw (RuntimeException) e;
+    } // try/catch
+  } // logged(byte, K, V, V)
+
+  /**
+   * Wait until the change numbered seq is on the disk (if the policy says to). If it never gets
+   * there, mark the list failed.
+   */
+  void awaitLog(long seq) {
+    try {
+      this.log.await(seq);
+    } catch (IOException e) {
+      // The change is already in the list, where others may have seen it, so it cannot be
+      // taken back; stop serving the list instead (unless we were merely interrupted)
+      if (!(e instanceof InterruptedIOException)) {
+        synchronized (this) {
+          if (this.failure == null) {
+            this.failure = e;
+          } // if
+        } // synchronized
+      } // if
+      throw new UncheckedIOException(e);
+    } // try/catch
+  } // awaitLog(long)
+
+  /**
+   * Make sure no change has failed to reach the disk. Call only while holding the lock.
+   *
+   * @throws UncheckedIOException if one has.
+   */
+  void checkHealthy() {
+    if (this.failure != null) {
+      throw new UncheckedIOException("A change made to the list could not be logged",
+          this.failure);
+    } // if
+  } // checkHealthy()
+
+  /**
+   * Write a checkpoint if the log has grown too big. Call only while holding the lock.
+   */
+  void maybeCheckpoint() {
+    if (this.log.size() >= this.checkpointBytes) {
+      checkpoint();
+    } // if
+  } // maybeCheckpoint()
+
+} // class DurableSkipList
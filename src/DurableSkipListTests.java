@@ -0,0 +1,352 @@
+import static org.junit.Assert.*;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import org.junit.Test;
+
+/**
+ * Some tests of the logged skip list and its recovery.
+ */
+public class DurableSkipListTests {
+
+  /**
+   * A comparator for integer keys.
+   */
+  static final Comparator<Integer> INTS = (i, j) -> Integer.compare(i, j);
+
+  /**
+   * A random number generator for the randomized tests.
+   */
+  Random random = new Random();
+
+  /**
+   * Make a new, empty directory.
+   */
+  static Path tempDir() throws IOException {
+    return Files.createTempDirectory("durable");
+  } // tempDir()
+
+  /**
+   * Delete a directory and everything in it.
+   */
+  static void delete(Path dir) throws IOException {
+    try (Stream<Path> files = Files.walk(dir)) {
+      files.sorted(Comparator.reverseOrder()).forEach((path) -> path.toFile().delete());
+    } // try
+  } // delete(Path)
+
+  /**
+   * Read back the keys of the records in the log in dir.
+   */
+  static ArrayList<Integer> loggedKeys(Path dir) throws IOException {
+    ArrayList<Integer> keys = new ArrayList<Integer>();
+    WriteAheadLog.replay(dir.resolve(DurableSkipList.LOG), Codec.INTEGER, Codec.STRING,
+        (op, key, value) -> keys.add(key));
+    return keys;
+  } // loggedKeys(Path)
+
+  /**
+   * Wait (for up to ten seconds) until log has been synced more than syncs times.
+   */
+  static void awaitSyncs(WriteAheadLog<?, ?> log, long syncs) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (log.syncs() <= syncs) {
+      assertTrue("log never synced", System.currentTimeMillis() < deadline);
+      Thread.sleep(5);
+    } // while
+  } // awaitSyncs(WriteAheadLog<?, ?>, long)
+
+  /**
+   * Check that list holds exactly the entries of expected.
+   */
+  static void assertSame(TreeMap<Integer, String> expected, SimpleMap<Integer, String> list) {
+    assertEquals(expected.size(), list.size());
+    Iterator<Integer> keys = list.keys();
+    for (Integer key : expected.keySet()) {
+      assertEquals(key, keys.next());
+      assertEquals(expected.get(key), list.get(key));
+    } // for
+    assertFalse(keys.hasNext());
+  } // assertSame(TreeMap<Integer, String>, SimpleMap<Integer, String>)
+
+  /**
+   * Random changes survive reopening, with and without checkpoints along the way.
+   */
+  @Test
+  public void reopenReplaysLogAndCheckpoint() throws IOException {
+    Path dir = tempDir();
+    try {
+      TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+      try (DurableSkipList<Integer, String> list = new DurableSkipList<Integer, String>(dir,
+          INTS, Codec.INTEGER, Codec.STRING, WriteAheadLog.Sync.NEVER, 0)) {
+        list.setCheckpointBytes(4096);
+        for (int i = 0; i < 3000; i++) {
+          int key = random.nextInt(500);
+          if (random.nextInt(4) == 0) {
+            assertEquals(expected.remove(key), list.remove(key));
+          } else {
+            assertEquals(expected.put(key, "v" + i), list.set(key, "v" + i));
+          } // if/else
+        } // for
+        assertTrue(list.checkpoints() > 0);
+      } // try
+      try (DurableSkipList<Integer, String> list =
+          new DurableSkipList<Integer, String>(dir, INTS, Codec.INTEGER, Codec.STRING)) {
+        assertSame(expected, list);
+        list.checkpoint();
+        list.set(1000, "last");
+        expected.put(1000, "last");
+      } // try
+      try (DurableSkipList<Integer, String> list =
+          new DurableSkipList<Integer, String>(dir, INTS, Codec.INTEGER, Codec.STRING)) {
+        assertSame(expected, list);
+      } // try
+    } finally {
+      delete(dir);
+    } // try/finally
+  } // reopenReplaysLogAndCheckpoint()
+
+  /**
+   * A record torn part way through (as by a crash) is dropped, along with anything after it.
+   */
+  @Test
+  public void tornTailIsIgnored() throws IOException {
+    Path dir = tempDir();
+    try {
+      try (DurableSkipList<Integer, String> list =
+          new DurableSkipList<Integer, String>(dir, INTS, Codec.INTEGER, Codec.STRING)) {
+        list.set(1, "one");
+        list.set(2, "two");
+        list.remove(1);
+      } // try
+      Path log = dir.resolve(DurableSkipList.LOG);
+      long good = Files.size(log);
+      Files.write(log, new byte[] {0, 0, 0, 20, 1, 2, 3}, StandardOpenOption.APPEND);
+      try (DurableSkipList<Integer, String> list =
+          new DurableSkipList<Integer, String>(dir, INTS, Codec.INTEGER, Codec.STRING)) {
+        assertEquals(1, list.size());
+        assertEquals("two", list.get(2));
+        assertEquals(good, Files.size(log));
+        list.set(3, "three");
+      } // try
+      try (DurableSkipList<Integer, String> list =
+          new DurableSkipList<Integer, String>(dir, INTS, Codec.INTEGER, Codec.STRING)) {
+        assertEquals("three", list.get(3));
+      } // try
+    } finally {
+      delete(dir);
+    } // try/finally
+  } // tornTailIsIgnored()
+
+  /**
+   * Threads writing at once under Sync.ALWAYS all get their changes logged.
+   */
+  @Test
+  public void groupCommit() throws Exception {
+    Path dir = tempDir();
+    try {
+      int threads = 4;
+      int perThread = 100;
+      try (DurableSkipList<Integer, String> list =
+          new DurableSkipList<Integer, String>(dir, INTS, Codec.INTEGER, Codec.STRING)) {
+        ArrayList<Thread> writers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+          int base = t * perThread;
+          Thread writer = new Thread(() -> {
+            for (int i = base; i < base + perThread; i++) {
+              list.set(i, "v" + i);
+            } // for
+          });
+          writer.start();
+          writers.add(writer);
+        } // for
+        for (Thread writer : writers) {
+          writer.join();
+        } // for
+      } // try
+      try (DurableSkipList<Integer, String> list =
+          new DurableSkipList<Integer, String>(dir, INTS, Codec.INTEGER, Codec.STRING)) {
+        assertEquals(threads * perThread, list.size());
+        assertEquals("v123", list.get(123));
+      } // try
+    } finally {
+      delete(dir);
+    } // try/finally
+  } // groupCommit()
+
+  /**
+   * Records appended while the flusher is kept out of the log all go out in one sync.
+   */
+  @Test
+  public void appendsShareOneSync() throws IOException {
+    Path dir = tempDir();
+    try (WriteAheadLog<Integer, String> log = new WriteAheadLog<Integer, String>(
+        dir.resolve(DurableSkipList.LOG), Codec.INTEGER, Codec.STRING,
+        WriteAheadLog.Sync.ALWAYS, 0)) {
+      long seq = 0;
+      // The flusher needs the log's lock to take a batch, so it sees all of these at once
+      synchronized (log) {
+        for (int i = 0; i < 100; i++) {
+          seq = log.append(WriteAheadLog.SET, i, "v" + i);
+        } // for
+      } // synchronized
+      log.await(seq);
+      assertEquals(1, log.syncs());
+      assertEquals(100, loggedKeys(dir).size());
+    } finally {
+      delete(dir);
+    } // try/finally
+  } // appendsShareOneSync()
+
+  /**
+   * Under Sync.INTERVAL, set returns at once and the flusher gets the changes to the disk on its
+   * own, again after it has sat idle.
+   */
+  @Test
+  public void intervalSyncsInBackground() throws Exception {
+    Path dir = tempDir();
+    try (DurableSkipList<Integer, String> list = new DurableSkipList<Integer, String>(dir, INTS,
+        Codec.INTEGER, Codec.STRING, WriteAheadLog.Sync.INTERVAL, 20)) {
+      WriteAheadLog<Integer, String> log = list.log();
+      // Holding the log's lock keeps the flusher out, so set must not wait for it
+      synchronized (log) {
+        for (int i = 0; i < 50; i++) {
+          list.set(i, "v" + i);
+        } // for
+        assertEquals(0, log.syncs());
+      } // synchronized
+      awaitSyncs(log, 0);
+      assertEquals(50, loggedKeys(dir).size());
+      // Let the flusher find nothing to write for a few intervals
+      Thread.sleep(100);
+      long syncs = log.syncs();
+      synchronized (log) {
+        for (int i = 50; i < 100; i++) {
+          list.set(i, "v" + i);
+        } // for
+      } // synchronized
+      awaitSyncs(log, syncs);
+      assertEquals(100, loggedKeys(dir).size());
+    } finally {
+      delete(dir);
+    } // try/finally
+  } // intervalSyncsInBackground()
+
+  /**
+   * Once a change made to the list fails to reach the disk, the list refuses to be used, and
+   * reopening it finds only what was synced.
+   */
+  @Test
+  public void failedSyncStopsTheList() throws IOException {
+    Path dir = tempDir();
+    try {
+      try (DurableSkipList<Integer, String> list =
+          new DurableSkipList<Integer, String>(dir, INTS, Codec.INTEGER, Codec.STRING)) {
+        list.set(1, "one");
+        list.log().channel.close();
+        try {
+          list.set(2, "two");
+          fail("set(2) should throw");
+        } catch (UncheckedIOException e) {
+          // Expected
+        } // try/catch
+        try {
+          list.get(2);
+          fail("get(2) should throw");
+        } catch (UncheckedIOException e) {
+          // Expected
+        } // try/catch
+        try {
+          list.remove(1);
+          fail("remove(1) should throw");
+        } catch (UncheckedIOException e) {
+          // Expected
+        } // try/catch
+      } // try
+      try (DurableSkipList<Integer, String> list =
+          new DurableSkipList<Integer, String>(dir, INTS, Codec.INTEGER, Codec.STRING)) {
+        assertEquals(1, list.size());
+        assertEquals("one", list.get(1));
+      } // try
+    } finally {
+      delete(dir);
+    } // try/finally
+  } // failedSyncStopsTheList()
+
+  /**
+   * A change the list rejects, or that cannot be encoded, reaches neither the list nor the log,
+   * so the list still reopens.
+   */
+  @Test
+  public void rejectedChangesAreNotLogged() throws IOException {
+    Path dir = tempDir();
+    Comparator<Integer> positive = (i, j) -> {
+      if (i < 0 || j < 0) {
+        throw new IllegalArgumentException("negative key");
+      } // if
+      return Integer.compare(i, j);
+    };
+    Codec<String> picky = new Codec<String>() {
+      @Override
+      public void write(String value, DataOutput out) throws IOException {
+        if (value.equals("bad")) {
+          throw new IOException("cannot encode " + value);
+        } // if
+        Codec.STRING.write(value, out);
+      } // write(String, DataOutput)
+
+      @Override
+      public String read(DataInput in) throws IOException {
+        return Codec.STRING.read(in);
+      } // read(DataInput)
+    };
+    try {
+      try (DurableSkipList<Integer, String> list =
+          new DurableSkipList<Integer, String>(dir, positive, Codec.INTEGER, picky)) {
+        list.set(1, "one");
+        list.set(3, "three");
+        try {
+          list.set(-2, "minus two");
+          fail("set(-2) should throw");
+        } catch (IllegalArgumentException e) {
+          // Expected
+        } // try/catch
+        try {
+          list.set(1, "bad");
+          fail("set(1, \"bad\") should throw");
+        } catch (UncheckedIOException e) {
+          // Expected
+        } // try/catch
+        try {
+          list.set(2, "bad");
+          fail("set(2, \"bad\") should throw");
+        } catch (UncheckedIOException e) {
+          // Expected
+        } // try/catch
+        assertEquals(2, list.size());
+        assertEquals("one", list.get(1));
+        assertFalse(list.containsKey(2));
+      } // try
+      TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+      expected.put(1, "one");
+      expected.put(3, "three");
+      try (DurableSkipList<Integer, String> list =
+          new DurableSkipList<Integer, String>(dir, INTS, Codec.INTEGER, Codec.STRING)) {
+        assertSame(expected, list);
+      } // try
+    } finally {
+      delete(dir);
+    } // try/finally
+  } // rejectedChangesAreNotLogged()
+
+} // class DurableSkipListTests
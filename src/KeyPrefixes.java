@@ -0,0 +1,53 @@
+import java.util.function.ToLongFunction;
+
+/**
+ * Order-preserving 64-bit prefixes of common keys, for SkipList's prefix cache. Each maps keys
+ * to longs such that a smaller prefix (as an unsigned long) means a smaller key in the key's
+ * natural order; keys with equal prefixes may still differ, and are compared in full.
+ */
+public final class KeyPrefixes {
+
+  /**
+   * No instances.
+   */
+  private KeyPrefixes() {
+  } // KeyPrefixes()
+
+  /**
+   * The first four UTF-16 units of a String, 16 bits each (shorter strings are padded with
+   * zeros). Matches String.compareTo.
+   */
+  public static final ToLongFunction<String> STRING = (s) -> {
+    long prefix = 0;
+    int n = Math.min(4, s.length());
+    for (int i = 0; i < n; i++) {
+      prefix |= (long) s.charAt(i) << (48 - 16 * i);
+    } // for
+    return prefix;
+  };
+
+  /**
+   * The first eight bytes of a byte[], unsigned and big-endian (shorter arrays are padded with
+   * zeros). Matches Arrays.compareUnsigned.
+   */
+  public static final ToLongFunction<byte[]> BYTES = (b) -> {
+    long prefix = 0;
+    int n = Math.min(8, b.length);
+    for (int i = 0; i < n; i++) {
+      prefix |= (long) (b[i] & 0xFF) << (56 - 8 * i);
+    } // for
+    return prefix;
+  };
+
+  /**
+   * A Long itself, with the sign bit flipped so that unsigned order is signed order. The prefix
+   * is the whole key, so keys are only compared when they are equal.
+   */
+  public static final ToLongFunction<Long> LONG = (l) -> l ^ Long.MIN_VALUE;
+
+  /**
+   * An Integer, as for LONG.
+   */
+  public static final ToLongFunction<Integer> INTEGER = (i) -> (long) i ^ Long.MIN_VALUE;
+
+} // class KeyPrefixes
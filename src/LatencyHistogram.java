@@ -0,0 +1,130 @@
+/**
+ * A histogram of latencies in nanoseconds, with buckets that are about 1.5% wide at every scale,
+ * so that percentiles can be read off with bounded relative error and without keeping every
+ * sample. Not thread-safe: give each thread its own and merge them afterwards.
+ */
+public class LatencyHistogram {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * Each power of two is split into 2^SUB_BITS buckets.
+   */
+  static final int SUB_BITS = 6;
+
+  /**
+   * The number of buckets in each power of two.
+   */
+  static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of samples in each bucket.
+   */
+  long[] counts = new long[(64 - SUB_BITS + 1) * SUB_BUCKETS];
+
+  /**
+   * The total number of samples.
+   */
+  long total;
+
+  /**
+   * The largest sample.
+   */
+  long max;
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Record one latency.
+   */
+  public void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    } // if
+    counts[bucket(nanos)]++;
+    total++;
+    max = Math.max(max, nanos);
+  } // record(long)
+
+  /**
+   * Add all of the samples from another histogram to this one.
+   */
+  public void add(LatencyHistogram other) {
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] += other.counts[i];
+    } // for
+    total += other.total;
+    max = Math.max(max, other.max);
+  } // add(LatencyHistogram)
+
+  /**
+   * Get the number of samples.
+   */
+  public long count() {
+    return total;
+  } // count()
+
+  /**
+   * Get the largest sample.
+   */
+  public long max() {
+    return max;
+  } // max()
+
+  /**
+   * Get the latency at the given percentile (0 to 100), as the upper bound of the bucket that
+   * holds it.
+   */
+  public long percentile(double percent) {
+    if (total == 0) {
+      return 0;
+    } // if
+    long rank = (long) Math.ceil(total * percent / 100.0);
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= Math.max(rank, 1)) {
+        return Math.min(upperBound(i), max);
+      } // if
+    } // for
+    return max;
+  } // percentile(double)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Find the bucket for a (non-negative) value. Values below SUB_BUCKETS get a bucket each;
+   * above that, each power of two gets SUB_BUCKETS buckets.
+   */
+  static int bucket(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    } // if
+    int magnitude = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+    int sub = (int) (value >>> magnitude) - SUB_BUCKETS;
+    return (magnitude + 1) * SUB_BUCKETS + sub;
+  } // bucket(long)
+
+  /**
+   * Find the largest value that falls in a bucket.
+   */
+  static long upperBound(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    } // if
+    int magnitude = bucket / SUB_BUCKETS - 1;
+    long sub = bucket % SUB_BUCKETS + SUB_BUCKETS;
+    return ((sub + 1) << magnitude) - 1;
+  } // upperBound(int)
+
+} // class LatencyHistogram
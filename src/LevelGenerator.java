@@ -0,0 +1,172 @@
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks the heights of new skip list nodes. A node reaches each level above the first with some
+ * probability p, so heights follow a geometric distribution.
+ */
+public interface LevelGenerator {
+
+  /**
+   * Pick a height between 1 and maxHeight (inclusive).
+   */
+  public int nextLevel(int maxHeight);
+
+  /**
+   * Get a generator with the same distribution for another list to use. Generators with random
+   * state of their own give the copy its own state, seeded from theirs, so that a seeded
+   * generator's copies are reproducible too. The default returns this generator, which suits
+   * only generators that lists may share.
+   */
+  public default LevelGenerator fresh() {
+    return this;
+  } // fresh()
+
+  /**
+   * Get a generator with its own random state, seeded unpredictably. Each list should have its
+   * own, so that lists never contend for one generator.
+   *
+   * @throws IllegalArgumentException if probability is not strictly between 0 and 1.
+   */
+  public static LevelGenerator withProbability(double probability) {
+    return new RandomLevels(probability, ThreadLocalRandom.current().nextLong());
+  } // withProbability(double)
+
+  /**
+   * Get a generator that always produces the same sequence of heights for the same seed, for
+   * reproducible experiments and benchmarks.
+   *
+   * @throws IllegalArgumentException if probability is not strictly between 0 and 1.
+   */
+  public static LevelGenerator seeded(double probability, long seed) {
+    return new RandomLevels(probability, seed);
+  } // seeded(double, long)
+
+  /**
+   * Get a generator that draws from the calling thread's ThreadLocalRandom, for lists that
+   * several threads insert into.
+   *
+   * @throws IllegalArgumentException if probability is not strictly between 0 and 1.
+   */
+  public static LevelGenerator threadLocal(double probability) {
+    return new RandomLevels(probability, 0) {
+      @Override
+      long nextLong() {
+        return ThreadLocalRandom.current().nextLong();
+      } // nextLong()
+
+      @Override
+      public LevelGenerator fresh() {
+        return this;
+      } // fresh()
+    };
+  } // threadLocal(double)
+
+} // interface LevelGenerator
+
+/**
+ * A level generator with its own SplitMix64 state. When p is 1/2^k, a single random word is
+ * enough: each group of k trailing zero bits is one more level. Other probabilities compare 53
+ * random bits with p once per level. Not thread-safe.
+ */
+class RandomLevels implements LevelGenerator {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The SplitMix64 increment.
+   */
+  static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The probability of reaching each further level.
+   */
+  final double probability;
+
+  /**
+   * If the probability is 1/2^k, then k (and otherwise 0).
+   */
+  final int bitsPerLevel;
+
+  /**
+   * The generator state.
+   */
+  long state;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a generator with the given probability and seed.
+   *
+   * @throws IllegalArgumentException if probability is not strictly between 0 and 1.
+   */
+  RandomLevels(double probability, long seed) {
+    if (!(probability > 0 && probability < 1)) {
+      throw new IllegalArgumentException("Probability must be between 0 and 1: " + probability);
+    } // if
+    this.probability = probability;
+    this.bitsPerLevel = powerOfHalf(probability);
+    this.state = seed;
+  } // RandomLevels(double, long)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  @Override
+  public int nextLevel(int maxHeight) {
+    long bits = nextLong();
+    if (this.bitsPerLevel > 0) {
+      // A zero word is 64 zero bits; keep counting from the next one (rarely needed)
+      int zeros = 0;
+      int cap = (maxHeight - 1) * this.bitsPerLevel;
+      while (bits == 0 && zeros < cap) {
+        zeros += 64;
+        bits = nextLong();
+      } // while
+      zeros += Long.numberOfTrailingZeros(bits);
+      return Math.min(maxHeight, 1 + zeros / this.bitsPerLevel);
+    } // if
+    int level = 1;
+    while (level < maxHeight && (bits >>> 11) * 0x1.0p-53 < this.probability) {
+      level++;
+      bits = nextLong();
+    } // while
+    return level;
+  } // nextLevel(int)
+
+  @Override
+  public LevelGenerator fresh() {
+    return new RandomLevels(this.probability, nextLong());
+  } // fresh()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Advance the state and get the next random word.
+   */
+  long nextLong() {
+    long z = (this.state += GOLDEN_GAMMA);
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  } // nextLong()
+
+  /**
+   * If p is 1/2^k for some k from 1 to 63, return k; otherwise return 0.
+   */
+  static int powerOfHalf(double p) {
+    int k = -Math.getExponent(p);
+    return (k >= 1 && k <= 63 && p == Math.scalb(1.0, -k)) ? k : 0;
+  } // powerOfHalf(double)
+
+} // class RandomLevels
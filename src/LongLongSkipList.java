@@ -0,0 +1,374 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.BiConsumer;
+
+/**
+ * A skip list that maps primitive longs to primitive longs, so neither keys nor values are boxed.
+ * Since a primitive value cannot be null, the primitive methods report a missing entry with a
+ * configurable "missing value" (0 by default).
+ */
+public class LongLongSkipList implements SimpleMap<Long, Long> {
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * Pointers to all the front elements.
+   */
+  LongLongSLNode[] front;
+
+  /**
+   * Scratch space for the predecessors found by a search (reused between calls).
+   */
+  LongLongSLNode[] update;
+
+  /**
+   * The value returned by the primitive methods when there is no entry.
+   */
+  final long missingValue;
+
+  /**
+   * The number of values in the list.
+   */
+  int size;
+
+  /**
+   * The current height of the skiplist.
+   */
+  int height;
+
+  /**
+   * Picks the heights of new nodes.
+   */
+  final LevelGenerator levels = LevelGenerator.withProbability(0.5);
+
+  /**
+   * Counts the time spent by the function.
+   */
+  int stepCounter;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new, empty, skip list that reports missing entries as missingValue.
+   */
+  public LongLongSkipList(long missingValue) {
+    this.front = new LongLongSLNode[SkipList.INITIAL_HEIGHT];
+    this.update = new LongLongSLNode[SkipList.INITIAL_HEIGHT];
+    this.missingValue = missingValue;
+    this.size = 0;
+    this.height = SkipList.INITIAL_HEIGHT;
+  } // LongLongSkipList(long)
+
+  /**
+   * Create a new, empty, skip list that reports missing entries as 0.
+   */
+  public LongLongSkipList() {
+    this(0);
+  } // LongLongSkipList()
+
+  // +-------------------+-------------------------------------------
+  // | Primitive methods |
+  // +-------------------+
+
+  /**
+   * Set the value associated with key.
+   *
+   * @return the previous value associated with key (or the missing value, if there's no such
+   *         value)
+   */
+  public long set(long key, long value) {
+    LongLongSLNode found = search(key, this.update);
+    if (found != null && found.key == key) {
+      long rVal = found.value;
+      found.value = value;
+      return rVal;
+    } // if
+    insert(key, value);
+    return this.missingValue;
+  } // set(long, long)
+
+  /**
+   * Get the value associated with key.
+   *
+   * @throws IndexOutOfBoundsException if the key is not in the map.
+   */
+  public long get(long key) {
+    LongLongSLNode found = search(key, null);
+    if (found == null || found.key != key) {
+      throw new IndexOutOfBoundsException("OutOfBounds");
+    } // if
+    return found.value;
+  } // get(long)
+
+  /**
+   * Get the value associated with key, or dflt if the key is not in the map.
+   */
+  public long getOrDefault(long key, long dflt) {
+    LongLongSLNode found = search(key, null);
+    return (found == null || found.key != key) ? dflt : found.value;
+  } // getOrDefault(long, long)
+
+  /**
+   * Determine if a key appears in the table.
+   */
+  public boolean containsKey(long key) {
+    LongLongSLNode found = search(key, null);
+    return found != null && found.key == key;
+  } // containsKey(long)
+
+  /**
+   * Remove the value with the given key.
+   *
+   * @return The associated value (or the missing value, if there is no associated value).
+   */
+  public long remove(long key) {
+    LongLongSLNode target = search(key, this.update);
+    if (target == null || target.key != key) {
+      return this.missingValue;
+    } // if
+    unlink(target);
+    return target.value;
+  } // remove(long)
+
+  /**
+   * Get an iterator for all of the keys in the map, without boxing them.
+   */
+  public PrimitiveIterator.OfLong longKeys() {
+    return new NodeIterator() {
+      @Override
+      long of(LongLongSLNode node) {
+        return node.key;
+      } // of(LongLongSLNode)
+    };
+  } // longKeys()
+
+  /**
+   * Get an iterator for all of the values in the map, without boxing them.
+   */
+  public PrimitiveIterator.OfLong longValues() {
+    return new NodeIterator() {
+      @Override
+      long of(LongLongSLNode node) {
+        return node.value;
+      } // of(LongLongSLNode)
+    };
+  } // longValues()
+
+  /**
+   * Apply a function to each key/value pair, without boxing either.
+   */
+  public void forEachLong(LongBiConsumer action) {
+    for (LongLongSLNode curr = this.front[0]; curr != null; curr = curr.next[0]) {
+      action.accept(curr.key, curr.value);
+    } // for
+  } // forEachLong(LongBiConsumer)
+
+  // +-------------------+-------------------------------------------
+  // | SimpleMap methods |
+  // +-------------------+
+
+  @Override
+  public Long set(Long key, Long value) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    } // if
+    LongLongSLNode found = search(key, this.update);
+    if (found != null && found.key == key) {
+      Long prev = found.value;
+      found.value = value;
+      return prev;
+    } // if
+    insert(key, value);
+    return null;
+  } // set(Long, Long)
+
+  @Override
+  public Long get(Long key) {
+    return get(key.longValue());
+  } // get(Long)
+
+  @Override
+  public int size() {
+    return this.size;
+  } // size()
+
+  @Override
+  public boolean containsKey(Long key) {
+    return key != null && containsKey(key.longValue());
+  } // containsKey(Long)
+
+  @Override
+  public Long remove(Long key) {
+    LongLongSLNode target = search(key.longValue(), this.update);
+    if (target == null || target.key != key) {
+      return null;
+    } // if
+    unlink(target);
+    return target.value;
+  } // remove(Long)
+
+  @Override
+  public Iterator<Long> keys() {
+    return longKeys();
+  } // keys()
+
+  @Override
+  public Iterator<Long> values() {
+    return longValues();
+  } // values()
+
+  @Override
+  public void forEach(BiConsumer<? super Long, ? super Long> action) {
+    for (LongLongSLNode curr = this.front[0]; curr != null; curr = curr.next[0]) {
+      action.accept(curr.key, curr.value);
+    } // for
+  } // forEach(BiConsumer)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Find the first node whose key is at least key (or null, if there is no such node). If preds
+   * is non-null, also fill it with the last node before key at each level (null stands for the
+   * front of the list).
+   */
+  LongLongSLNode search(long key, LongLongSLNode[] preds) {
+    stepCounter = 0;
+    LongLongSLNode prev = null;
+    LongLongSLNode curr = null;
+    for (int level = this.height - 1; level >= 0; level--) {
+      curr = (prev == null) ? this.front[level] : prev.next[level];
+      while (curr != null && curr.key < key) {
+        prev = curr;
+        curr = curr.next[level];
+        stepCounter++;
+      } // while
+      if (preds != null) {
+        preds[level] = prev;
+      } // if
+    } // for
+    return curr;
+  } // search(long, LongLongSLNode[])
+
+  /**
+   * Insert a node for key after the nodes that the last search left in update.
+   */
+  void insert(long key, long value) {
+    LongLongSLNode newAdd = new LongLongSLNode(key, value, randomHeight());
+    for (int i = 0; i < newAdd.next.length; i++) {
+      LongLongSLNode prev = this.update[i];
+      if (prev == null) {
+        newAdd.next[i] = this.front[i];
+        this.front[i] = newAdd;
+      } else {
+        newAdd.next[i] = prev.next[i];
+        prev.next[i] = newAdd;
+      } // if/else
+    } // for
+    size++;
+  } // insert(long, long)
+
+  /**
+   * Link around target, whose predecessors the last search left in update.
+   */
+  void unlink(LongLongSLNode target) {
+    for (int i = 0; i < target.next.length; i++) {
+      LongLongSLNode prev = this.update[i];
+      if (prev == null) {
+        this.front[i] = target.next[i];
+      } else {
+        prev.next[i] = target.next[i];
+      } // if/else
+    } // for
+    size--;
+  } // unlink(LongLongSLNode)
+
+  /**
+   * Pick a random height for a new node.
+   */
+  int randomHeight() {
+    return this.levels.nextLevel(SkipList.INITIAL_HEIGHT);
+  } // randomHeight()
+
+  // +---------------+-----------------------------------------------
+  // | Inner classes |
+  // +---------------+
+
+  /**
+   * A function on a primitive key/value pair.
+   */
+  @FunctionalInterface
+  public interface LongBiConsumer {
+    void accept(long key, long value);
+  } // interface LongBiConsumer
+
+  /**
+   * An iterator that walks level 0 and reports one long from each node.
+   */
+  abstract class NodeIterator implements PrimitiveIterator.OfLong {
+    LongLongSLNode next = LongLongSkipList.this.front[0];
+
+    abstract long of(LongLongSLNode node);
+
+    @Override
+    public boolean hasNext() {
+      return this.next != null;
+    } // hasNext()
+
+    @Override
+    public long nextLong() {
+      if (this.next == null) {
+        throw new NoSuchElementException();
+      } // if
+      long result = of(this.next);
+      this.next = this.next.next[0];
+      return result;
+    } // nextLong()
+  } // class NodeIterator
+
+} // class LongLongSkipList
+
+
+/**
+ * Nodes in the long-to-long skip list.
+ */
+class LongLongSLNode {
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The key.
+   */
+  long key;
+
+  /**
+   * The value.
+   */
+  long value;
+
+  /**
+   * Pointers to the next nodes.
+   */
+  LongLongSLNode[] next;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new node of height n with the specified key and value.
+   */
+  public LongLongSLNode(long key, long value, int n) {
+    this.key = key;
+    this.value = value;
+    this.next = new LongLongSLNode[n];
+  } // LongLongSLNode(long, long, int)
+} // LongLongSLNode
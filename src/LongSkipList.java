@@ -0,0 +1,327 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.BiConsumer;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * A skip list keyed by primitive longs. Keys are stored and compared as raw longs, so lookups
+ * neither box the key nor go through a Comparator. Int keys can be used directly, since they
+ * widen to long without changing their order.
+ */
+public class LongSkipList<V> implements SimpleMap<Long, V> {
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * Pointers to all the front elements.
+   */
+  LongSLNode<V>[] front;
+
+  /**
+   * Scratch space for the predecessors found by a search (reused between calls).
+   */
+  LongSLNode<V>[] update;
+
+  /**
+   * The number of values in the list.
+   */
+  int size;
+
+  /**
+   * The current height of the skiplist.
+   */
+  int height;
+
+  /**
+   * Picks the heights of new nodes.
+   */
+  final LevelGenerator levels = LevelGenerator.withProbability(0.5);
+
+  /**
+   * Counts the time spent by the function.
+   */
+  int stepCounter;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new, empty, skip list.
+   */
+  public LongSkipList() {
+    this.front = newNodeArray(SkipList.INITIAL_HEIGHT);
+    this.update = newNodeArray(SkipList.INITIAL_HEIGHT);
+    this.size = 0;
+    this.height = SkipList.INITIAL_HEIGHT;
+  } // LongSkipList()
+
+  // +-------------------+-------------------------------------------
+  // | Primitive methods |
+  // +-------------------+
+
+  /**
+   * Set the value associated with key.
+   *
+   * @return the previous value associated with key (or null, if there's no such value)
+   * @throws NullPointerException if the value is null.
+   */
+  public V set(long key, V value) {
+    if (value == null) {
+      throw new NullPointerException("null value");
+    } // if
+    LongSLNode<V> found = search(key, this.update);
+    if (found != null && found.key == key) {
+      V rVal = found.value;
+      found.value = value;
+      return rVal;
+    } // if
+
+    // Insert the node
+    LongSLNode<V> newAdd = new LongSLNode<V>(key, value, randomHeight());
+    for (int i = 0; i < newAdd.next.length; i++) {
+      LongSLNode<V> prev = this.update[i];
+      if (prev == null) {
+        newAdd.next[i] = this.front[i];
+        this.front[i] = newAdd;
+      } else {
+        newAdd.next[i] = prev.next[i];
+        prev.next[i] = newAdd;
+      } // if/else
+    } // for
+    size++;
+    return null;
+  } // set(long, V)
+
+  /**
+   * Get the value associated with key.
+   *
+   * @throws IndexOutOfBoundsException if the key is not in the map.
+   */
+  public V get(long key) {
+    LongSLNode<V> found = search(key, null);
+    if (found == null || found.key != key) {
+      throw new IndexOutOfBoundsException("OutOfBounds");
+    } // if
+    return found.value;
+  } // get(long)
+
+  /**
+   * Get the value associated with key, or dflt if the key is not in the map.
+   */
+  public V getOrDefault(long key, V dflt) {
+    LongSLNode<V> found = search(key, null);
+    return (found == null || found.key != key) ? dflt : found.value;
+  } // getOrDefault(long, V)
+
+  /**
+   * Determine if a key appears in the table.
+   */
+  public boolean containsKey(long key) {
+    LongSLNode<V> found = search(key, null);
+    return found != null && found.key == key;
+  } // containsKey(long)
+
+  /**
+   * Remove the value with the given key.
+   *
+   * @return The associated value (or null, if there is no associated value).
+   */
+  public V remove(long key) {
+    LongSLNode<V> target = search(key, this.update);
+    if (target == null || target.key != key) {
+      return null;
+    } // if
+    for (int i = 0; i < target.next.length; i++) {
+      LongSLNode<V> prev = this.update[i];
+      if (prev == null) {
+        this.front[i] = target.next[i];
+      } else {
+        prev.next[i] = target.next[i];
+      } // if/else
+    } // for
+    size--;
+    return target.value;
+  } // remove(long)
+
+  /**
+   * Get an iterator for all of the keys in the map, without boxing them.
+   */
+  public PrimitiveIterator.OfLong longKeys() {
+    return new PrimitiveIterator.OfLong() {
+      LongSLNode<V> next = LongSkipList.this.front[0];
+
+      @Override
+      public boolean hasNext() {
+        return this.next != null;
+      } // hasNext()
+
+      @Override
+      public long nextLong() {
+        if (this.next == null) {
+          throw new NoSuchElementException();
+        } // if
+        long key = this.next.key;
+        this.next = this.next.next[0];
+        return key;
+      } // nextLong()
+    };
+  } // longKeys()
+
+  /**
+   * Apply a function to each key/value pair, without boxing the keys.
+   */
+  public void forEachLong(ObjLongConsumer<? super V> action) {
+    for (LongSLNode<V> curr = this.front[0]; curr != null; curr = curr.next[0]) {
+      action.accept(curr.value, curr.key);
+    } // for
+  } // forEachLong(ObjLongConsumer)
+
+  // +-------------------+-------------------------------------------
+  // | SimpleMap methods |
+  // +-------------------+
+
+  @Override
+  public V set(Long key, V value) {
+    return set(key.longValue(), value);
+  } // set(Long, V)
+
+  @Override
+  public V get(Long key) {
+    return get(key.longValue());
+  } // get(Long)
+
+  @Override
+  public int size() {
+    return this.size;
+  } // size()
+
+  @Override
+  public boolean containsKey(Long key) {
+    return key != null && containsKey(key.longValue());
+  } // containsKey(Long)
+
+  @Override
+  public V remove(Long key) {
+    return remove(key.longValue());
+  } // remove(Long)
+
+  @Override
+  public Iterator<Long> keys() {
+    return longKeys();
+  } // keys()
+
+  @Override
+  public Iterator<V> values() {
+    return new Iterator<V>() {
+      LongSLNode<V> next = LongSkipList.this.front[0];
+
+      @Override
+      public boolean hasNext() {
+        return this.next != null;
+      } // hasNext()
+
+      @Override
+      public V next() {
+        if (this.next == null) {
+          throw new NoSuchElementException();
+        } // if
+        V value = this.next.value;
+        this.next = this.next.next[0];
+        return value;
+      } // next()
+    };
+  } // values()
+
+  @Override
+  public void forEach(BiConsumer<? super Long, ? super V> action) {
+    for (LongSLNode<V> curr = this.front[0]; curr != null; curr = curr.next[0]) {
+      action.accept(curr.key, curr.value);
+    } // for
+  } // forEach(BiConsumer)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Find the first node whose key is at least key (or null, if there is no such node). If preds
+   * is non-null, also fill it with the last node before key at each level (null stands for the
+   * front of the list).
+   */
+  LongSLNode<V> search(long key, LongSLNode<V>[] preds) {
+    stepCounter = 0;
+    LongSLNode<V> prev = null;
+    LongSLNode<V> curr = null;
+    for (int level = this.height - 1; level >= 0; level--) {
+      curr = (prev == null) ? this.front[level] : prev.next[level];
+      while (curr != null && curr.key < key) {
+        prev = curr;
+        curr = curr.next[level];
+        stepCounter++;
+      } // while
+      if (preds != null) {
+        preds[level] = prev;
+      } // if
+    } // for
+    return curr;
+  } // search(long, LongSLNode<V>[])
+
+  /**
+   * Pick a random height for a new node.
+   */
+  int randomHeight() {
+    return this.levels.nextLevel(SkipList.INITIAL_HEIGHT);
+  } // randomHeight()
+
+  /**
+   * Create an array of n node pointers, all null.
+   */
+  @SuppressWarnings("unchecked")
+  static <V> LongSLNode<V>[] newNodeArray(int n) {
+    return (LongSLNode<V>[]) new LongSLNode<?>[n];
+  } // newNodeArray(int)
+
+} // class LongSkipList
+
+
+/**
+ * Nodes in the long-keyed skip list.
+ */
+class LongSLNode<V> {
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The key.
+   */
+  long key;
+
+  /**
+   * The value.
+   */
+  V value;
+
+  /**
+   * Pointers to the next nodes.
+   */
+  LongSLNode<V>[] next;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new node of height n with the specified key and value.
+   */
+  public LongSLNode(long key, V value, int n) {
+    this.key = key;
+    this.value = value;
+    this.next = LongSkipList.newNodeArray(n);
+  } // LongSLNode(long, V, int)
+} // LongSLNode<V>
@@ -0,0 +1,138 @@
+import static org.junit.Assert.*;
+import java.util.Iterator;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Test;
+
+/**
+ * Some tests of the primitive-keyed skip lists.
+ */
+public class LongSkipListTests {
+
+  /**
+   * A random number generator for the randomized tests.
+   */
+  Random random = new Random();
+
+  /**
+   * Add and remove random keys, checking against a TreeMap as we go.
+   */
+  @Test
+  public void randomAgainstTreeMap() {
+    LongSkipList<String> longs = new LongSkipList<String>();
+    TreeMap<Long, String> expected = new TreeMap<Long, String>();
+    for (int i = 0; i < 2000; i++) {
+      long key = random.nextInt(500) - 250;
+      if (random.nextBoolean()) {
+        assertEquals(expected.put(key, "v" + i), longs.set(key, "v" + i));
+      } else {
+        assertEquals(expected.remove(key), longs.remove(key));
+      } // if/else
+      assertEquals(expected.size(), longs.size());
+    } // for
+    for (long key = -260; key < 260; key++) {
+      assertEquals(expected.containsKey(key), longs.containsKey(key));
+      assertEquals(expected.get(key), longs.getOrDefault(key, null));
+    } // for
+    Iterator<Long> expectedKeys = expected.keySet().iterator();
+    PrimitiveIterator.OfLong keys = longs.longKeys();
+    while (expectedKeys.hasNext()) {
+      assertEquals(expectedKeys.next().longValue(), keys.nextLong());
+    } // while
+    assertFalse(keys.hasNext());
+  } // randomAgainstTreeMap()
+
+  /**
+   * Make sure that get on a missing key throws, as it does for SkipList.
+   */
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void getMissing() {
+    LongSkipList<String> longs = new LongSkipList<String>();
+    longs.set(5, "five");
+    longs.get(6);
+  } // getMissing()
+
+  /**
+   * Check the long-to-long variant, including its missing value.
+   */
+  @Test
+  public void longLongBasics() {
+    LongLongSkipList longs = new LongLongSkipList(-1);
+    assertEquals(-1, longs.set(10, 100));
+    assertEquals(-1, longs.set(Long.MIN_VALUE, 1));
+    assertEquals(100, longs.set(10, 101));
+    assertEquals(Long.valueOf(1), longs.set(Long.valueOf(Long.MIN_VALUE), Long.valueOf(2)));
+    assertEquals(101, longs.get(10));
+    assertEquals(-1, longs.remove(11));
+    assertNull(longs.remove(Long.valueOf(11)));
+    assertEquals(2, longs.size());
+    PrimitiveIterator.OfLong keys = longs.longKeys();
+    assertEquals(Long.MIN_VALUE, keys.nextLong());
+    assertEquals(10, keys.nextLong());
+    assertFalse(keys.hasNext());
+    assertEquals(101, longs.remove(10));
+    assertFalse(longs.containsKey(10));
+    assertEquals(1, longs.size());
+  } // longLongBasics()
+
+  /**
+   * Random primitive and boxed calls on the long-to-long variant match a TreeMap, misses
+   * included. Values are small, so that the missing value is often stored as well, where only
+   * the boxed calls and containsKey can tell it from a miss.
+   */
+  @Test
+  public void longLongAgainstTreeMap() {
+    long missing = -1;
+    LongLongSkipList longs = new LongLongSkipList(missing);
+    TreeMap<Long, Long> expected = new TreeMap<Long, Long>();
+    for (int i = 0; i < 5000; i++) {
+      long key = random.nextInt(200) - 100;
+      long value = random.nextInt(7) - 3;
+      Long old = expected.get(key);
+      switch (random.nextInt(6)) {
+        case 0:
+          assertEquals((old == null) ? missing : old, longs.set(key, value));
+          expected.put(key, value);
+          break;
+        case 1:
+          assertEquals(old, longs.set(Long.valueOf(key), Long.valueOf(value)));
+          expected.put(key, value);
+          break;
+        case 2:
+          assertEquals((old == null) ? missing : old, longs.remove(key));
+          expected.remove(key);
+          break;
+        case 3:
+          assertEquals(old, longs.remove(Long.valueOf(key)));
+          expected.remove(key);
+          break;
+        case 4:
+          assertEquals((old == null) ? missing : old, longs.getOrDefault(key, missing));
+          assertEquals(old != null, longs.containsKey(key));
+          assertEquals(old != null, longs.containsKey(Long.valueOf(key)));
+          break;
+        default:
+          try {
+            assertEquals(old, random.nextBoolean() ? Long.valueOf(longs.get(key))
+                : longs.get(Long.valueOf(key)));
+            assertNotNull("get(" + key + ") should throw", old);
+          } catch (IndexOutOfBoundsException e) {
+            assertNull(old);
+          } // try/catch
+      } // switch
+      assertEquals(expected.size(), longs.size());
+    } // for
+    Iterator<Long> expectedKeys = expected.keySet().iterator();
+    Iterator<Long> expectedValues = expected.values().iterator();
+    PrimitiveIterator.OfLong keys = longs.longKeys();
+    Iterator<Long> values = longs.values();
+    while (expectedKeys.hasNext()) {
+      assertEquals(expectedKeys.next().longValue(), keys.nextLong());
+      assertEquals(expectedValues.next(), values.next());
+    } // while
+    assertFalse(keys.hasNext());
+    assertFalse(values.hasNext());
+  } // longLongAgainstTreeMap()
+
+} // class LongSkipListTests
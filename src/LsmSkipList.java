@@ -0,0 +1,790 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * A map kept as a log-structured merge tree: recent changes go into a SkipList in memory (the
+ * memtable), and older ones live in immutable sorted runs on the disk (SkipListSnapshots). Once
+ * the memtable holds enough entries, it is frozen and a background thread writes it to a new run
+ * by walking its level 0, which is already in order. Removing a key writes a tombstone, which
+ * hides the key in older runs.
+ *
+ * Reads look in the memtable, then the frozen memtables, then the runs, newest first, and stop
+ * at the first entry for the key. Once there are more than maxRuns runs, the background thread
+ * merges them all into one (the newest entry for each key wins, and tombstones are dropped, since
+ * nothing older is left for them to hide).
+ *
+ * Run files are named run-lo-hi.sks, for the range of flush numbers they hold, and only appear
+ * once they are complete, so opening the directory finds the runs of a clean close or a crash.
+ * The memtable is not logged, so a crash loses the changes since the last flush; pair the list
+ * with a WriteAheadLog if they matter.
+ *
+ * This class may be used by several threads at once: each operation locks the list. keys() and
+ * values() iterate over copies, and size() merges every run, so it takes time proportional to
+ * the number of entries.
+ */
+public class LsmSkipList<K, V> implements SimpleMap<K, V>, AutoCloseable {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The default number of entries in the memtable before it is flushed.
+   */
+  static final int DEFAULT_MEMTABLE_ENTRIES = 1 << 16;
+
+  /**
+   * The default number of runs allowed before they are compacted.
+   */
+  static final int DEFAULT_MAX_RUNS = 4;
+
+  /**
+   * The number of frozen memtables that may wait for the flusher before writers wait too.
+   */
+  static final int MAX_FROZEN = 2;
+
+  /**
+   * The value that marks a removed key.
+   */
+  static final Object TOMBSTONE = new Object();
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * Where the runs live.
+   */
+  final Path dir;
+
+  final Comparator<K> comparator;
+  final Codec<K> keyCodec;
+
+  /**
+   * Writes a value or a tombstone, as a flag byte and (for values) the value.
+   */
+  final Codec<Object> entryCodec;
+
+  /**
+   * The changes since the last freeze, with TOMBSTONE for removed keys.
+   */
+  SkipList<K, Object> memtable;
+
+  /**
+   * Memtables waiting to be flushed, newest first.
+   */
+  final ArrayList<SkipList<K, Object>> frozen = new ArrayList<SkipList<K, Object>>();
+
+  /**
+   * The runs, newest first.
+   */
+  final ArrayList<Run<K>> runs = new ArrayList<Run<K>>();
+
+  /**
+   * The number of the next flush.
+   */
+  long nextRun;
+
+  /**
+   * How many entries the memtable may hold before it is frozen.
+   */
+  final int memtableEntries;
+
+  /**
+   * How many runs there may be before they are compacted.
+   */
+  final int maxRuns;
+
+  /**
+   * The number of jobs handed to the background thread and not yet finished.
+   */
+  int jobs;
+
+  /**
+   * The numbers of flushes and compactions since the list was opened.
+   */
+  long flushes;
+  long compactions;
+
+  /**
+   * The first error the background thread ran into (null if there has been none).
+   */
+  IOException failure;
+
+  boolean closed;
+
+  /**
+   * Flushes and compacts, one job at a time.
+   */
+  final ExecutorService background;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Open (or create) the list stored in dir. The memtable is flushed once it holds memtableEntries
+   * entries, and the runs are compacted once there are more than maxRuns of them.
+   *
+   * @throws IllegalArgumentException if memtableEntries or maxRuns is less than 1.
+   * @throws IOException if the runs cannot be read.
+   */
+  public LsmSkipList(Path dir, Comparator<K> comparator, Codec<K> keyCodec, Codec<V> valueCodec,
+      int memtableEntries, int maxRuns) throws IOException {
+    if (memtableEntries < 1 || maxRuns < 1) {
+      throw new IllegalArgumentException("memtableEntries and maxRuns must be at least 1");
+    } // if
+    Files.createDirectories(dir);
+    this.dir = dir;
+    this.comparator = comparator;
+    this.keyCodec = keyCodec;
+    this.entryCodec = entryCodec(valueCodec);
+    this.memtableEntries = memtableEntries;
+    this.maxRuns = maxRuns;
+    this.memtable = new SkipList<K, Object>(comparator);
+    openRuns();
+    this.background = Executors.newSingleThreadExecutor((job) -> {
+      Thread thread = new Thread(job, "lsm-background");
+      thread.setDaemon(true);
+      return thread;
+    });
+  } // LsmSkipList(Path, Comparator<K>, Codec<K>, Codec<V>, int, int)
+
+  /**
+   * Open (or create) the list stored in dir, with the default memtable size and number of runs.
+   *
+   * @throws IOException if the runs cannot be read.
+   */
+  public LsmSkipList(Path dir, Comparator<K> comparator, Codec<K> keyCodec, Codec<V> valueCodec)
+      throws IOException {
+    this(dir, comparator, keyCodec, valueCodec, DEFAULT_MEMTABLE_ENTRIES, DEFAULT_MAX_RUNS);
+  } // LsmSkipList(Path, Comparator<K>, Codec<K>, Codec<V>)
+
+  // +-------------------+-------------------------------------------
+  // | SimpleMap methods |
+  // +-------------------+
+
+  /**
+   * Set the value associated with key in the memtable, flushing it if it is full. Finding the
+   * previous value may read the runs.
+   *
+   * @throws UncheckedIOException if the list is closed or a flush has failed.
+   */
+  @Override
+  public synchronized V set(K key, V value) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    } // if
+    checkUsable();
+    V result = lookup(key);
+    this.memtable.set(key, value);
+    maybeFreeze();
+    return result;
+  } // set(K, V)
+
+  /**
+   * Set the value associated with key without finding the previous one, so that, unlike set,
+   * this never reads the runs: a blind write.
+   *
+   * @throws UncheckedIOException if the list is closed or a flush has failed.
+   */
+  public synchronized void put(K key, V value) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    } // if
+    checkUsable();
+    this.memtable.set(key, value);
+    maybeFreeze();
+  } // put(K, V)
+
+  /**
+   * Get the value associated with key, from the newest place that has an entry for it.
+   *
+   * @throws IndexOutOfBoundsException if the key is not in the list.
+   * @throws UncheckedIOException if a run cannot be read.
+   */
+  @Override
+  public synchronized V get(K key) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    } // if
+    V result = lookup(key);
+    if (result == null) {
+      throw new IndexOutOfBoundsException("OutOfBounds");
+    } // if
+    return result;
+  } // get(K)
+
+  /**
+   * Count the entries, by merging the memtables and every run.
+   */
+  @Override
+  public synchronized int size() {
+    int size = 0;
+    for (Iterator<Map.Entry<K, V>> it = merged(); it.hasNext(); it.next()) {
+      size++;
+    } // for
+    return size;
+  } // size()
+
+  @Override
+  public synchronized boolean containsKey(K key) {
+    return key != null && lookup(key) != null;
+  } // containsKey(K)
+
+  /**
+   * Remove the value with the given key, by writing a tombstone to the memtable. (Removing a key
+   * that is not there writes nothing.)
+   *
+   * @throws UncheckedIOException if the list is closed or a flush has failed.
+   */
+  @Override
+  public synchronized V remove(K key) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    } // if
+    checkUsable();
+    V result = lookup(key);
+    if (result != null) {
+      this.memtable.set(key, TOMBSTONE);
+      maybeFreeze();
+    } // if
+    return result;
+  } // remove(K)
+
+  /**
+   * Remove key without finding its value, so that, unlike remove, this never reads the runs. It
+   * writes a tombstone whether or not the key is there (the next compaction drops it).
+   *
+   * @throws UncheckedIOException if the list is closed or a flush has failed.
+   */
+  public synchronized void delete(K key) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    } // if
+    checkUsable();
+    this.memtable.set(key, TOMBSTONE);
+    maybeFreeze();
+  } // delete(K)
+
+  @Override
+  public synchronized Iterator<K> keys() {
+    ArrayList<K> copy = new ArrayList<K>();
+    forEach((key, value) -> copy.add(key));
+    return copy.iterator();
+  } // keys()
+
+  @Override
+  public synchronized Iterator<V> values() {
+    ArrayList<V> copy = new ArrayList<V>();
+    forEach((key, value) -> copy.add(value));
+    return copy.iterator();
+  } // values()
+
+  @Override
+  public synchronized void forEach(BiConsumer<? super K, ? super V> action) {
+    for (Iterator<Map.Entry<K, V>> it = merged(); it.hasNext();) {
+      Map.Entry<K, V> entry = it.next();
+      action.accept(entry.getKey(), entry.getValue());
+    } // for
+  } // forEach(BiConsumer)
+
+  // +------------------------+--------------------------------------
+  // | Flushes and compaction |
+  // +------------------------+
+
+  /**
+   * Freeze the memtable (if it holds anything) and wait until every frozen memtable is in a run
+   * and any compaction that followed is done.
+   *
+   * @throws UncheckedIOException if the list is closed, a flush fails or waiting is interrupted.
+   */
+  public synchronized void flush() {
+    checkUsable();
+    if (this.memtable.size() > 0) {
+      freeze();
+    } // if
+    while (this.jobs > 0) {
+      await();
+    } // while
+    checkUsable();
+  } // flush()
+
+  /**
+   * Get the number of runs on the disk.
+   */
+  public synchronized int runs() {
+    return this.runs.size();
+  } // runs()
+
+  /**
+   * Get the number of memtables flushed since the list was opened.
+   */
+  public synchronized long flushes() {
+    return this.flushes;
+  } // flushes()
+
+  /**
+   * Get the number of compactions since the list was opened.
+   */
+  public synchronized long compactions() {
+    return this.compactions;
+  } // compactions()
+
+  /**
+   * Flush the memtable, wait for the background thread to finish and close the runs. The list
+   * may not be used afterwards.
+   *
+   * @throws UncheckedIOException if the last flush fails.
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (this.closed) {
+        return;
+      } // if
+      if (this.failure == null && this.memtable.size() > 0) {
+        freeze();
+      } // if
+      this.closed = true;
+    } // synchronized
+    this.background.shutdown();
+    try {
+      this.background.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } // try/catch
+    synchronized (this) {
+      for (Run<K> run : this.runs) {
+        run.snapshot.close();
+      } // for
+      if (this.failure != null) {
+        throw new UncheckedIOException(this.failure);
+      } // if
+    } // synchronized
+  } // close()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Find the newest entry for key and return its value, or null if there is none or it is a
+   * tombstone. Call only while holding the lock.
+   */
+  @SuppressWarnings("unchecked")
+  V lookup(K key) {
+    Object value = probe(this.memtable, key);
+    for (int i = 0; value == null && i < this.frozen.size(); i++) {
+      value = probe(this.frozen.get(i), key);
+    } // for
+    for (int i = 0; value == null && i < this.runs.size(); i++) {
+      value = this.runs.get(i).snapshot.getOrNull(key);
+    } // for
+    return (value == TOMBSTONE) ? null : (V) value;
+  } // lookup(K)
+
+  /**
+   * Get the value (or tombstone) for key in a memtable, or null if it has no entry.
+   */
+  static <K> Object probe(SkipList<K, Object> table, K key) {
+    return table.find(key);
+  } // probe(SkipList<K, Object>, K)
+
+  /**
+   * Get the live entries of the memtables and runs, in order. Call only while holding the lock.
+   */
+  Iterator<Map.Entry<K, V>> merged() {
+    ArrayList<Iterator<Map.Entry<K, Object>>> sources =
+        new ArrayList<Iterator<Map.Entry<K, Object>>>();
+    sources.add(entries(this.memtable));
+    for (SkipList<K, Object> table : this.frozen) {
+      sources.add(entries(table));
+    } // for
+    for (Run<K> run : this.runs) {
+      sources.add(run.snapshot.entries());
+    } // for
+    return new Merge<K, V>(this.comparator, sources);
+  } // merged()
+
+  /**
+   * Get the entries of a memtable, in order.
+   */
+  static <K> Iterator<Map.Entry<K, Object>> entries(SkipList<K, Object> table) {
+    Iterator<SLNode<K, Object>> nodes = table.nodes();
+    return new Iterator<Map.Entry<K, Object>>() {
+      @Override
+      public boolean hasNext() {
+        return nodes.hasNext();
+      } // hasNext()
+
+      @Override
+      public Map.Entry<K, Object> next() {
+        SLNode<K, Object> node = nodes.next();
+        return new AbstractMap.SimpleImmutableEntry<K, Object>(node.key, table.valueOf(node));
+      } // next()
+    }; // new Iterator
+  } // entries(SkipList<K, Object>)
+
+  /**
+   * Freeze the memtable once it is full, and wait if the flusher has fallen too far behind. Call
+   * only while holding the lock.
+   */
+  void maybeFreeze() {
+    if (this.memtable.size() >= this.memtableEntries) {
+      freeze();
+      awaitFrozen(MAX_FROZEN);
+    } // if
+  } // maybeFreeze()
+
+  /**
+   * Start a new memtable and hand the old one to the background thread. Call only while holding
+   * the lock.
+   */
+  void freeze() {
+    SkipList<K, Object> table = this.memtable;
+    this.frozen.add(0, table);
+    this.memtable = new SkipList<K, Object>(this.comparator);
+    this.jobs++;
+    this.background.execute(() -> flush(table));
+  } // freeze()
+
+  /**
+   * Wait until no more than limit memtables are waiting to be flushed. Call only while holding
+   * the lock.
+   */
+  void awaitFrozen(int limit) {
+    while (this.frozen.size() > limit) {
+      await();
+    } // while
+    checkUsable();
+  } // awaitFrozen(int)
+
+  /**
+   * Wait for the background thread to finish something. Call only while holding the lock.
+   *
+   * @throws UncheckedIOException if it has failed or waiting is interrupted.
+   */
+  void await() {
+    checkUsable();
+    try {
+      wait();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new UncheckedIOException(
+          new InterruptedIOException("Interrupted waiting for a flush"));
+    } // try/catch
+  } // await()
+
+  /**
+   * Write a frozen memtable to a new run, then compact the runs if there are too many. Runs on
+   * the background thread, which is the only one that changes the runs, so the memtable can be
+   * read without the lock (nobody writes to it any more).
+   */
+  void flush(SkipList<K, Object> table) {
+    try {
+      long number;
+      synchronized (this) {
+        if (this.failure != null) {
+          return;
+        } // if
+        number = this.nextRun++;
+      } // synchronized
+      Run<K> run = write(entries(table), number, number);
+      synchronized (this) {
+        this.runs.add(0, run);
+        this.frozen.remove(table);
+        this.flushes++;
+        notifyAll();
+      } // synchronized
+      if (runCount() > this.maxRuns) {
+        compact();
+      } // if
+    } catch (IOException | UncheckedIOException e) {
+      synchronized (this) {
+        this.failure = (e instanceof IOException) ? (IOException) e
+            : ((UncheckedIOException) e).getCause();
+      } // synchronized
+    } finally {
+      synchronized (this) {
+        this.jobs--;
+        notifyAll();
+      } // synchronized
+    } // try/catch/finally
+  } // flush(SkipList<K, Object>)
+
+  /**
+   * Merge every run into one, then swap it in and delete the old ones. Runs on the background
+   * thread, reading the runs through snapshots of its own so that readers keep theirs.
+   */
+  void compact() throws IOException {
+    ArrayList<Run<K>> old;
+    synchronized (this) {
+      old = new ArrayList<Run<K>>(this.runs);
+    } // synchronized
+    ArrayList<SkipListSnapshot<K, Object>> readers = new ArrayList<SkipListSnapshot<K, Object>>();
+    Run<K> merged;
+    try {
+      ArrayList<Iterator<Map.Entry<K, Object>>> sources =
+          new ArrayList<Iterator<Map.Entry<K, Object>>>();
+      for (Run<K> run : old) {
+        SkipListSnapshot<K, Object> reader =
+            SkipListSnapshot.open(run.file, this.comparator, this.keyCodec, this.entryCodec);
+        readers.add(reader);
+        sources.add(reader.entries());
+      } // for
+      Iterator<Map.Entry<K, Object>> live = new Merge<K, Object>(this.comparator, sources);
+      merged = write(live, old.get(old.size() - 1).lo, old.get(0).hi);
+    } finally {
+      for (SkipListSnapshot<K, Object> reader : readers) {
+        reader.close();
+      } // for
+    } // try/finally
+    synchronized (this) {
+      this.runs.removeAll(old);
+      this.runs.add(merged);
+      this.compactions++;
+      for (Run<K> run : old) {
+        run.snapshot.close();
+      } // for
+    } // synchronized
+    for (Run<K> run : old) {
+      Files.deleteIfExists(run.file);
+    } // for
+  } // compact()
+
+  /**
+   * Write entries to the run for flushes lo to hi, by way of a temporary file, and open it.
+   */
+  Run<K> write(Iterator<Map.Entry<K, Object>> entries, long lo, long hi) throws IOException {
+    Path file = this.dir.resolve(String.format("run-%d-%d.sks", lo, hi));
+    Path temp = this.dir.resolve(file.getFileName() + ".tmp");
+    try (SkipListSnapshot.Writer<K, Object> writer = new SkipListSnapshot.Writer<K, Object>(temp,
+        this.comparator, this.keyCodec, this.entryCodec, SkipListSnapshot.DEFAULT_BLOCK_SIZE)) {
+      while (entries.hasNext()) {
+        Map.Entry<K, Object> entry = entries.next();
+        writer.append(entry.getKey(), entry.getValue());
+      } // while
+      writer.finish();
+    } // try
+    Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    // Make the new name stick before compact deletes the runs this one replaces
+    SkipListSnapshot.syncDirectory(this.dir);
+    return new Run<K>(file, lo, hi,
+        SkipListSnapshot.open(file, this.comparator, this.keyCodec, this.entryCodec));
+  } // write(Iterator<Map.Entry<K, Object>>, long, long)
+
+  /**
+   * Get the number of runs.
+   */
+  synchronized int runCount() {
+    return this.runs.size();
+  } // runCount()
+
+  /**
+   * Open the runs in the directory, newest first. A run whose flushes are all covered by another
+   * run was compacted away just before a crash, so it is deleted, as are half-written files.
+   */
+  void openRuns() throws IOException {
+    ArrayList<Run<K>> found = new ArrayList<Run<K>>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(this.dir, "run-*")) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        if (name.endsWith(".tmp")) {
+          Files.delete(file);
+        } else if (name.endsWith(".sks")) {
+          String[] range = name.substring(4, name.length() - 4).split("-");
+          found.add(new Run<K>(file, Long.parseLong(range[0]), Long.parseLong(range[1]), null));
+        } // if/else
+      } // for
+    } // try
+    found.sort((a, b) -> (a.hi != b.hi) ? Long.compare(b.hi, a.hi) : Long.compare(a.lo, b.lo));
+    try {
+      for (Run<K> run : found) {
+        if (!this.runs.isEmpty() && this.runs.get(this.runs.size() - 1).lo <= run.lo) {
+          Files.delete(run.file);
+          continue;
+        } // if
+        this.runs.add(new Run<K>(run.file, run.lo, run.hi,
+            SkipListSnapshot.open(run.file, this.comparator, this.keyCodec, this.entryCodec)));
+        this.nextRun = Math.max(this.nextRun, run.hi + 1);
+      } // for
+    } catch (IOException | RuntimeException e) {
+      for (Run<K> run : this.runs) {
+        run.snapshot.close();
+      } // for
+      throw e;
+    } // try/catch
+  } // openRuns()
+
+  /**
+   * Make sure the list can still be changed.
+   *
+   * @throws UncheckedIOException if it is closed or a flush has failed.
+   */
+  void checkUsable() {
+    if (this.failure != null) {
+      throw new UncheckedIOException("Background flush failed", this.failure);
+    } // if
+    if (this.closed) {
+      throw new UncheckedIOException(new IOException("List is closed"));
+    } // if
+  } // checkUsable()
+
+  /**
+   * Make the codec for the entries of runs, which are values or tombstones.
+   */
+  @SuppressWarnings("unchecked")
+  static <V> Codec<Object> entryCodec(Codec<V> valueCodec) {
+    return new Codec<Object>() {
+      @Override
+      public void write(Object value, DataOutput out) throws IOException {
+        if (value == TOMBSTONE) {
+          out.writeByte(0);
+        } else {
+          out.writeByte(1);
+          valueCodec.write((V) value, out);
+        } // if/else
+      } // write(Object, DataOutput)
+
+      @Override
+      public Object read(DataInput in) throws IOException {
+        return (in.readByte() == 0) ? TOMBSTONE : valueCodec.read(in);
+      } // read(DataInput)
+    };
+  } // entryCodec(Codec<V>)
+
+  // +---------------+-----------------------------------------------
+  // | Inner classes |
+  // +---------------+
+
+  /**
+   * One sorted run: its file, the range of flushes it holds and the snapshot that reads it.
+   */
+  static class Run<K> {
+    final Path file;
+    final long lo;
+    final long hi;
+    final SkipListSnapshot<K, Object> snapshot;
+
+    Run(Path file, long lo, long hi, SkipListSnapshot<K, Object> snapshot) {
+      this.file = file;
+      this.lo = lo;
+      this.hi = hi;
+      this.snapshot = snapshot;
+    } // Run(Path, long, long, SkipListSnapshot<K, Object>)
+  } // class Run
+
+  /**
+   * Merges sorted sources, given newest first, into the live entries: for each key, the entry
+   * from the newest source that has one, unless that entry is a tombstone.
+   */
+  static class Merge<K, V> implements Iterator<Map.Entry<K, V>> {
+    /**
+     * The current entry of each source that has one, smallest key (then newest source) first.
+     */
+    final PriorityQueue<Head<K>> heads;
+
+    final Comparator<K> comparator;
+
+    /**
+     * The next entry to report (null if there are no more).
+     */
+    Map.Entry<K, V> next;
+
+    Merge(Comparator<K> comparator, ArrayList<Iterator<Map.Entry<K, Object>>> sources) {
+      this.comparator = comparator;
+      this.heads = new PriorityQueue<Head<K>>(Math.max(1, sources.size()), (a, b) -> {
+        int order = comparator.compare(a.entry.getKey(), b.entry.getKey());
+        return (order != 0) ? order : Integer.compare(a.age, b.age);
+      });
+      for (int age = 0; age < sources.size(); age++) {
+        Iterator<Map.Entry<K, Object>> source = sources.get(age);
+        if (source.hasNext()) {
+          this.heads.add(new Head<K>(source, age));
+        } // if
+      } // for
+      advance();
+    } // Merge(Comparator<K>, ArrayList<Iterator<Map.Entry<K, Object>>>)
+
+    @Override
+    public boolean hasNext() {
+      return this.next != null;
+    } // hasNext()
+
+    @Override
+    public Map.Entry<K, V> next() {
+      if (this.next == null) {
+        throw new NoSuchElementException();
+      } // if
+      Map.Entry<K, V> result = this.next;
+      advance();
+      return result;
+    } // next()
+
+    /**
+     * Find the next live entry.
+     */
+    @SuppressWarnings("unchecked")
+    void advance() {
+      this.next = null;
+      while (this.next == null && !this.heads.isEmpty()) {
+        Head<K> newest = this.heads.poll();
+        Map.Entry<K, Object> entry = newest.entry;
+        // Skip the older entries for the same key
+        while (!this.heads.isEmpty()
+            && this.comparator.compare(this.heads.peek().entry.getKey(), entry.getKey()) == 0) {
+          refill(this.heads.poll());
+        } // while
+        refill(newest);
+        if (entry.getValue() != TOMBSTONE) {
+          this.next = (Map.Entry<K, V>) (Map.Entry<K, ?>) entry;
+        } // if
+      } // while
+    } // advance()
+
+    /**
+     * Put a head back, on the next entry of its source, if there is one.
+     */
+    void refill(Head<K> head) {
+      if (head.source.hasNext()) {
+        head.entry = head.source.next();
+        this.heads.add(head);
+      } // if
+    } // refill(Head<K>)
+  } // class Merge
+
+  /**
+   * The current entry of one source of a merge.
+   */
+  static class Head<K> {
+    final Iterator<Map.Entry<K, Object>> source;
+    final int age;
+    Map.Entry<K, Object> entry;
+
+    Head(Iterator<Map.Entry<K, Object>> source, int age) {
+      this.source = source;
+      this.age = age;
+      this.entry = source.next();
+    } // Head(Iterator<Map.Entry<K, Object>>, int)
+  } // class Head
+
+} // class LsmSkipList
@@ -0,0 +1,155 @@
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Test;
+
+/**
+ * Some tests of the log-structured list: flushes, tombstones, compaction and reopening.
+ */
+public class LsmSkipListTests {
+
+  /**
+   * A comparator for integer keys.
+   */
+  static final Comparator<Integer> INTS = (i, j) -> Integer.compare(i, j);
+
+  /**
+   * A random number generator for the randomized tests.
+   */
+  Random random = new Random();
+
+  /**
+   * Random changes, with a tiny memtable so that many runs are flushed and compacted, match a
+   * TreeMap, before and after reopening.
+   */
+  @Test
+  public void randomChangesMatchTreeMap() throws IOException {
+    Path dir = DurableSkipListTests.tempDir();
+    try {
+      TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+      try (LsmSkipList<Integer, String> list =
+          new LsmSkipList<Integer, String>(dir, INTS, Codec.INTEGER, Codec.STRING, 64, 3)) {
+        for (int i = 0; i < 5000; i++) {
+          int key = random.nextInt(800);
+          if (random.nextInt(3) == 0) {
+            assertEquals(expected.remove(key), list.remove(key));
+          } else {
+            assertEquals(expected.put(key, "v" + i), list.set(key, "v" + i));
+          } // if/else
+          if (i % 1000 == 0) {
+            DurableSkipListTests.assertSame(expected, list);
+          } // if
+        } // for
+        list.flush();
+        assertTrue(list.flushes() > 10);
+        assertTrue(list.compactions() > 0);
+        assertTrue(list.runs() <= 3);
+        DurableSkipListTests.assertSame(expected, list);
+      } // try
+      try (LsmSkipList<Integer, String> list =
+          new LsmSkipList<Integer, String>(dir, INTS, Codec.INTEGER, Codec.STRING, 64, 3)) {
+        DurableSkipListTests.assertSame(expected, list);
+      } // try
+    } finally {
+      DurableSkipListTests.delete(dir);
+    } // try/finally
+  } // randomChangesMatchTreeMap()
+
+  /**
+   * Blind writes and deletes match a TreeMap, and never read a block of any run.
+   */
+  @Test
+  public void blindWritesSkipTheRuns() throws IOException {
+    Path dir = DurableSkipListTests.tempDir();
+    try {
+      TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+      try (LsmSkipList<Integer, String> list =
+          new LsmSkipList<Integer, String>(dir, INTS, Codec.INTEGER, Codec.STRING, 64, 3)) {
+        for (int i = 0; i < 5000; i++) {
+          int key = random.nextInt(800);
+          if (random.nextInt(3) == 0) {
+            expected.remove(key);
+            list.delete(key);
+          } else {
+            expected.put(key, "v" + i);
+            list.put(key, "v" + i);
+          } // if/else
+        } // for
+        list.flush();
+        assertTrue(list.flushes() > 10);
+        for (LsmSkipList.Run<Integer> run : list.runs) {
+          assertEquals(-1, run.snapshot.cachedBlock);
+        } // for
+        DurableSkipListTests.assertSame(expected, list);
+      } // try
+      try (LsmSkipList<Integer, String> list =
+          new LsmSkipList<Integer, String>(dir, INTS, Codec.INTEGER, Codec.STRING, 64, 3)) {
+        DurableSkipListTests.assertSame(expected, list);
+      } // try
+    } finally {
+      DurableSkipListTests.delete(dir);
+    } // try/finally
+  } // blindWritesSkipTheRuns()
+
+  /**
+   * A tombstone in the memtable hides the key in the runs, and survives a flush.
+   */
+  @Test
+  public void tombstonesHideOlderRuns() throws IOException {
+    Path dir = DurableSkipListTests.tempDir();
+    try (LsmSkipList<Integer, String> list =
+        new LsmSkipList<Integer, String>(dir, INTS, Codec.INTEGER, Codec.STRING, 1000, 10)) {
+      list.set(1, "one");
+      list.set(2, "two");
+      list.flush();
+      assertEquals(1, list.runs());
+      assertEquals("one", list.remove(1));
+      assertFalse(list.containsKey(1));
+      assertNull(list.remove(1));
+      list.flush();
+      assertEquals(2, list.runs());
+      assertFalse(list.containsKey(1));
+      assertEquals("two", list.get(2));
+      assertEquals(1, list.size());
+      list.set(1, "uno");
+      assertEquals("uno", list.get(1));
+    } finally {
+      DurableSkipListTests.delete(dir);
+    } // try/finally
+  } // tombstonesHideOlderRuns()
+
+  /**
+   * Runs that a compaction replaced, left behind by a crash, are ignored and deleted on open.
+   */
+  @Test
+  public void reopenIgnoresCompactedRuns() throws IOException {
+    Path dir = DurableSkipListTests.tempDir();
+    try {
+      try (LsmSkipList<Integer, String> list =
+          new LsmSkipList<Integer, String>(dir, INTS, Codec.INTEGER, Codec.STRING, 1000, 1)) {
+        list.set(1, "one");
+        list.flush();
+        Files.copy(dir.resolve("run-0-0.sks"), dir.resolve("stale.sks"));
+        list.remove(1);
+        list.set(2, "two");
+        list.flush();
+      } // try
+      // Put back the first run, as if the compaction had not got to deleting it
+      Files.move(dir.resolve("stale.sks"), dir.resolve("run-0-0.sks"));
+      try (LsmSkipList<Integer, String> list =
+          new LsmSkipList<Integer, String>(dir, INTS, Codec.INTEGER, Codec.STRING, 1000, 1)) {
+        assertEquals(1, list.runs());
+        assertFalse(list.containsKey(1));
+        assertEquals("two", list.get(2));
+      } // try
+      assertFalse(Files.exists(dir.resolve("run-0-0.sks")));
+    } finally {
+      DurableSkipListTests.delete(dir);
+    } // try/finally
+  } // reopenIgnoresCompactedRuns()
+
+} // class LsmSkipListTests
@@ -0,0 +1,147 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * An OffHeapSkipList whose segments are mapped from a file, so that the list outlives the
+ * process. Opening an existing file maps it and reads the header, without touching the nodes;
+ * the operating system pages them in as searches reach them. The file is the segments end to
+ * end, with the header at the start of the first.
+ *
+ * Changes are in the file as soon as they are made, as far as other processes are concerned, and
+ * reach the disk on flush() or close(). If the process dies between the two, the next open
+ * rebuilds the header by walking the list (the free space of removed nodes is lost). Writes are
+ * not atomic if the machine itself crashes; see the write-ahead log for that.
+ */
+public class MappedSkipList extends OffHeapSkipList {
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The file.
+   */
+  final FileChannel channel;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Wrap a list around segments already mapped from channel.
+   */
+  MappedSkipList(FileChannel channel, int segmentSize, ArrayList<ByteBuffer> segments) {
+    super(0, segmentSize, segments);
+    this.channel = channel;
+  } // MappedSkipList(FileChannel, int, ArrayList<ByteBuffer>)
+
+  /**
+   * Open the list in file, creating an empty one (with segments of segmentSize bytes) if the file
+   * does not exist or is empty. An existing list keeps the segment size it was created with.
+   *
+   * @throws IllegalArgumentException if segmentSize is not a power of two of at least 4096.
+   * @throws IOException if the file cannot be opened or mapped.
+   */
+  public static MappedSkipList open(Path file, int segmentSize) throws IOException {
+    checkSegmentSize(segmentSize);
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      long length = channel.size();
+      ByteBuffer header = ByteBuffer.allocate(BITS_AT + 4).order(ByteOrder.LITTLE_ENDIAN);
+      if (length >= header.capacity()) {
+        channel.read(header, 0);
+        if (header.getLong(MAGIC_AT) == MAGIC) {
+          segmentSize = 1 << header.getInt(BITS_AT);
+        } // if
+      } // if
+      long count = Math.max(1, (length + segmentSize - 1) / segmentSize);
+      ArrayList<ByteBuffer> segments = new ArrayList<ByteBuffer>();
+      for (long i = 0; i < count; i++) {
+        segments.add(map(channel, i * segmentSize, segmentSize));
+      } // for
+      return new MappedSkipList(channel, segmentSize, segments);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    } // try/catch
+  } // open(Path, int)
+
+  /**
+   * Open the list in file, creating an empty one with 64 MiB segments if there is none.
+   *
+   * @throws IOException if the file cannot be opened or mapped.
+   */
+  public static MappedSkipList open(Path file) throws IOException {
+    return open(file, DEFAULT_SEGMENT_SIZE);
+  } // open(Path)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Write the header and force every change out to the disk.
+   */
+  public void flush() {
+    checkOpen();
+    writeHeader();
+    for (ByteBuffer segment : this.segments) {
+      ((MappedByteBuffer) segment).force();
+    } // for
+  } // flush()
+
+  /**
+   * Flush the list, unmap it and close the file.
+   *
+   * @throws UncheckedIOException if the file cannot be closed.
+   */
+  @Override
+  public void close() {
+    if (this.segments == null) {
+      return;
+    } // if
+    flush();
+    super.close();
+    try {
+      this.channel.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } // try/catch
+  } // close()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Map the next segment of the file, growing the file to hold it.
+   *
+   * @throws UncheckedIOException if the file cannot be mapped.
+   */
+  @Override
+  ByteBuffer newSegment() {
+    try {
+      return map(this.channel, (long) this.segments.size() << this.segmentBits,
+          (int) (this.segmentMask + 1));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } // try/catch
+  } // newSegment()
+
+  /**
+   * Map size bytes of channel, starting at position.
+   */
+  static ByteBuffer map(FileChannel channel, long position, int size) throws IOException {
+    return channel.map(FileChannel.MapMode.READ_WRITE, position, size)
+        .order(ByteOrder.LITTLE_ENDIAN);
+  } // map(FileChannel, long, int)
+
+} // class MappedSkipList
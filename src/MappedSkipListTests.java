@@ -0,0 +1,84 @@
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.TreeMap;
+import org.junit.Test;
+
+/**
+ * Some tests of the memory-mapped skip list.
+ */
+public class MappedSkipListTests {
+
+  /**
+   * A list survives being closed and reopened, across several segments.
+   */
+  @Test
+  public void reopenKeepsEntries() throws IOException {
+    Path file = Files.createTempFile("mapped", ".skl");
+    try {
+      TreeMap<Long, Long> expected = new TreeMap<Long, Long>();
+      try (MappedSkipList list = MappedSkipList.open(file, 4096)) {
+        for (long key = 0; key < 3000; key++) {
+          list.set(key * 7 % 3001, key);
+          expected.put(key * 7 % 3001, key);
+        } // for
+        for (long key = 0; key < 3000; key += 3) {
+          list.remove(key);
+          expected.remove(key);
+        } // for
+      } // try
+      try (MappedSkipList list = MappedSkipList.open(file, 1 << 20)) {
+        assertEquals(4096, list.segmentMask + 1);
+        assertEquals(expected.size(), list.size());
+        for (long key = 0; key < 3002; key++) {
+          assertEquals(expected.getOrDefault(key, -1L).longValue(), list.getOrDefault(key, -1));
+        } // for
+        ArrayList<Long> range = new ArrayList<Long>();
+        list.forEachLong(100, 200, (k, v) -> range.add(k));
+        assertEquals(new ArrayList<Long>(expected.subMap(100L, 200L).keySet()), range);
+        list.set(5000, 1);
+      } // try
+      try (MappedSkipList list = MappedSkipList.open(file)) {
+        assertEquals(expected.size() + 1, list.size());
+        assertEquals(1, list.get(5000));
+      } // try
+    } finally {
+      Files.delete(file);
+    } // try/finally
+  } // reopenKeepsEntries()
+
+  /**
+   * A list whose header was not written after its last changes is rebuilt when opened.
+   */
+  @Test
+  public void reopenAfterCrashRecovers() throws IOException {
+    Path file = Files.createTempFile("mapped", ".skl");
+    MappedSkipList crashed = MappedSkipList.open(file, 4096);
+    try {
+      for (long key = 0; key < 500; key++) {
+        crashed.set(key, -key);
+      } // for
+      crashed.flush();
+      for (long key = 500; key < 1000; key++) {
+        crashed.set(key, -key);
+      } // for
+      crashed.remove(10);
+      // Open a second view while the first never wrote its header, as after a crash
+      try (MappedSkipList recovered = MappedSkipList.open(file)) {
+        assertEquals(999, recovered.size());
+        assertEquals(-999, recovered.get(999));
+        assertFalse(recovered.containsKey(10));
+        recovered.set(2000, 2);
+        assertEquals(2, recovered.get(2000));
+        assertEquals(-998, recovered.get(998));
+      } // try
+    } finally {
+      crashed.segments = null;
+      crashed.channel.close();
+      Files.delete(file);
+    } // try/finally
+  } // reopenAfterCrashRecovers()
+
+} // class MappedSkipListTests
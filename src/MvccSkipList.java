@@ -0,0 +1,638 @@
+import java.util.AbstractMap;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiConsumer;
+
+/**
+ * A skip list that keeps the older values of its keys for as long as someone may want them, so
+ * that snapshot() can hand out, in O(1), a read-only view of the list as it was at that moment
+ * while the writer carries on. Each key's node holds a chain of versions, newest first, each
+ * stamped with the number of the write that made it; removing a key adds a version with no
+ * value. A snapshot remembers the stamp of the last write before it, and reads the newest
+ * version of each key that is no newer than that.
+ *
+ * As in SkipList's single-writer mode, one thread (the first to write) makes every change, and
+ * any number of threads may read the list and take and use snapshots at the same time. A
+ * version is dropped once every open snapshot (and every later one) can see a newer version of
+ * its key: each write trims the chain of the key it changed, and sweeps a couple more nodes, so
+ * old versions of keys that are no longer written go away too; collect() sweeps the whole list
+ * at once. A snapshot pins the versions it can see until it is closed.
+ *
+ * There is no positional access: positions are not versioned.
+ */
+public class MvccSkipList<K, V> implements SimpleMap<K, V> {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * How many nodes each write sweeps for versions that nobody can see any more.
+   */
+  static final int SWEEP_STEPS = 2;
+
+  /**
+   * The stamp that reads the newest version of everything.
+   */
+  static final long LATEST = Long.MAX_VALUE;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The keys, each with its chain of versions. Other threads read it while the writer writes.
+   */
+  final SkipList<K, Version<V>> list;
+
+  /**
+   * The stamp of the last write, and the number of keys it left.
+   */
+  volatile Moment moment;
+
+  /**
+   * How many snapshots are open at each stamp.
+   */
+  final ConcurrentSkipListMap<Long, Integer> open;
+
+  /**
+   * The next node to sweep (null to start again from the front).
+   */
+  SLNode<K, Version<V>> sweep;
+
+  /**
+   * The number of versions kept, counting the newest one of each key. Only the writer uses it.
+   */
+  long versions;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new, empty list that orders keys with comparator.
+   */
+  public MvccSkipList(Comparator<K> comparator) {
+    this.list = new SkipList<K, Version<V>>(comparator, LevelGenerator.withProbability(0.5),
+        SkipList.DEFAULT_MAX_HEIGHT, true);
+    this.moment = new Moment(0, 0);
+    this.open = new ConcurrentSkipListMap<Long, Integer>();
+  } // MvccSkipList(Comparator<K>)
+
+  // +-------------------+-------------------------------------------
+  // | SimpleMap methods |
+  // +-------------------+
+
+  /**
+   * Set the value associated with key. Only the writer may call this.
+   *
+   * @throws IllegalStateException if another thread is the writer.
+   */
+  @Override
+  public V set(K key, V value) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    } // if
+    return write(key, value);
+  } // set(K, V)
+
+  @Override
+  public V get(K key) {
+    V value = find(key);
+    if (value == null) {
+      throw new IndexOutOfBoundsException("OutOfBounds");
+    } // if
+    return value;
+  } // get(K)
+
+  @Override
+  public int size() {
+    return this.moment.size;
+  } // size()
+
+  @Override
+  public boolean containsKey(K key) {
+    return key != null && find(key) != null;
+  } // containsKey(K)
+
+  /**
+   * Remove key. Only the writer may call this. Snapshots taken earlier still see it.
+   *
+   * @throws IllegalStateException if another thread is the writer.
+   */
+  @Override
+  public V remove(K key) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    } // if
+    return write(key, null);
+  } // remove(K)
+
+  @Override
+  public Iterator<K> keys() {
+    Iterator<Map.Entry<K, V>> entries = entries(null, null, LATEST);
+    return new Iterator<K>() {
+      @Override
+      public boolean hasNext() {
+        return entries.hasNext();
+      } // hasNext()
+
+      @Override
+      public K next() {
+        return entries.next().getKey();
+      } // next()
+    };
+  } // keys()
+
+  @Override
+  public Iterator<V> values() {
+    Iterator<Map.Entry<K, V>> entries = entries(null, null, LATEST);
+    return new Iterator<V>() {
+      @Override
+      public boolean hasNext() {
+        return entries.hasNext();
+      } // hasNext()
+
+      @Override
+      public V next() {
+        return entries.next().getValue();
+      } // next()
+    };
+  } // values()
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    forEach(LATEST, action);
+  } // forEach(BiConsumer)
+
+  // +------------------+--------------------------------------------
+  // | Snapshot methods |
+  // +------------------+
+
+  /**
+   * Get the value associated with key now, or null if there is none.
+   */
+  public V find(K key) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    } // if
+    return valueAt(key, LATEST);
+  } // find(K)
+
+  /**
+   * Take a read-only view of the list as it is now. It costs about as much as a get, whatever
+   * the size of the list, and any thread may take one. Close it when done, so that the versions
+   * it can see may be dropped.
+   */
+  public Snapshot<K, V> snapshot() {
+    while (true) {
+      Moment now = this.moment;
+      this.open.merge(now.stamp, 1, Integer::sum);
+      // If the writer moved on meanwhile, it may not have seen us in open, and may be dropping
+      // what we would see: try again at its new stamp
+      if (this.moment == now) {
+        return new Snapshot<K, V>(this, now.stamp, now.size);
+      } // if
+      release(now.stamp);
+    } // while
+  } // snapshot()
+
+  /**
+   * Get the number of open snapshots.
+   */
+  public int openSnapshots() {
+    int total = 0;
+    for (int count : this.open.values()) {
+      total += count;
+    } // for
+    return total;
+  } // openSnapshots()
+
+  /**
+   * Get the number of versions kept, counting the current one of each key (and the removal of
+   * each removed key that a snapshot may still see). Only the writer may call this.
+   */
+  public long versions() {
+    return this.versions;
+  } // versions()
+
+  /**
+   * Drop every version that no open snapshot can see, sweeping the whole list. Only the writer
+   * may call this.
+   *
+   * @throws IllegalStateException if another thread is the writer.
+   */
+  public void collect() {
+    this.list.checkWriter();
+    long horizon = horizon();
+    SLNode<K, Version<V>> node = this.list.after(null, 0);
+    while (node != null) {
+      SLNode<K, Version<V>> next = this.list.after(node, 0);
+      prune(node, horizon);
+      node = next;
+    } // while
+  } // collect()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Give key a new version with value (null to remove it), then drop the versions that nobody
+   * can see any more.
+   */
+  V write(K key, V value) {
+    SkipList<K, Version<V>> list = this.list;
+    list.checkWriter();
+    SLNode<K, Version<V>> found = list.search(key, list.update, list.updateRanks);
+    boolean present = list.matches(found, key);
+    Version<V> head = present ? found.value : null;
+    V old = (head == null) ? null : head.value;
+    if (old == null && value == null) {
+      return null;
+    } // if
+
+    Moment now = this.moment;
+    Version<V> version = new Version<V>(now.stamp + 1, value, head);
+    if (present) {
+      list.setValue(found, version);
+    } else {
+      list.insertAt(key, version, list.update, list.updateRanks);
+    } // if/else
+    this.versions++;
+    int size = now.size + ((old == null) ? 1 : 0) - ((value == null) ? 1 : 0);
+    this.moment = new Moment(version.stamp, size);
+
+    long horizon = horizon();
+    if (present) {
+      prune(found, horizon);
+    } // if
+    for (int i = 0; i < SWEEP_STEPS; i++) {
+      SLNode<K, Version<V>> node = (this.sweep == null) ? list.after(null, 0) : this.sweep;
+      if (node == null) {
+        break;
+      } // if
+      this.sweep = list.after(node, 0);
+      prune(node, horizon);
+    } // for
+    return old;
+  } // write(K, V)
+
+  /**
+   * Find the oldest stamp that a snapshot may read at: that of the oldest open snapshot, or of
+   * the last write if there is none.
+   */
+  long horizon() {
+    // Read the stamp before the open snapshots (see snapshot())
+    long horizon = this.moment.stamp;
+    Map.Entry<Long, Integer> oldest = this.open.firstEntry();
+    return (oldest == null) ? horizon : Math.min(horizon, oldest.getKey());
+  } // horizon()
+
+  /**
+   * Drop the versions in node's chain that nobody reading at horizon or later can see, and the
+   * node itself if all they can see is its removal.
+   */
+  void prune(SLNode<K, Version<V>> node, long horizon) {
+    Version<V> head = node.value;
+    Version<V> visible = head;
+    while (visible != null && visible.stamp > horizon) {
+      visible = visible.older;
+    } // while
+    if (visible == null) {
+      return;
+    } // if
+    // Readers only follow older past versions newer than their stamp, so cutting the chain
+    // here is safe even while they are on it
+    for (Version<V> v = visible.older; v != null; v = v.older) {
+      this.versions--;
+    } // for
+    visible.older = null;
+    if (visible == head && head.value == null) {
+      if (this.sweep == node) {
+        this.sweep = this.list.after(node, 0);
+      } // if
+      this.list.remove(node.key);
+      this.versions--;
+    } // if
+  } // prune(SLNode<K, Version<V>>, long)
+
+  /**
+   * Let go of a snapshot at stamp.
+   */
+  void release(long stamp) {
+    this.open.computeIfPresent(stamp, (s, count) -> (count == 1) ? null : count - 1);
+  } // release(long)
+
+  /**
+   * Get the value that key had as of stamp (or null, if it had none).
+   */
+  V valueAt(K key, long stamp) {
+    SLNode<K, Version<V>> found = this.list.search(key, null, null);
+    if (!this.list.matches(found, key)) {
+      return null;
+    } // if
+    return visible(this.list.valueOf(found), stamp);
+  } // valueAt(K, long)
+
+  /**
+   * Get the value of the newest version in chain no newer than stamp (or null, if there is
+   * none or it is a removal).
+   */
+  static <V> V visible(Version<V> chain, long stamp) {
+    Version<V> v = chain;
+    while (v != null && v.stamp > stamp) {
+      v = v.older;
+    } // while
+    return (v == null) ? null : v.value;
+  } // visible(Version<V>, long)
+
+  /**
+   * Apply action to every entry as of stamp.
+   */
+  void forEach(long stamp, BiConsumer<? super K, ? super V> action) {
+    for (SLNode<K, Version<V>> node = this.list.after(null, 0); node != null;
+        node = this.list.after(node, 0)) {
+      V value = visible(this.list.valueOf(node), stamp);
+      if (value != null) {
+        action.accept(node.key, value);
+      } // if
+    } // for
+  } // forEach(long, BiConsumer)
+
+  /**
+   * Get an iterator for the entries as of stamp whose keys are at least lo and less than hi (a
+   * null bound means no bound on that side).
+   */
+  Iterator<Map.Entry<K, V>> entries(K lo, K hi, long stamp) {
+    SkipList<K, Version<V>> list = this.list;
+    return new Iterator<Map.Entry<K, V>>() {
+
+      /**
+       * The node for the next entry to return (null if there are no more).
+       */
+      SLNode<K, Version<V>> node = (lo == null) ? list.after(null, 0) : list.ceiling(lo, true);
+
+      /**
+       * Its value as of stamp.
+       */
+      V value = settle();
+
+      /**
+       * Move node forward to one with a value as of stamp (or null, past hi).
+       */
+      V settle() {
+        while (this.node != null) {
+          if (hi != null && list.comparator.compare(this.node.key, hi) >= 0) {
+            this.node = null;
+            break;
+          } // if
+          V v = visible(list.valueOf(this.node), stamp);
+          if (v != null) {
+            return v;
+          } // if
+          this.node = list.after(this.node, 0);
+        } // while
+        return null;
+      } // settle()
+
+      @Override
+      public boolean hasNext() {
+        return this.node != null;
+      } // hasNext()
+
+      @Override
+      public Map.Entry<K, V> next() {
+        if (this.node == null) {
+          throw new NoSuchElementException();
+        } // if
+        Map.Entry<K, V> entry = new AbstractMap.SimpleImmutableEntry<K, V>(this.node.key,
+            this.value);
+        this.node = list.after(this.node, 0);
+        this.value = settle();
+        return entry;
+      } // next()
+    }; // new Iterator
+  } // entries(K, K, long)
+
+  // +---------------+-----------------------------------------------
+  // | Inner classes |
+  // +---------------+
+
+  /**
+   * A read-only view of the list as it was when the snapshot was taken. It may be used by any
+   * thread, and is not changed by later writes.
+   */
+  public static class Snapshot<K, V> implements SimpleMap<K, V>, AutoCloseable {
+
+    /**
+     * The list.
+     */
+    final MvccSkipList<K, V> mvcc;
+
+    /**
+     * The stamp of the last write the snapshot sees.
+     */
+    final long stamp;
+
+    /**
+     * The number of keys at that point.
+     */
+    final int size;
+
+    /**
+     * Whether the snapshot has been closed.
+     */
+    boolean closed;
+
+    /**
+     * Create a snapshot as of stamp, when the list had size keys.
+     */
+    Snapshot(MvccSkipList<K, V> mvcc, long stamp, int size) {
+      this.mvcc = mvcc;
+      this.stamp = stamp;
+      this.size = size;
+    } // Snapshot(MvccSkipList<K, V>, long, int)
+
+    /**
+     * Snapshots are read-only.
+     *
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public V set(K key, V value) {
+      throw new UnsupportedOperationException("Snapshots are read-only");
+    } // set(K, V)
+
+    @Override
+    public V get(K key) {
+      V value = find(key);
+      if (value == null) {
+        throw new IndexOutOfBoundsException("OutOfBounds");
+      } // if
+      return value;
+    } // get(K)
+
+    /**
+     * Get the value associated with key in the snapshot, or null if there is none.
+     */
+    public V find(K key) {
+      if (key == null) {
+        throw new NullPointerException("null key");
+      } // if
+      checkOpen();
+      return this.mvcc.valueAt(key, this.stamp);
+    } // find(K)
+
+    @Override
+    public int size() {
+      return this.size;
+    } // size()
+
+    @Override
+    public boolean containsKey(K key) {
+      return key != null && find(key) != null;
+    } // containsKey(K)
+
+    /**
+     * Snapshots are read-only.
+     *
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public V remove(K key) {
+      throw new UnsupportedOperationException("Snapshots are read-only");
+    } // remove(K)
+
+    @Override
+    public Iterator<K> keys() {
+      Iterator<Map.Entry<K, V>> entries = entries(null, null);
+      return new Iterator<K>() {
+        @Override
+        public boolean hasNext() {
+          return entries.hasNext();
+        } // hasNext()
+
+        @Override
+        public K next() {
+          return entries.next().getKey();
+        } // next()
+      };
+    } // keys()
+
+    @Override
+    public Iterator<V> values() {
+      Iterator<Map.Entry<K, V>> entries = entries(null, null);
+      return new Iterator<V>() {
+        @Override
+        public boolean hasNext() {
+          return entries.hasNext();
+        } // hasNext()
+
+        @Override
+        public V next() {
+          return entries.next().getValue();
+        } // next()
+      };
+    } // values()
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+      checkOpen();
+      this.mvcc.forEach(this.stamp, action);
+    } // forEach(BiConsumer)
+
+    /**
+     * Get an iterator for the entries in the snapshot whose keys are at least fromKey and less
+     * than toKey (a null bound means no bound on that side).
+     */
+    public Iterator<Map.Entry<K, V>> entries(K fromKey, K toKey) {
+      checkOpen();
+      return this.mvcc.entries(fromKey, toKey, this.stamp);
+    } // entries(K, K)
+
+    /**
+     * Let go of the snapshot, so that the versions only it could see may be dropped. It may
+     * not be used afterwards.
+     */
+    @Override
+    public void close() {
+      if (!this.closed) {
+        this.closed = true;
+        this.mvcc.release(this.stamp);
+      } // if
+    } // close()
+
+    /**
+     * Make sure that the snapshot is still open.
+     *
+     * @throws IllegalStateException if it is not.
+     */
+    void checkOpen() {
+      if (this.closed) {
+        throw new IllegalStateException("Snapshot closed");
+      } // if
+    } // checkOpen()
+
+  } // class Snapshot<K, V>
+
+  /**
+   * One value of a key, and the one it replaced.
+   */
+  static class Version<V> {
+
+    /**
+     * The number of the write that made it.
+     */
+    final long stamp;
+
+    /**
+     * The value (null if the write removed the key).
+     */
+    final V value;
+
+    /**
+     * The version before it (null if there is none, or nobody can see it any more).
+     */
+    Version<V> older;
+
+    /**
+     * Create a version.
+     */
+    Version(long stamp, V value, Version<V> older) {
+      this.stamp = stamp;
+      this.value = value;
+      this.older = older;
+    } // Version(long, V, Version<V>)
+
+  } // class Version<V>
+
+  /**
+   * The stamp of a write and the number of keys after it, published together.
+   */
+  static class Moment {
+
+    /**
+     * The stamp.
+     */
+    final long stamp;
+
+    /**
+     * The number of keys.
+     */
+    final int size;
+
+    /**
+     * Create a moment.
+     */
+    Moment(long stamp, int size) {
+      this.stamp = stamp;
+      this.size = size;
+    } // Moment(long, int)
+
+  } // class Moment
+
+} // class MvccSkipList<K, V>
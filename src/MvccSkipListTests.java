@@ -0,0 +1,167 @@
+import static org.junit.Assert.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+/**
+ * Some tests of the multi-version list: snapshots, concurrent scans and dropping old versions.
+ */
+public class MvccSkipListTests {
+
+  /**
+   * A comparator for integer keys.
+   */
+  static final Comparator<Integer> INTS = (i, j) -> Integer.compare(i, j);
+
+  /**
+   * A random number generator for the randomized tests.
+   */
+  Random random = new Random();
+
+  /**
+   * Check that a snapshot holds exactly the entries of expected.
+   */
+  static void assertSnapshot(TreeMap<Integer, String> expected,
+      MvccSkipList.Snapshot<Integer, String> snapshot) {
+    assertEquals(expected.size(), snapshot.size());
+    ArrayList<Map.Entry<Integer, String>> entries = new ArrayList<Map.Entry<Integer, String>>();
+    snapshot.entries(null, null).forEachRemaining(entries::add);
+    assertEquals(new ArrayList<Map.Entry<Integer, String>>(expected.entrySet()), entries);
+    TreeMap<Integer, String> seen = new TreeMap<Integer, String>();
+    snapshot.forEach(seen::put);
+    assertEquals(expected, seen);
+    for (int key = -1; key < 201; key++) {
+      assertEquals(expected.get(key), snapshot.find(key));
+    } // for
+    ArrayList<Map.Entry<Integer, String>> range = new ArrayList<Map.Entry<Integer, String>>();
+    snapshot.entries(50, 150).forEachRemaining(range::add);
+    assertEquals(new ArrayList<Map.Entry<Integer, String>>(expected.subMap(50, 150).entrySet()),
+        range);
+  } // assertSnapshot(TreeMap<Integer, String>, MvccSkipList.Snapshot<Integer, String>)
+
+  /**
+   * Snapshots taken between random changes keep seeing the list as it was, and once they are
+   * closed the old versions go away.
+   */
+  @Test
+  public void snapshotsSeeTheirMoment() {
+    MvccSkipList<Integer, String> list = new MvccSkipList<Integer, String>(INTS);
+    TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+    ArrayList<TreeMap<Integer, String>> pasts = new ArrayList<TreeMap<Integer, String>>();
+    ArrayList<MvccSkipList.Snapshot<Integer, String>> snapshots =
+        new ArrayList<MvccSkipList.Snapshot<Integer, String>>();
+    for (int i = 0; i < 5000; i++) {
+      int key = random.nextInt(200);
+      if (random.nextInt(3) == 0) {
+        assertEquals(expected.remove(key), list.remove(key));
+      } else {
+        assertEquals(expected.put(key, "v" + i), list.set(key, "v" + i));
+      } // if/else
+      if (i % 500 == 0) {
+        pasts.add(new TreeMap<Integer, String>(expected));
+        snapshots.add(list.snapshot());
+      } // if
+    } // for
+    assertEquals(expected.size(), list.size());
+    assertEquals(new ArrayList<Integer>(expected.keySet()), SkipListTests.toList(list.keys()));
+    for (int i = 0; i < snapshots.size(); i++) {
+      assertSnapshot(pasts.get(i), snapshots.get(i));
+    } // for
+    assertTrue(list.versions() > expected.size());
+    assertEquals(snapshots.size(), list.openSnapshots());
+    for (MvccSkipList.Snapshot<Integer, String> snapshot : snapshots) {
+      snapshot.close();
+    } // for
+    assertEquals(0, list.openSnapshots());
+    list.collect();
+    assertEquals(expected.size(), list.versions());
+    assertEquals(expected.size(), list.list.size());
+  } // snapshotsSeeTheirMoment()
+
+  /**
+   * Without snapshots, overwritten values and removed keys do not linger.
+   */
+  @Test
+  public void noSnapshotsNoOldVersions() {
+    MvccSkipList<Integer, String> list = new MvccSkipList<Integer, String>(INTS);
+    for (int i = 0; i < 1000; i++) {
+      list.set(i % 10, "v" + i);
+    } // for
+    assertEquals(10, list.versions());
+    MvccSkipList.Snapshot<Integer, String> snapshot = list.snapshot();
+    for (int i = 0; i < 10; i++) {
+      list.remove(i);
+    } // for
+    assertEquals(0, list.size());
+    assertEquals(20, list.versions());
+    assertEquals("v999", snapshot.get(9));
+    snapshot.close();
+    // The sweep catches up with the keys that are no longer written
+    for (int i = 0; i < 20; i++) {
+      list.set(100, "w" + i);
+    } // for
+    assertEquals(1, list.versions());
+    assertEquals(1, list.list.size());
+  } // noSnapshotsNoOldVersions()
+
+  /**
+   * Readers scan snapshots while the writer rewrites every key, round after round, in key
+   * order: each snapshot must see a run of keys from one round followed by a run from the
+   * round before, and the same thing every time it is scanned.
+   */
+  @Test
+  public void readersScanWhileWriterWrites() throws InterruptedException {
+    int keys = 500;
+    MvccSkipList<Integer, Integer> list = new MvccSkipList<Integer, Integer>(INTS);
+    for (int key = 0; key < keys; key++) {
+      list.set(key, 0);
+    } // for
+    AtomicBoolean done = new AtomicBoolean(false);
+    AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    ArrayList<Thread> readers = new ArrayList<Thread>();
+    for (int t = 0; t < 3; t++) {
+      Thread reader = new Thread(() -> {
+        try {
+          while (!done.get()) {
+            try (MvccSkipList.Snapshot<Integer, Integer> snapshot = list.snapshot()) {
+              ArrayList<Integer> first = new ArrayList<Integer>();
+              snapshot.values().forEachRemaining(first::add);
+              assertEquals(keys, first.size());
+              for (int i = 1; i < keys; i++) {
+                assertTrue(first.get(i) <= first.get(i - 1));
+                assertTrue(first.get(i) >= first.get(0) - 1);
+              } // for
+              ArrayList<Integer> second = new ArrayList<Integer>();
+              snapshot.values().forEachRemaining(second::add);
+              assertEquals(first, second);
+            } // try
+          } // while
+        } catch (Throwable e) {
+          failure.compareAndSet(null, e);
+        } // try/catch
+      });
+      readers.add(reader);
+      reader.start();
+    } // for
+    for (int round = 1; round <= 200; round++) {
+      for (int key = 0; key < keys; key++) {
+        list.set(key, round);
+      } // for
+    } // for
+    done.set(true);
+    for (Thread reader : readers) {
+      reader.join();
+    } // for
+    if (failure.get() != null) {
+      throw new AssertionError(failure.get());
+    } // if
+    list.collect();
+    assertEquals(keys, list.versions());
+  } // readersScanWhileWriterWrites()
+
+} // class MvccSkipListTests
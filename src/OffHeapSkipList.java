@@ -0,0 +1,670 @@
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.BiConsumer;
+
+/**
+ * A skip list from longs to longs whose nodes live outside the Java heap, in large direct
+ * ByteBuffer segments, so that even a multi-gigabyte index is a handful of objects to the garbage
+ * collector. Links are offsets into the segments (0 means "no node"), and the space of removed
+ * nodes is kept on a free list for each height and reused. Other fixed-width keys and values can
+ * be stored by encoding them as longs (keys in an order-preserving way).
+ *
+ * Call close() to give the memory back as soon as the list is no longer needed; the list may not
+ * be used afterwards. Like SkipList, it is not thread-safe.
+ */
+public class OffHeapSkipList implements SimpleMap<Long, Long>, AutoCloseable {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The offset that stands for "no node".
+   */
+  static final long NIL = 0;
+
+  /**
+   * The most levels a list may have.
+   */
+  static final int MAX_HEIGHT = 32;
+
+  /**
+   * The default segment size: 64 MiB.
+   */
+  static final int DEFAULT_SEGMENT_SIZE = 1 << 26;
+
+  /**
+   * The smallest segment size allowed.
+   */
+  static final int MIN_SEGMENT_SIZE = 1 << 12;
+
+  /**
+   * Bytes reserved at the start of the first segment for a header.
+   */
+  static final int HEADER_SIZE = 64 + 8 * MAX_HEIGHT;
+
+  /**
+   * Marks a formatted first segment.
+   */
+  static final long MAGIC = 0x534b49504c535431L;
+
+  /**
+   * Where each field of the header is. The free list heads (one per height) start at FREE_AT.
+   */
+  static final int MAGIC_AT = 0;
+  static final int BITS_AT = 8;
+  static final int HEIGHT_AT = 12;
+  static final int SIZE_AT = 16;
+  static final int TOP_AT = 24;
+  static final int DIRTY_AT = 32;
+  static final int FREE_AT = 64;
+
+  /**
+   * Where each part of a node is, relative to the node.
+   */
+  static final int KEY = 0;
+  static final int VALUE = 8;
+  static final int HEIGHT = 16;
+  static final int NEXT = 24;
+
+  /**
+   * The offset of the head node, whose links are the front of the list.
+   */
+  static final long HEAD = HEADER_SIZE;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The segments that hold the nodes (null once the list is closed).
+   */
+  ArrayList<ByteBuffer> segments;
+
+  /**
+   * log2 of the segment size.
+   */
+  final int segmentBits;
+
+  /**
+   * The segment size minus one, for finding a position within a segment.
+   */
+  final long segmentMask;
+
+  /**
+   * The offset of the first byte that has never been allocated.
+   */
+  long top;
+
+  /**
+   * The first free node of each height (or NIL).
+   */
+  long[] free = new long[MAX_HEIGHT + 1];
+
+  /**
+   * Scratch space for the predecessors found by a search (reused between calls).
+   */
+  long[] update = new long[MAX_HEIGHT];
+
+  /**
+   * The value returned by the primitive methods when there is no entry.
+   */
+  final long missingValue;
+
+  /**
+   * The number of values in the list.
+   */
+  int size;
+
+  /**
+   * The current height of the list: the height of its tallest node (or 1, if it is empty).
+   */
+  int height;
+
+  /**
+   * Picks the heights of new nodes.
+   */
+  final LevelGenerator levels = LevelGenerator.withProbability(0.5);
+
+  /**
+   * Whether the list has changed since the header was last written.
+   */
+  boolean dirty;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new, empty list that reports missing entries as missingValue and allocates native
+   * memory segmentSize bytes at a time.
+   *
+   * @throws IllegalArgumentException if segmentSize is not a power of two of at least 4096.
+   */
+  public OffHeapSkipList(long missingValue, int segmentSize) {
+    this(missingValue, segmentSize, directSegments(segmentSize));
+  } // OffHeapSkipList(long, int)
+
+  /**
+   * Create a list over existing segments. If the first one holds a list, pick up where that list
+   * left off (rebuilding the header if it was not written after the last change); otherwise
+   * start a new, empty list.
+   */
+  OffHeapSkipList(long missingValue, int segmentSize, ArrayList<ByteBuffer> segments) {
+    checkSegmentSize(segmentSize);
+    this.segmentBits = Integer.numberOfTrailingZeros(segmentSize);
+    this.segmentMask = segmentSize - 1;
+    this.segments = segments;
+    this.missingValue = missingValue;
+    if (getLong(MAGIC_AT) != MAGIC) {
+      this.top = HEAD + nodeSize(MAX_HEIGHT);
+      this.size = 0;
+      this.height = 1;
+      putInt(HEAD + HEIGHT, MAX_HEIGHT);
+      putInt(BITS_AT, this.segmentBits);
+      putLong(MAGIC_AT, MAGIC);
+      writeHeader();
+    } else if (getInt(BITS_AT) != this.segmentBits) {
+      throw new IllegalArgumentException("List was built with segments of "
+          + (1L << getInt(BITS_AT)) + " bytes, not " + segmentSize);
+    } else if (getInt(DIRTY_AT) != 0) {
+      recover();
+    } else {
+      readHeader();
+    } // if/else
+  } // OffHeapSkipList(long, int, ArrayList<ByteBuffer>)
+
+  /**
+   * Create a new, empty list that reports missing entries as 0.
+   */
+  public OffHeapSkipList() {
+    this(0, DEFAULT_SEGMENT_SIZE);
+  } // OffHeapSkipList()
+
+  // +-------------------+-------------------------------------------
+  // | Primitive methods |
+  // +-------------------+
+
+  /**
+   * Set the value associated with key.
+   *
+   * @return the previous value associated with key (or the missing value, if there's no such
+   *         value)
+   */
+  public long set(long key, long value) {
+    long found = search(key, this.update);
+    markDirty();
+    if (found != NIL && key(found) == key) {
+      long rVal = getLong(found + VALUE);
+      putLong(found + VALUE, value);
+      return rVal;
+    } // if
+    insert(key, value);
+    return this.missingValue;
+  } // set(long, long)
+
+  /**
+   * Get the value associated with key.
+   *
+   * @throws IndexOutOfBoundsException if the key is not in the map.
+   */
+  public long get(long key) {
+    long found = search(key, null);
+    if (found == NIL || key(found) != key) {
+      throw new IndexOutOfBoundsException("OutOfBounds");
+    } // if
+    return getLong(found + VALUE);
+  } // get(long)
+
+  /**
+   * Get the value associated with key, or dflt if the key is not in the map.
+   */
+  public long getOrDefault(long key, long dflt) {
+    long found = search(key, null);
+    return (found == NIL || key(found) != key) ? dflt : getLong(found + VALUE);
+  } // getOrDefault(long, long)
+
+  /**
+   * Determine if a key appears in the table.
+   */
+  public boolean containsKey(long key) {
+    long found = search(key, null);
+    return found != NIL && key(found) == key;
+  } // containsKey(long)
+
+  /**
+   * Remove the value with the given key, putting its space on the free list.
+   *
+   * @return The associated value (or the missing value, if there is no associated value).
+   */
+  public long remove(long key) {
+    long target = search(key, this.update);
+    if (target == NIL || key(target) != key) {
+      return this.missingValue;
+    } // if
+    markDirty();
+    return unlink(target);
+  } // remove(long)
+
+  /**
+   * Get an iterator for all of the keys in the map, without boxing them.
+   */
+  public PrimitiveIterator.OfLong longKeys() {
+    return new NodeIterator(KEY);
+  } // longKeys()
+
+  /**
+   * Get an iterator for all of the values in the map, without boxing them.
+   */
+  public PrimitiveIterator.OfLong longValues() {
+    return new NodeIterator(VALUE);
+  } // longValues()
+
+  /**
+   * Apply a function to each key/value pair, without boxing either.
+   */
+  public void forEachLong(LongLongSkipList.LongBiConsumer action) {
+    checkOpen();
+    for (long curr = next(HEAD, 0); curr != NIL; curr = next(curr, 0)) {
+      action.accept(key(curr), getLong(curr + VALUE));
+    } // for
+  } // forEachLong(LongLongSkipList.LongBiConsumer)
+
+  /**
+   * Apply a function to each key/value pair with fromKey <= key < toKey, without boxing either.
+   * Finding the first pair takes O(log n).
+   */
+  public void forEachLong(long fromKey, long toKey, LongLongSkipList.LongBiConsumer action) {
+    for (long curr = search(fromKey, null); curr != NIL && key(curr) < toKey;
+        curr = next(curr, 0)) {
+      action.accept(key(curr), getLong(curr + VALUE));
+    } // for
+  } // forEachLong(long, long, LongLongSkipList.LongBiConsumer)
+
+  /**
+   * Get the number of bytes of native memory the list holds.
+   */
+  public long reservedBytes() {
+    checkOpen();
+    return (long) this.segments.size() << this.segmentBits;
+  } // reservedBytes()
+
+  /**
+   * Give the native memory back. The list may not be used afterwards; closing it again does
+   * nothing.
+   */
+  @Override
+  public void close() {
+    if (this.segments == null) {
+      return;
+    } // if
+    writeHeader();
+    for (ByteBuffer segment : this.segments) {
+      release(segment);
+    } // for
+    this.segments = null;
+  } // close()
+
+  // +-------------------+-------------------------------------------
+  // | SimpleMap methods |
+  // +-------------------+
+
+  @Override
+  public Long set(Long key, Long value) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    } // if
+    long found = search(key, this.update);
+    markDirty();
+    if (found != NIL && key(found) == key) {
+      Long prev = getLong(found + VALUE);
+      putLong(found + VALUE, value);
+      return prev;
+    } // if
+    insert(key, value);
+    return null;
+  } // set(Long, Long)
+
+  @Override
+  public Long get(Long key) {
+    return get(key.longValue());
+  } // get(Long)
+
+  @Override
+  public int size() {
+    checkOpen();
+    return this.size;
+  } // size()
+
+  @Override
+  public boolean containsKey(Long key) {
+    return key != null && containsKey(key.longValue());
+  } // containsKey(Long)
+
+  @Override
+  public Long remove(Long key) {
+    long target = search(key.longValue(), this.update);
+    if (target == NIL || key(target) != key) {
+      return null;
+    } // if
+    markDirty();
+    return unlink(target);
+  } // remove(Long)
+
+  @Override
+  public Iterator<Long> keys() {
+    return longKeys();
+  } // keys()
+
+  @Override
+  public Iterator<Long> values() {
+    return longValues();
+  } // values()
+
+  @Override
+  public void forEach(BiConsumer<? super Long, ? super Long> action) {
+    checkOpen();
+    for (long curr = next(HEAD, 0); curr != NIL; curr = next(curr, 0)) {
+      action.accept(key(curr), getLong(curr + VALUE));
+    } // for
+  } // forEach(BiConsumer)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Find the first node whose key is at least key (or NIL, if there is no such node). If preds is
+   * non-null, also fill it with the last node before key at each level (HEAD stands for the front
+   * of the list).
+   */
+  long search(long key, long[] preds) {
+    checkOpen();
+    long prev = HEAD;
+    long curr = NIL;
+    for (int level = this.height - 1; level >= 0; level--) {
+      curr = next(prev, level);
+      while (curr != NIL && key(curr) < key) {
+        prev = curr;
+        curr = next(curr, level);
+      } // while
+      if (preds != null) {
+        preds[level] = prev;
+      } // if
+    } // for
+    return curr;
+  } // search(long, long[])
+
+  /**
+   * Insert a node for key after the nodes that the last search left in update, linking it in
+   * from the bottom up, so that even if we stop part way the links form a valid list.
+   */
+  void insert(long key, long value) {
+    int h = this.levels.nextLevel(MAX_HEIGHT);
+    for (int i = this.height; i < h; i++) {
+      this.update[i] = HEAD;
+    } // for
+    long node = allocate(h);
+    putLong(node + KEY, key);
+    putLong(node + VALUE, value);
+    putInt(node + HEIGHT, h);
+    for (int i = 0; i < h; i++) {
+      putLong(node + NEXT + 8 * i, next(this.update[i], i));
+      putLong(this.update[i] + NEXT + 8 * i, node);
+    } // for
+    this.height = Math.max(this.height, h);
+    size++;
+  } // insert(long, long)
+
+  /**
+   * Unlink target, whose predecessors the last search left in update, and put it on the free
+   * list.
+   *
+   * @return the value it held.
+   */
+  long unlink(long target) {
+    int h = getInt(target + HEIGHT);
+    // Unlink from the top down, so that every node that can be reached at all can be reached at
+    // level 0 (which recover relies on)
+    for (int i = h - 1; i >= 0; i--) {
+      putLong(this.update[i] + NEXT + 8 * i, next(target, i));
+    } // for
+    while (this.height > 1 && next(HEAD, this.height - 1) == NIL) {
+      this.height--;
+    } // while
+    long rVal = getLong(target + VALUE);
+    putLong(target + NEXT, this.free[h]);
+    this.free[h] = target;
+    size--;
+    return rVal;
+  } // unlink(long)
+
+  /**
+   * Find space for a node of height h, reusing a removed node of that height if there is one.
+   */
+  long allocate(int h) {
+    long node = this.free[h];
+    if (node != NIL) {
+      this.free[h] = getLong(node + NEXT);
+      return node;
+    } // if
+    int bytes = nodeSize(h);
+    if ((this.top & this.segmentMask) + bytes > this.segmentMask + 1) {
+      // Nodes never straddle segments: skip to the next one
+      this.top = (long) this.segments.size() << this.segmentBits;
+    } // if
+    if ((this.top >>> this.segmentBits) >= this.segments.size()) {
+      this.segments.add(newSegment());
+    } // if
+    node = this.top;
+    this.top += bytes;
+    return node;
+  } // allocate(int)
+
+  /**
+   * Get the size of a node of height h.
+   */
+  static int nodeSize(int h) {
+    return NEXT + 8 * h;
+  } // nodeSize(int)
+
+  /**
+   * Get the key of a node.
+   */
+  long key(long node) {
+    return getLong(node + KEY);
+  } // key(long)
+
+  /**
+   * Get the node that follows node at the given level.
+   */
+  long next(long node, int level) {
+    return getLong(node + NEXT + 8 * level);
+  } // next(long, int)
+
+  /**
+   * Read the long at an offset.
+   */
+  long getLong(long offset) {
+    return this.segments.get((int) (offset >>> this.segmentBits))
+        .getLong((int) (offset & this.segmentMask));
+  } // getLong(long)
+
+  /**
+   * Write the long at an offset.
+   */
+  void putLong(long offset, long value) {
+    this.segments.get((int) (offset >>> this.segmentBits))
+        .putLong((int) (offset & this.segmentMask), value);
+  } // putLong(long, long)
+
+  /**
+   * Read the int at an offset.
+   */
+  int getInt(long offset) {
+    return this.segments.get((int) (offset >>> this.segmentBits))
+        .getInt((int) (offset & this.segmentMask));
+  } // getInt(long)
+
+  /**
+   * Write the int at an offset.
+   */
+  void putInt(long offset, int value) {
+    this.segments.get((int) (offset >>> this.segmentBits))
+        .putInt((int) (offset & this.segmentMask), value);
+  } // putInt(long, int)
+
+  /**
+   * Allocate another zeroed segment.
+   */
+  ByteBuffer newSegment() {
+    return ByteBuffer.allocateDirect((int) (this.segmentMask + 1)).order(ByteOrder.nativeOrder());
+  } // newSegment()
+
+  /**
+   * Get a list holding one zeroed segment of native memory.
+   */
+  static ArrayList<ByteBuffer> directSegments(int segmentSize) {
+    checkSegmentSize(segmentSize);
+    ArrayList<ByteBuffer> segments = new ArrayList<ByteBuffer>();
+    segments.add(ByteBuffer.allocateDirect(segmentSize).order(ByteOrder.nativeOrder()));
+    return segments;
+  } // directSegments(int)
+
+  /**
+   * Make sure a segment size is usable.
+   *
+   * @throws IllegalArgumentException if it is not a power of two of at least MIN_SEGMENT_SIZE.
+   */
+  static void checkSegmentSize(int segmentSize) {
+    if (segmentSize < MIN_SEGMENT_SIZE || Integer.bitCount(segmentSize) != 1) {
+      throw new IllegalArgumentException(
+          "Segment size must be a power of two of at least " + MIN_SEGMENT_SIZE);
+    } // if
+  } // checkSegmentSize(int)
+
+  /**
+   * Note in the header that the list is changing, so that if it is reopened before the header
+   * is written again, the header gets rebuilt.
+   */
+  void markDirty() {
+    if (!this.dirty) {
+      this.dirty = true;
+      putInt(DIRTY_AT, 1);
+    } // if
+  } // markDirty()
+
+  /**
+   * Save the size, height, allocation point and free lists in the header, and mark it clean.
+   */
+  void writeHeader() {
+    putInt(HEIGHT_AT, this.height);
+    putLong(SIZE_AT, this.size);
+    putLong(TOP_AT, this.top);
+    for (int h = 1; h <= MAX_HEIGHT; h++) {
+      putLong(FREE_AT + 8 * (h - 1), this.free[h]);
+    } // for
+    putInt(DIRTY_AT, 0);
+    this.dirty = false;
+  } // writeHeader()
+
+  /**
+   * Load the size, height, allocation point and free lists from the header.
+   */
+  void readHeader() {
+    this.height = getInt(HEIGHT_AT);
+    this.size = (int) getLong(SIZE_AT);
+    this.top = getLong(TOP_AT);
+    for (int h = 1; h <= MAX_HEIGHT; h++) {
+      this.free[h] = getLong(FREE_AT + 8 * (h - 1));
+    } // for
+  } // readHeader()
+
+  /**
+   * Rebuild the header of a list that changed after its header was last written, by walking the
+   * nodes. The free lists may no longer be accurate, so their space is abandoned.
+   */
+  void recover() {
+    this.top = Math.max(getLong(TOP_AT), HEAD + nodeSize(MAX_HEIGHT));
+    this.size = 0;
+    this.height = 1;
+    for (long curr = next(HEAD, 0); curr != NIL; curr = next(curr, 0)) {
+      int h = getInt(curr + HEIGHT);
+      this.size++;
+      this.top = Math.max(this.top, curr + nodeSize(h));
+    } // for
+    for (int level = MAX_HEIGHT - 1; level > 0 && this.height == 1; level--) {
+      if (next(HEAD, level) != NIL) {
+        this.height = level + 1;
+      } // if
+    } // for
+    writeHeader();
+  } // recover()
+
+  /**
+   * Free a direct buffer now, rather than whenever the collector finds it. (If the JDK does not
+   * let us, the collector will still free it eventually.)
+   */
+  static void release(ByteBuffer buffer) {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      invokeCleaner.invoke(theUnsafe.get(null), buffer);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // Leave it to the collector
+    } // try/catch
+  } // release(ByteBuffer)
+
+  /**
+   * Make sure the list has not been closed.
+   *
+   * @throws IllegalStateException if it has.
+   */
+  void checkOpen() {
+    if (this.segments == null) {
+      throw new IllegalStateException("List is closed");
+    } // if
+  } // checkOpen()
+
+  // +---------------+-----------------------------------------------
+  // | Inner classes |
+  // +---------------+
+
+  /**
+   * An iterator that walks level 0 and reports the long at one position in each node.
+   */
+  class NodeIterator implements PrimitiveIterator.OfLong {
+    final int field;
+    long next;
+
+    NodeIterator(int field) {
+      this.field = field;
+      this.next = OffHeapSkipList.this.search(Long.MIN_VALUE, null);
+    } // NodeIterator(int)
+
+    @Override
+    public boolean hasNext() {
+      return this.next != NIL;
+    } // hasNext()
+
+    @Override
+    public long nextLong() {
+      checkOpen();
+      if (this.next == NIL) {
+        throw new NoSuchElementException();
+      } // if
+      long result = getLong(this.next + this.field);
+      this.next = OffHeapSkipList.this.next(this.next, 0);
+      return result;
+    } // nextLong()
+  } // class NodeIterator
+
+} // class OffHeapSkipList
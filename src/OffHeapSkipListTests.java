@@ -0,0 +1,119 @@
+import static org.junit.Assert.*;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Test;
+
+/**
+ * Some tests of the off-heap skip list.
+ */
+public class OffHeapSkipListTests {
+
+  /**
+   * A random number generator for the randomized tests.
+   */
+  Random random = new Random();
+
+  /**
+   * Add and remove random keys in a list with small segments, checking against a TreeMap.
+   */
+  @Test
+  public void randomAgainstTreeMap() {
+    try (OffHeapSkipList longs = new OffHeapSkipList(-1, 4096)) {
+      TreeMap<Long, Long> expected = new TreeMap<Long, Long>();
+      for (int i = 0; i < 20000; i++) {
+        long key = random.nextInt(2000) - 1000;
+        if (random.nextInt(3) > 0) {
+          Long old = expected.put(key, (long) i);
+          assertEquals((old == null) ? -1 : old, longs.set(key, i));
+        } else {
+          Long old = expected.remove(key);
+          assertEquals((old == null) ? -1 : old, longs.remove(key));
+        } // if/else
+        assertEquals(expected.size(), longs.size());
+      } // for
+      for (long key = -1010; key < 1010; key++) {
+        assertEquals(expected.containsKey(key), longs.containsKey(key));
+        assertEquals(expected.getOrDefault(key, -2L).longValue(), longs.getOrDefault(key, -2));
+      } // for
+      Iterator<Map.Entry<Long, Long>> entries = expected.entrySet().iterator();
+      PrimitiveIterator.OfLong keys = longs.longKeys();
+      PrimitiveIterator.OfLong values = longs.longValues();
+      while (entries.hasNext()) {
+        Map.Entry<Long, Long> entry = entries.next();
+        assertEquals(entry.getKey().longValue(), keys.nextLong());
+        assertEquals(entry.getValue().longValue(), values.nextLong());
+      } // while
+      assertFalse(keys.hasNext());
+      assertTrue(longs.reservedBytes() > 4096);
+    } // try
+  } // randomAgainstTreeMap()
+
+  /**
+   * Removed nodes are reused, so churn does not grow the list.
+   */
+  @Test
+  public void churnReusesSpace() {
+    try (OffHeapSkipList longs = new OffHeapSkipList(0, 4096)) {
+      for (long key = 0; key < 1000; key++) {
+        longs.set(key, key);
+      } // for
+      long reserved = longs.reservedBytes();
+      for (int round = 0; round < 20; round++) {
+        for (long key = 0; key < 1000; key++) {
+          longs.remove(key);
+        } // for
+        for (long key = 0; key < 1000; key++) {
+          longs.set(key, key + round);
+        } // for
+      } // for
+      assertEquals(1000, longs.size());
+      assertEquals(19 + 500, longs.get(500));
+      assertTrue(longs.reservedBytes() <= 2 * reserved);
+    } // try
+  } // churnReusesSpace()
+
+  /**
+   * A closed list cannot be used.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void closedListRejectsUse() {
+    OffHeapSkipList longs = new OffHeapSkipList();
+    longs.set(1, 2);
+    longs.close();
+    longs.close();
+    longs.get(1);
+  } // closedListRejectsUse()
+
+  /**
+   * Every way in to a closed list, including an iterator made before it was closed, throws
+   * IllegalStateException rather than reading freed memory.
+   */
+  @Test
+  public void closedListRejectsEveryUse() {
+    OffHeapSkipList longs = new OffHeapSkipList();
+    longs.set(1, 2);
+    longs.set(3, 4);
+    PrimitiveIterator.OfLong keys = longs.longKeys();
+    keys.nextLong();
+    longs.close();
+    Runnable[] uses = {
+        () -> longs.set(5, 6), () -> longs.set(5L, 6L), () -> longs.get(1),
+        () -> longs.getOrDefault(1, 0), () -> longs.containsKey(1), () -> longs.remove(1),
+        () -> longs.remove(1L), () -> longs.size(), () -> longs.longKeys(),
+        () -> longs.longValues(), () -> longs.keys(), () -> longs.values(),
+        () -> longs.forEachLong((k, v) -> { }), () -> longs.forEachLong(0, 10, (k, v) -> { }),
+        () -> longs.forEach((k, v) -> { }), () -> longs.reservedBytes(), () -> keys.nextLong()};
+    for (Runnable use : uses) {
+      try {
+        use.run();
+        fail("closed list was used");
+      } catch (IllegalStateException e) {
+        // Expected
+      } // try/catch
+    } // for
+  } // closedListRejectsEveryUse()
+
+} // class OffHeapSkipListTests
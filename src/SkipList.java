@@ -1,9 +1,24 @@
 import java.io.PrintWriter;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
-import java.util.Random;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import java.lang.Math;
 
 /**
@@ -16,15 +31,37 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
   // +-----------+
 
   /**
-   * The initial height of the skip list.
+   * The height of the lists that do not grow (LongSkipList and LongLongSkipList).
    */
   static final int INITIAL_HEIGHT = 20;
 
+  /**
+   * The default cap on the height of a skip list. With a probability of 1/2, that is plenty for
+   * billions of entries.
+   */
+  static final int DEFAULT_MAX_HEIGHT = 32;
+
   // +---------------+-----------------------------------------------
   // | Static Fields |
   // +---------------+
 
-  static Random rand = new Random();
+  /**
+   * Release/acquire access to the slots of link arrays, for single-writer mode.
+   */
+  static final VarHandle LINKS = MethodHandles.arrayElementVarHandle(SLNode[].class);
+
+  /**
+   * Release/acquire access to node values, for single-writer mode.
+   */
+  static final VarHandle VALUE;
+
+  static {
+    try {
+      VALUE = MethodHandles.lookup().findVarHandle(SLNode.class, "value", Object.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    } // try/catch
+  } // static
 
   // +--------+------------------------------------------------------
   // | Fields |
@@ -33,32 +70,155 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
   /**
    * Pointers to all the front elements.
    */
-  ArrayList<SLNode<K, V>> front;
+  SLNode<K, V>[] front;
+
+  /**
+   * The widths of the front links: how many positions each one moves forward (with a null link
+   * reaching just past the last node). Null unless the list is indexed.
+   */
+  int[] frontWidth;
+
+  /**
+   * Whether each link records how many positions it skips, for O(log n) positional access.
+   */
+  final boolean indexed;
 
   /**
    * The comparator used to determine the ordering in the list.
    */
   Comparator<K> comparator;
 
+  /**
+   * Whether the comparator is Comparator.naturalOrder(), in which case searches call compareTo
+   * on the keys directly.
+   */
+  final boolean natural;
+
+  /**
+   * Maps each key to an order-preserving 64-bit prefix, which nodes cache so that most
+   * comparisons are one long compare (null if prefixes are off). See KeyPrefixes.
+   */
+  final ToLongFunction<? super K> prefixes;
+
+  /**
+   * The node that the last search found to hold its key exactly (null if it found none). Only
+   * kept when one thread uses the list, so that callers need not compare the key once more.
+   */
+  SLNode<K, V> match;
+
   /**
    * The number of values in the list.
    */
   int size;
 
   /**
-   * The current height of the skiplist.
+   * The number of keys added or removed so far, so that compute and the like can tell whether
+   * their function changed the list.
+   */
+  int modCount;
+
+  /**
+   * The current height of the skiplist: the height of its tallest node (or 1, if it is empty).
+   * Searches start here, so small lists do not walk down through empty levels.
    */
   int height;
 
   /**
-   * The probability used to determine the height of nodes.
+   * The most levels the list may have. The front and the search arrays are this long.
    */
-  double prob = 0.5;
+  final int maxHeight;
+
+  /**
+   * Picks the heights of new nodes.
+   */
+  final LevelGenerator levels;
 
   /**
    * Counts the time spent by the function.
    */
   int stepCounter;
+
+  /**
+   * Whether other threads may read the list while one thread writes it.
+   */
+  final boolean concurrentReads;
+
+  /**
+   * In single-writer mode, the only thread allowed to modify the list (null until the first
+   * modification).
+   */
+  Thread writer;
+
+  /**
+   * The nodes before the most recently used key at each level, if finger search is on (null if
+   * it is off).
+   */
+  SLNode<K, V>[] finger;
+
+  /**
+   * The positions of the nodes in the finger (0 for the front).
+   */
+  int[] fingerRanks;
+
+  /**
+   * Whether the finger describes the list as it is now.
+   */
+  boolean fingerValid;
+
+  /**
+   * The number of searches that started from the finger.
+   */
+  long fingerHits;
+
+  /**
+   * The number of searches that had to start from the top (with the finger on).
+   */
+  long fingerMisses;
+
+  /**
+   * The arrays that set and remove search with when finger search is off, kept so that they
+   * need not allocate new ones. Only the writer uses them.
+   */
+  final SLNode<K, V>[] update;
+
+  /**
+   * The positions of the nodes in update.
+   */
+  final int[] updateRanks;
+
+  /**
+   * The arrays that compute, computeIfAbsent and merge search with, kept apart from update
+   * because their functions may call set or remove.
+   */
+  final SLNode<K, V>[] computeStorage;
+
+  /**
+   * The positions of the nodes in computeStorage.
+   */
+  final int[] computeRanks;
+
+  /**
+   * Whether a function passed to compute or the like is running, in which case a nested call
+   * must not reuse computeStorage.
+   */
+  boolean computing;
+
+  /**
+   * Removed nodes kept for reuse, if recycling is on (null if it is off): pool[h - 1] is the
+   * first of a chain, linked through next[0], of nodes of height h.
+   */
+  SLNode<K, V>[] pool;
+
+  /**
+   * How many nodes of each height are in the pool.
+   */
+  int[] pooled;
+
+  /**
+   * The most nodes of each height that the pool keeps.
+   */
+  int poolLimit;
+
   // +--------------+------------------------------------------------
   // | Constructors |
   // +--------------+
@@ -67,22 +227,164 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
    * Create a new skip list that orders values using the specified comparator.
    */
   public SkipList(Comparator<K> comparator) {
-    this.front = new ArrayList<SLNode<K, V>>(INITIAL_HEIGHT);
-    for (int i = 0; i < INITIAL_HEIGHT; i++) {
-      front.add(null);
-    } // for
+    this(comparator, DEFAULT_MAX_HEIGHT);
+  } // SkipList(Comparator<K>)
+
+  /**
+   * Create a new skip list that orders values using the specified comparator and never grows
+   * taller than maxHeight levels.
+   *
+   * @throws IllegalArgumentException if maxHeight is not positive.
+   */
+  public SkipList(Comparator<K> comparator, int maxHeight) {
+    this(comparator, LevelGenerator.withProbability(0.5), maxHeight, false);
+  } // SkipList(Comparator<K>, int)
+
+  /**
+   * Create a new skip list that orders values using the specified comparator and picks node
+   * heights with levels (for example, LevelGenerator.withProbability(0.25) for a shorter,
+   * flatter list, or LevelGenerator.seeded(0.5, 42) for a reproducible one).
+   */
+  public SkipList(Comparator<K> comparator, LevelGenerator levels) {
+    this(comparator, levels, DEFAULT_MAX_HEIGHT, false);
+  } // SkipList(Comparator<K>, LevelGenerator)
+
+  /**
+   * Create a new skip list that orders values using the specified comparator, picks node heights
+   * with levels, and never grows taller than maxHeight levels.
+   *
+   * @throws IllegalArgumentException if maxHeight is not positive.
+   */
+  public SkipList(Comparator<K> comparator, LevelGenerator levels, int maxHeight) {
+    this(comparator, levels, maxHeight, false);
+  } // SkipList(Comparator<K>, LevelGenerator, int)
+
+  /**
+   * Create a new skip list that orders values using the specified comparator and caches the
+   * prefix of each key (as computed by prefixes) in its node. prefixes must preserve the order:
+   * if the prefix of one key is smaller than that of another, as unsigned longs, then so is the
+   * key. Keys with equal prefixes are compared with the comparator.
+   */
+  public SkipList(Comparator<K> comparator, ToLongFunction<? super K> prefixes) {
+    this(comparator, LevelGenerator.withProbability(0.5), DEFAULT_MAX_HEIGHT, false, prefixes,
+        false);
+  } // SkipList(Comparator<K>, ToLongFunction)
+
+  /**
+   * Create a new skip list that orders values using the specified comparator and, if
+   * concurrentReads is set, may be read by other threads while one thread writes it.
+   */
+  SkipList(Comparator<K> comparator, LevelGenerator levels, int maxHeight,
+      boolean concurrentReads) {
+    this(comparator, levels, maxHeight, concurrentReads, null, false);
+  } // SkipList(Comparator<K>, LevelGenerator, int, boolean)
+
+  /**
+   * Create a new skip list with every option: see the other constructors and indexed().
+   */
+  SkipList(Comparator<K> comparator, LevelGenerator levels, int maxHeight,
+      boolean concurrentReads, ToLongFunction<? super K> prefixes, boolean indexed) {
+    if (maxHeight < 1) {
+      throw new IllegalArgumentException("Height cap must be positive: " + maxHeight);
+    } // if
+    this.front = newNodeArray(maxHeight);
+    this.indexed = indexed;
+    if (indexed) {
+      this.frontWidth = new int[maxHeight];
+      Arrays.fill(this.frontWidth, 1);
+    } // if
     this.comparator = comparator;
+    this.natural = comparator == Comparator.naturalOrder();
+    this.prefixes = prefixes;
+    this.levels = levels;
     this.size = 0;
-    this.height = INITIAL_HEIGHT;
-  } // SkipList(Comparator<K>)
+    this.height = 1;
+    this.maxHeight = maxHeight;
+    this.concurrentReads = concurrentReads;
+    this.update = newNodeArray(maxHeight);
+    this.updateRanks = new int[maxHeight];
+    this.computeStorage = newNodeArray(maxHeight);
+    this.computeRanks = new int[maxHeight];
+  } // SkipList(Comparator<K>, LevelGenerator, int, boolean, ToLongFunction, boolean)
 
   /**
    * Create a new skip list that orders values using a not-very-clever default comparator.
+   * (SkipList.natural() orders Comparable keys by their natural order, and faster.)
    */
   public SkipList() {
     this((k1, k2) -> k1.toString().compareTo(k2.toString()));
   } // SkipList()
 
+  /**
+   * Create a new skip list that orders Comparable keys by their natural order, calling
+   * compareTo directly rather than through a comparator.
+   */
+  public static <K extends Comparable<? super K>, V> SkipList<K, V> natural() {
+    return new SkipList<K, V>(Comparator.<K>naturalOrder());
+  } // natural()
+
+  /**
+   * Create a new indexed skip list, whose links also record how many positions they skip. That
+   * makes getByIndex, keyAt, rankOf, the index ranges and stream splits O(log n) instead of a
+   * walk, for an int[] more per node (about 35 bytes per entry).
+   */
+  public static <K, V> SkipList<K, V> indexed(Comparator<K> comparator) {
+    return new SkipList<K, V>(comparator, LevelGenerator.withProbability(0.5),
+        DEFAULT_MAX_HEIGHT, false, null, true);
+  } // indexed(Comparator<K>)
+
+  /**
+   * Create a new skip list for one writer and many readers. The first thread to modify the list
+   * becomes its writer, and any other thread that tries to modify it gets an
+   * IllegalStateException. Links and values are published with release/acquire ordering (new
+   * nodes are linked bottom-up, removed nodes are unlinked top-down), so get, containsKey,
+   * keys(), values() and forEach may be called from any thread without locking. Readers see each
+   * set or remove either entirely or not at all, though iterators may miss changes made while
+   * they run, and size() read from another thread may lag behind.
+   */
+  public static <K, V> SkipList<K, V> singleWriter(Comparator<K> comparator) {
+    return new SkipList<K, V>(comparator, LevelGenerator.withProbability(0.5),
+        DEFAULT_MAX_HEIGHT, true);
+  } // singleWriter(Comparator<K>)
+
+  /**
+   * Build a skip list from entries sorted by key (as ordered by comparator), in one linear pass
+   * and with perfectly balanced node heights. See SkipListBuilder.
+   *
+   * @throws IllegalArgumentException if the keys are not strictly increasing.
+   * @throws NullPointerException if any key or value is null.
+   */
+  public static <K, V> SkipList<K, V> fromSorted(Comparator<K> comparator,
+      Iterator<? extends Map.Entry<? extends K, ? extends V>> entries) {
+    SkipListBuilder<K, V> builder = new SkipListBuilder<K, V>(comparator);
+    while (entries.hasNext()) {
+      Map.Entry<? extends K, ? extends V> entry = entries.next();
+      builder.append(entry.getKey(), entry.getValue());
+    } // while
+    return builder.build();
+  } // fromSorted(Comparator<K>, Iterator)
+
+  /**
+   * Build a skip list from a stream of entries sorted by key.
+   */
+  public static <K, V> SkipList<K, V> fromSorted(Comparator<K> comparator,
+      Stream<? extends Map.Entry<? extends K, ? extends V>> entries) {
+    return fromSorted(comparator, entries.iterator());
+  } // fromSorted(Comparator<K>, Stream)
+
+  /**
+   * Build a skip list from parallel arrays of sorted keys and their values.
+   */
+  public static <K, V> SkipList<K, V> fromSorted(Comparator<K> comparator, K[] keys, V[] values) {
+    if (keys.length != values.length) {
+      throw new IllegalArgumentException("Different numbers of keys and values");
+    } // if
+    SkipListBuilder<K, V> builder = new SkipListBuilder<K, V>(comparator);
+    for (int i = 0; i < keys.length; i++) {
+      builder.append(keys[i], values[i]);
+    } // for
+    return builder.build();
+  } // fromSorted(Comparator<K>, K[], V[])
 
   // +-------------------+-------------------------------------------
   // | SimpleMap methods |
@@ -95,75 +397,17 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
    */
   @Override
   public V set(K key, V value) {
-    stepCounter = 0;
-
     // Null Pointer Exception if not fulfilling precondition
     if (key == null || value == null) {
       throw new NullPointerException();
     }
+    checkWriter();
 
-    // When empty just insert a node
-    if (this.size <= 0) {
-      SLNode<K, V> newAdd = new SLNode<K, V>(key, value, randomHeight());
-      for (int i = 0; i < newAdd.next.size(); i++) {
-        this.front.set(i, newAdd);
-      }
-      size++;
-      return null;
-    } else {
-      // Initializing needed variables
-      int level = height - 1;
-      SLNode<K, V> curr = this.front.get(level);
-      ArrayList<SLNode<K, V>> prevStorage = new ArrayList<SLNode<K, V>>(this.height);
-      for (int i = 0; i < this.height; i++) {
-        prevStorage.add(null);
-      } // for
-
-      // Decide on the node to hop on
-      while (level > 0 && (curr == null || comparator.compare(curr.key, key) > 0)) {
-        curr = this.front.get(--level);
-      }
-
-      // Check if the node that is matching the key
-      if (comparator.compare(curr.key, key) == 0) {
-        V rVal = curr.value;
-        curr.value = value;
-        return rVal;
-      } else if (comparator.compare(curr.key, key) > 0) {
-        level--;
-      }
-
-      // Going into the main loop for search, if found, then just change the value
-      while (level >= 0) {
-        if (curr.next(level) == null || comparator.compare(curr.next(level).key, key) > 0) {
-          prevStorage.set(level, curr);
-          level = level - 1;
-        } else if (comparator.compare(curr.next(level).key, key) < 0) {
-          curr = curr.next(level);
-          stepCounter++;
-        } else {
-          return curr.next(level).value;
-        }
-      }
-
-      // Insert the node
-      SLNode<K, V> newAdd = new SLNode<K, V>(key, value, randomHeight());
-      for (int i = 0; i < newAdd.next.size(); i++) {
-        if (prevStorage.get(i) == null) {
-          newAdd.next.set(i, this.front.get(i));
-          this.front.set(i, newAdd);
-        } else {
-          newAdd.next.set(i, prevStorage.get(i).next(i));
-          prevStorage.get(i).next.set(i, newAdd);
-        }
-      }
-      size++;
-      /*
-       * System.out.println("List begin(Insert):" + key); printList();
-       * System.out.println("List End");
-       */
-    }
-    return null;
+    // Find the node, or the nodes that will come before the new one
+    SLNode<K, V>[] prevStorage = scratch();
+    int[] rankStorage = scratchRanks();
+    SLNode<K, V> found = locate(key, prevStorage, rankStorage);
+    return setAt(key, value, found, prevStorage, rankStorage);
   } // set(K,V)
 
   /**
@@ -174,45 +418,16 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
    */
   @Override
   public V get(K key) {
-    stepCounter = 0;
-
     // Null Pointer Exception if not fulfilling precondition
     if (key == null) {
       throw new NullPointerException("null key");
     } // if
-    if (this.size == 0) {
-      throw new IndexOutOfBoundsException("Empty");
-    }
-    int level = height - 1;
-    SLNode<K, V> curr = this.front.get(level);
-
-    // Decide on the node to hop on
-    while (level > 0 && (curr == null || comparator.compare(curr.key, key) > 0)) {
-      curr = this.front.get(--level);
-    }
-
-    // If the node hopped on matches the key, then just return, if not then it isn't there(avoid
-    // while loop)
-    if (comparator.compare(curr.key, key) == 0) {
-      return curr.value;
-    } else if (comparator.compare(curr.key, key) > 0) {
-      level--;
-    }
 
-    // Going into the main loop for search, if found, then just return the value
-    while (level >= 0) {
-      if (curr.next(level) == null || comparator.compare(curr.next(level).key, key) > 0) {
-        level--;
-      } else if (comparator.compare(curr.next(level).key, key) < 0) {
-        curr = curr.next(level);
-        stepCounter++;
-      } else {
-        return curr.next(level).value;
-      }
+    V value = find(key);
+    if (value == null) {
+      throw new IndexOutOfBoundsException("OutOfBounds");
     }
-
-    // If not found, throw Exception
-    throw new IndexOutOfBoundsException("OutOfBounds");
+    return value;
   } // get(K,V)
 
   /**
@@ -228,16 +443,7 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
    */
   @Override
   public boolean containsKey(K key) {
-
-    // Use get to check if the SkipList contains the key
-    try {
-      get(key);
-      return true;
-    } catch (IndexOutOfBoundsException e) {
-      return false;
-    } catch (NullPointerException e2) {
-      return false;
-    }
+    return key != null && find(key) != null;
   } // containsKey(K)
 
   /**
@@ -248,70 +454,20 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
    */
   @Override
   public V remove(K key) {
-    stepCounter = 0;
-
     // Null Pointer Exception if not fulfilling precondition
     if (key == null) {
       throw new NullPointerException("null key");
     }
+    checkWriter();
 
-    // Can't remove when empty
-    if (size == 0) {
-      return null;
-    }
-    int level = this.front.size() - 1;
-    SLNode<K, V> curr = this.front.get(level);
-    ArrayList<SLNode<K, V>> prevStorage = new ArrayList<SLNode<K, V>>(this.height);
-    for (int i = 0; i < this.height; i++) {
-      prevStorage.add(null);
-    }
-
-    // Decide on the node to hop on
-    while (level > 0 && (curr == null || comparator.compare(curr.key, key) >= 0)) {
-      curr = this.front.get(--level);
-    }
-
-    // If it still is bigger, then it doesn't exist.
-    // If it is equal, then connect the beginning to the removed's nexts.
-    if (comparator.compare(curr.key, key) > 0) {
-      return null;
-    } else if (comparator.compare(curr.key, key) == 0) {
-      for (int i = 0; i < curr.next.size(); i++) {
-        this.front.set(i, curr.next(i));
-      }
-      size--;
-      return curr.value;
-    }
-
-    // Main while loop
-    while (level >= 0) {
-      if (curr.next(level) == null || comparator.compare(curr.next(level).key, key) >= 0) {
-        prevStorage.set(level, curr);
-        level = level - 1;
-      } else if (comparator.compare(curr.next(level).key, key) < 0) {
-        curr = curr.next(level);
-        stepCounter++;
-      }
-    }
-
-    // Check whether if we found the node or not, if we did then remove it and connect the nodes
-    // around it.
-    if (prevStorage.get(0).next(0) == null) {
+    SLNode<K, V>[] prevStorage = scratch();
+    SLNode<K, V> target = locate(key, prevStorage, scratchRanks());
+    if (!matches(target, key)) {
       return null;
-    } else if (comparator.compare(prevStorage.get(0).next(0).key, key) > 0) {
-      return null;
-    } else {
-      SLNode<K, V> target = curr.next(0);
-      for (int i = 0; i < target.next.size(); i++) {
-        if (prevStorage.get(i) == null) {
-          this.front.set(i, target.next(i));
-        } else {
-          prevStorage.get(i).next.set(i, target.next(i));
-        }
-      }
-      size--;
-      return target.value;
     }
+    V value = target.value;
+    unlink(target, prevStorage);
+    return value;
   } // remove(K)
 
   @Override
@@ -348,7 +504,7 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
 
       @Override
       public V next() {
-        return nit.next().value;
+        return SkipList.this.valueOf(nit.next());
       } // next()
 
       @Override
@@ -360,96 +516,1322 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
 
   @Override
   public void forEach(BiConsumer<? super K, ? super V> action) {
-    SLNode<K, V> curr = this.front.get(0);
-    while (curr.next(0) != null) {
-      action.accept(curr.key, curr.value);
-      curr = curr.next(0);
+    SLNode<K, V> curr = after(null, 0);
+    while (curr != null) {
+      action.accept(curr.key, valueOf(curr));
+      curr = after(curr, 0);
     }
   } // forEach
 
-  // +----------------------+----------------------------------------
-  // | Other public methods |
-  // +----------------------+
+  // +------------------------+--------------------------------------
+  // | Single-pass operations |
+  // +------------------------+
 
   /**
-   * Dump the tree to some output location.
+   * Get the value associated with key, or null if the key is not in the list. Unlike get, a miss
+   * costs no more than a hit.
    */
-  public void dump(PrintWriter pen) {
-    String leading = "          ";
+  public V find(K key) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    } // if
+    boolean useFinger = this.finger != null && !this.concurrentReads;
+    SLNode<K, V> found =
+        useFinger ? locate(key, this.finger, this.fingerRanks) : search(key, null, null);
+    return matches(found, key) ? valueOf(found) : null;
+  } // find(K)
 
-    SLNode<K, V> current = front.get(0);
+  /**
+   * Get the value associated with key, or dflt if the key is not in the list.
+   */
+  public V getOrDefault(K key, V dflt) {
+    V value = find(key);
+    return (value == null) ? dflt : value;
+  } // getOrDefault(K, V)
 
-    // Print some X's at the start
-    pen.print(leading);
-    for (int level = 0; level < this.height; level++) {
-      pen.print(" X");
-    } // for
-    pen.println();
-    printLinks(pen, leading);
+  /**
+   * Associate value with key, unless the key already has a value.
+   *
+   * @return the value already there (or null, if value was added).
+   */
+  public V putIfAbsent(K key, V value) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    } // if
+    checkWriter();
+    SLNode<K, V>[] prevStorage = scratch();
+    int[] rankStorage = scratchRanks();
+    SLNode<K, V> found = locate(key, prevStorage, rankStorage);
+    if (matches(found, key)) {
+      return valueOf(found);
+    } // if
+    insertAt(key, value, prevStorage, rankStorage);
+    return null;
+  } // putIfAbsent(K, V)
 
-    while (current != null) {
-      // Print out the key as a fixed-width field.
-      // (There's probably a better way to do this.)
-      String str;
-      if (current.key == null) {
-        str = "<null>";
-      } else {
-        str = current.key.toString();
-      } // if/else
-      if (str.length() < leading.length()) {
-        pen.print(leading.substring(str.length()) + str);
-      } else {
-        pen.print(str.substring(0, leading.length()));
-      } // if/else
+  /**
+   * Get the value associated with key or, if there is none, compute one, add it and return it.
+   * (If the function returns null, nothing is added and null is returned.) The function must not
+   * change the list.
+   *
+   * @throws ConcurrentModificationException if the function adds or removes keys.
+   */
+  public V computeIfAbsent(K key, Function<? super K, ? extends V> function) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    } // if
+    checkWriter();
+    // Not the finger: the function may read the list, which would move it
+    boolean nested = this.computing;
+    SLNode<K, V>[] prevStorage = nested ? newNodeArray(this.maxHeight) : this.computeStorage;
+    int[] rankStorage = nested ? new int[this.maxHeight] : this.computeRanks;
+    SLNode<K, V> found = search(key, prevStorage, rankStorage);
+    if (matches(found, key)) {
+      return valueOf(found);
+    } // if
+    int expectedMods = this.modCount;
+    V value;
+    this.computing = true;
+    try {
+      value = function.apply(key);
+    } finally {
+      this.computing = nested;
+    } // try/finally
+    checkUnchanged(expectedMods);
+    if (value != null) {
+      this.fingerValid = false;
+      insertAt(key, value, prevStorage, rankStorage);
+    } // if
+    return value;
+  } // computeIfAbsent(K, Function)
 
-      // Print an indication for the links it has.
-      for (int level = 0; level < current.next.size(); level++) {
-        pen.print("-*");
-      } // for
-      // Print an indication for the links it lacks.
-      for (int level = current.next.size(); level < this.height; level++) {
-        pen.print(" |");
-      } // for
-      pen.println();
-      printLinks(pen, leading);
+  /**
+   * Replace the value associated with key by function(key, old value), where the old value is
+   * null if there is none. If the function returns null, the key is removed. The function must
+   * not change the list.
+   *
+   * @return the new value (or null, if there is none).
+   * @throws ConcurrentModificationException if the function adds or removes keys.
+   */
+  public V compute(K key, BiFunction<? super K, ? super V, ? extends V> function) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    } // if
+    checkWriter();
+    // Not the finger: the function may read the list, which would move it
+    boolean nested = this.computing;
+    SLNode<K, V>[] prevStorage = nested ? newNodeArray(this.maxHeight) : this.computeStorage;
+    int[] rankStorage = nested ? new int[this.maxHeight] : this.computeRanks;
+    SLNode<K, V> found = search(key, prevStorage, rankStorage);
+    boolean present = matches(found, key);
+    int expectedMods = this.modCount;
+    V value;
+    this.computing = true;
+    try {
+      value = function.apply(key, present ? valueOf(found) : null);
+    } finally {
+      this.computing = nested;
+    } // try/finally
+    checkUnchanged(expectedMods);
+    return replaceAt(key, value, present, found, prevStorage, rankStorage);
+  } // compute(K, BiFunction)
 
-      current = current.next.get(0);
-    } // while
+  /**
+   * Associate value with key if it has no value, and otherwise replace its value by
+   * function(old value, value); a null result removes the key. Handy for counters, as in
+   * merge(key, 1, Integer::sum). The function must not change the list.
+   *
+   * @return the new value (or null, if there is none).
+   * @throws ConcurrentModificationException if the function adds or removes keys.
+   */
+  public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> function) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    } // if
+    checkWriter();
+    // Not the finger: the function may read the list, which would move it
+    boolean nested = this.computing;
+    SLNode<K, V>[] prevStorage = nested ? newNodeArray(this.maxHeight) : this.computeStorage;
+    int[] rankStorage = nested ? new int[this.maxHeight] : this.computeRanks;
+    SLNode<K, V> found = search(key, prevStorage, rankStorage);
+    boolean present = matches(found, key);
+    if (present) {
+      int expectedMods = this.modCount;
+      this.computing = true;
+      try {
+        value = function.apply(valueOf(found), value);
+      } finally {
+        this.computing = nested;
+      } // try/finally
+      checkUnchanged(expectedMods);
+    } // if
+    return replaceAt(key, value, present, found, prevStorage, rankStorage);
+  } // merge(K, V, BiFunction)
 
-    // Print some O's at the start
-    pen.print(leading);
-    for (int level = 0; level < this.height; level++) {
-      pen.print(" O");
+  // +------------------+--------------------------------------------
+  // | Batch operations |
+  // +------------------+
+
+  /**
+   * Set all of the key/value pairs in batch. The batch is sorted first (unless it already is),
+   * and then each search picks up from where the previous one ended rather than from the top of
+   * the list, so a dense batch of k keys costs about k + log n steps rather than k log n.
+   *
+   * @throws NullPointerException if any key or value is null.
+   */
+  public void setAll(Map<? extends K, ? extends V> batch) {
+    checkWriter();
+    this.fingerValid = false;
+    ArrayList<Map.Entry<? extends K, ? extends V>> entries =
+        new ArrayList<Map.Entry<? extends K, ? extends V>>(batch.entrySet());
+    if (!inOrder(entries, Map.Entry::getKey)) {
+      entries.sort((e1, e2) -> comparator.compare(e1.getKey(), e2.getKey()));
+    } // if
+    for (Map.Entry<? extends K, ? extends V> entry : entries) {
+      if (entry.getKey() == null || entry.getValue() == null) {
+        throw new NullPointerException();
+      } // if
     } // for
-    pen.println();
-    // Forthcoming
-  } // dump(PrintWriter)
 
-  // +---------+-----------------------------------------------------
-  // | Helpers |
-  // +---------+
+    int steps = 0;
+    SLNode<K, V>[] prevStorage = newNodeArray(this.maxHeight);
+    int[] rankStorage = new int[this.maxHeight];
+    for (Map.Entry<? extends K, ? extends V> entry : entries) {
+      SLNode<K, V> found = searchFrom(entry.getKey(), prevStorage, rankStorage);
+      steps += this.stepCounter;
+      setAt(entry.getKey(), entry.getValue(), found, prevStorage, rankStorage);
+    } // for
+    this.stepCounter = steps;
+  } // setAll(Map)
 
   /**
-   * Pick a random height for a new node.
+   * Get the values associated with each of the keys, in a single sweep through the list.
+   *
+   * @return a list whose i-th element is the value for the i-th key (or null, if that key is not
+   *         in the map).
+   * @throws NullPointerException if any key is null.
    */
-  int randomHeight() {
-    int result = 1;
-    while (rand.nextDouble() < prob) {
-      result = result + 1;
-    }
-    return Math.min(INITIAL_HEIGHT, result);
-  } // randomHeight()
+  public ArrayList<V> getAll(Collection<? extends K> keys) {
+    ArrayList<K> batch = checkedBatch(keys);
+    Integer[] order = sortedOrder(batch);
+    ArrayList<V> result = new ArrayList<V>(batch.size());
+    for (int i = 0; i < batch.size(); i++) {
+      result.add(null);
+    } // for
+
+    int steps = 0;
+    SLNode<K, V>[] prevStorage = newNodeArray(this.maxHeight);
+    int[] rankStorage = new int[this.maxHeight];
+    for (int i = 0; i < batch.size(); i++) {
+      int position = (order == null) ? i : order[i];
+      K key = batch.get(position);
+      SLNode<K, V> found = searchFrom(key, prevStorage, rankStorage);
+      steps += this.stepCounter;
+      if (matches(found, key)) {
+        result.set(position, valueOf(found));
+      } // if
+    } // for
+    if (!this.concurrentReads) {
+      this.stepCounter = steps;
+    } // if
+    return result;
+  } // getAll(Collection)
 
   /**
-   * Get an iterator for all of the nodes. (Useful for implementing the other iterators.)
+   * Remove all of the keys, in a single sweep through the list.
+   *
+   * @return the number of keys that were removed.
+   * @throws NullPointerException if any key is null.
    */
-  Iterator<SLNode<K, V>> nodes() {
-    return new Iterator<SLNode<K, V>>() {
+  public int removeAll(Collection<? extends K> keys) {
+    checkWriter();
+    this.fingerValid = false;
+    ArrayList<K> sorted = sortedBatch(keys);
+    int removed = 0;
+    int steps = 0;
+    SLNode<K, V>[] prevStorage = newNodeArray(this.maxHeight);
+    int[] rankStorage = new int[this.maxHeight];
+    for (K key : sorted) {
+      SLNode<K, V> target = searchFrom(key, prevStorage, rankStorage);
+      steps += this.stepCounter;
+      if (matches(target, key)) {
+        unlink(target, prevStorage);
+        removed++;
+      } // if
+    } // for
+    this.stepCounter = steps;
+    return removed;
+  } // removeAll(Collection)
 
-      /**
-       * A reference to the next node to return.
+  // +----------------+----------------------------------------------
+  // | Set operations |
+  // +----------------+
+
+  /**
+   * Build a new list of the keys in this list or in other (which must order keys the same
+   * way). A key in both gets combiner(value here, value in other), or is left out if that is
+   * null. Both lists are walked once, in order, so this costs O(m + n).
+   */
+  public SkipList<K, V> union(SkipList<K, V> other,
+      BiFunction<? super V, ? super V, ? extends V> combiner) {
+    SkipListBuilder<K, V> result = new SkipListBuilder<K, V>(emptyCopy());
+    SLNode<K, V> a = after(null, 0);
+    SLNode<K, V> b = other.after(null, 0);
+    while (a != null && b != null) {
+      int order = this.comparator.compare(a.key, b.key);
+      if (order < 0) {
+        result.append(a.key, valueOf(a));
+        a = after(a, 0);
+      } else if (order > 0) {
+        result.append(b.key, other.valueOf(b));
+        b = other.after(b, 0);
+      } else {
+        appendCombined(result, a.key, combiner.apply(valueOf(a), other.valueOf(b)));
+        a = after(a, 0);
+        b = other.after(b, 0);
+      } // if/else
+    } // while
+    for (; a != null; a = after(a, 0)) {
+      result.append(a.key, valueOf(a));
+    } // for
+    for (; b != null; b = other.after(b, 0)) {
+      result.append(b.key, other.valueOf(b));
+    } // for
+    return result.build();
+  } // union(SkipList<K, V>, BiFunction)
+
+  /**
+   * Build a new list of the keys in both this list and other (which must order keys the same
+   * way), each with combiner(value here, value in other), or left out if that is null. The
+   * walk gallops: each list in turn skips ahead to the other's next key with searchFrom, which
+   * climbs the express lanes only as far as the gap needs, so a stretch of d keys that the
+   * other list lacks costs O(log d). Intersecting m keys with n costs about O(m log(n/m)).
+   */
+  public SkipList<K, V> intersection(SkipList<K, V> other,
+      BiFunction<? super V, ? super V, ? extends V> combiner) {
+    SkipListBuilder<K, V> result = new SkipListBuilder<K, V>(emptyCopy());
+    // Where each walk has got to, for searchFrom; stale entries are fine, since keys only grow
+    SLNode<K, V>[] here = newNodeArray(this.maxHeight);
+    int[] hereRanks = new int[this.maxHeight];
+    SLNode<K, V>[] there = newNodeArray(other.maxHeight);
+    int[] thereRanks = new int[other.maxHeight];
+    SLNode<K, V> a = after(null, 0);
+    while (a != null) {
+      SLNode<K, V> b = other.searchFrom(a.key, there, thereRanks);
+      if (b == null) {
+        break;
+      } // if
+      if (!other.matches(b, a.key)) {
+        a = searchFrom(b.key, here, hereRanks);
+        if (a == null || !matches(a, b.key)) {
+          continue;
+        } // if
+      } // if
+      appendCombined(result, a.key, combiner.apply(valueOf(a), other.valueOf(b)));
+      a = after(a, 0);
+    } // while
+    return result.build();
+  } // intersection(SkipList<K, V>, BiFunction)
+
+  /**
+   * Build a new list of the entries of this list whose keys are not in other (which must order
+   * keys the same way). other is searched with searchFrom, so a long stretch of it with no keys
+   * from this list is skipped through the express lanes rather than walked.
+   */
+  public SkipList<K, V> difference(SkipList<K, V> other) {
+    SkipListBuilder<K, V> result = new SkipListBuilder<K, V>(emptyCopy());
+    SLNode<K, V>[] there = newNodeArray(other.maxHeight);
+    int[] thereRanks = new int[other.maxHeight];
+    SLNode<K, V> a = after(null, 0);
+    SLNode<K, V> b = other.after(null, 0);
+    for (; a != null && b != null; a = after(a, 0)) {
+      b = other.searchFrom(a.key, there, thereRanks);
+      if (!other.matches(b, a.key)) {
+        result.append(a.key, valueOf(a));
+      } // if
+    } // for
+    for (; a != null; a = after(a, 0)) {
+      result.append(a.key, valueOf(a));
+    } // for
+    return result.build();
+  } // difference(SkipList<K, V>)
+
+  // +-------------+-------------------------------------------------
+  // | Range views |
+  // +-------------+
+
+  /**
+   * Get a view of the entries whose keys lie between fromKey and toKey. Finding the start of the
+   * range takes O(log n); the entries are then visited lazily, in order.
+   *
+   * @throws IllegalArgumentException if fromKey is larger than toKey.
+   */
+  public SkipListRange<K, V> subMap(K fromKey, boolean fromInclusive, K toKey,
+      boolean toInclusive) {
+    if (fromKey == null || toKey == null) {
+      throw new NullPointerException("null bound");
+    } // if
+    return new SkipListRange<K, V>(this, fromKey, fromInclusive, toKey, toInclusive);
+  } // subMap(K, boolean, K, boolean)
+
+  /**
+   * Get a view of the entries whose keys are at least fromKey and less than toKey.
+   */
+  public SkipListRange<K, V> subMap(K fromKey, K toKey) {
+    return subMap(fromKey, true, toKey, false);
+  } // subMap(K, K)
+
+  /**
+   * Get a view of the entries whose keys are less than (or, if inclusive, equal to) toKey.
+   */
+  public SkipListRange<K, V> headMap(K toKey, boolean inclusive) {
+    if (toKey == null) {
+      throw new NullPointerException("null bound");
+    } // if
+    return new SkipListRange<K, V>(this, null, false, toKey, inclusive);
+  } // headMap(K, boolean)
+
+  /**
+   * Get a view of the entries whose keys are less than toKey.
+   */
+  public SkipListRange<K, V> headMap(K toKey) {
+    return headMap(toKey, false);
+  } // headMap(K)
+
+  /**
+   * Get a view of the entries whose keys are greater than (or, if inclusive, equal to) fromKey.
+   */
+  public SkipListRange<K, V> tailMap(K fromKey, boolean inclusive) {
+    if (fromKey == null) {
+      throw new NullPointerException("null bound");
+    } // if
+    return new SkipListRange<K, V>(this, fromKey, inclusive, null, false);
+  } // tailMap(K, boolean)
+
+  /**
+   * Get a view of the entries whose keys are at least fromKey.
+   */
+  public SkipListRange<K, V> tailMap(K fromKey) {
+    return tailMap(fromKey, true);
+  } // tailMap(K)
+
+  // +---------+-----------------------------------------------------
+  // | Streams |
+  // +---------+
+
+  /**
+   * Get a spliterator for the keys, in order. It splits through the express lanes in O(log n),
+   * so parallel streams divide the list without walking it: exactly in half, with known sizes,
+   * if the list is indexed, and roughly otherwise. The list must not change while it is in use.
+   */
+  public Spliterator<K> keySpliterator() {
+    return new SkipListSpliterator<K, V, K>(this, (node) -> node.key, true,
+        this.natural ? null : this.comparator);
+  } // keySpliterator()
+
+  /**
+   * Get a spliterator for the values, in the order of their keys.
+   */
+  public Spliterator<V> valueSpliterator() {
+    return new SkipListSpliterator<K, V, V>(this, this::valueOf, false, null);
+  } // valueSpliterator()
+
+  /**
+   * Get a spliterator for the entries, in order.
+   */
+  public Spliterator<Map.Entry<K, V>> entrySpliterator() {
+    return new SkipListSpliterator<K, V, Map.Entry<K, V>>(this,
+        (node) -> new AbstractMap.SimpleImmutableEntry<K, V>(node.key, valueOf(node)), true,
+        Map.Entry.comparingByKey(this.comparator));
+  } // entrySpliterator()
+
+  /**
+   * Get a stream of the keys, in order. Call parallel() on it to spread the work over the
+   * fork-join pool.
+   */
+  public Stream<K> stream() {
+    return StreamSupport.stream(keySpliterator(), false);
+  } // stream()
+
+  /**
+   * Get a stream of the values, in the order of their keys.
+   */
+  public Stream<V> valueStream() {
+    return StreamSupport.stream(valueSpliterator(), false);
+  } // valueStream()
+
+  /**
+   * Get a stream of the entries, in order.
+   */
+  public Stream<Map.Entry<K, V>> entryStream() {
+    return StreamSupport.stream(entrySpliterator(), false);
+  } // entryStream()
+
+  /**
+   * Apply action to every entry on the common fork-join pool, in no particular order. The list
+   * is split into a few pieces per thread, and action may be called from several threads at
+   * once. In single-writer mode, other threads cannot split the list, so this runs on one.
+   */
+  public void parallelForEach(BiConsumer<? super K, ? super V> action) {
+    SkipListSpliterator<K, V, SLNode<K, V>> nodes =
+        new SkipListSpliterator<K, V, SLNode<K, V>>(this, Function.identity(), false, null);
+    long threshold = Math.max(1, this.size / (4L * ForkJoinPool.getCommonPoolParallelism()));
+    new ParallelForEach<K, V>(null, nodes, action, threshold).invoke();
+  } // parallelForEach(BiConsumer)
+
+  // +-------------------+-------------------------------------------
+  // | Positional access |
+  // +-------------------+
+
+  /**
+   * Get the value at the given position (counting from 0, in key order). In an indexed list
+   * (see indexed()), each link records how many positions it skips, so this takes O(log n);
+   * otherwise it walks from the front, as rankOf and the index ranges do. In single-writer mode,
+   * only the writer may use the positional methods.
+   *
+   * @throws IndexOutOfBoundsException if index is not between 0 and size() - 1.
+   */
+  public V getByIndex(int index) {
+    return valueOf(nodeAt(checkIndex(index) + 1));
+  } // getByIndex(int)
+
+  /**
+   * Get the key at the given position (counting from 0, in key order).
+   *
+   * @throws IndexOutOfBoundsException if index is not between 0 and size() - 1.
+   */
+  public K keyAt(int index) {
+    return nodeAt(checkIndex(index) + 1).key;
+  } // keyAt(int)
+
+  /**
+   * Count the keys that are smaller than key, whether or not key itself is in the list. If it
+   * is, that count is also its index.
+   */
+  public int rankOf(K key) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    } // if
+    long prefix = prefixOf(key);
+    int rank = 0;
+    if (!this.indexed) {
+      for (SLNode<K, V> node = after(null, 0); node != null && order(node, key, prefix) < 0;
+          node = after(node, 0)) {
+        rank++;
+      } // for
+      return rank;
+    } // if
+    SLNode<K, V> prev = null;
+    SLNode<K, V> bound = null;
+    for (int level = this.height - 1; level >= 0; level--) {
+      SLNode<K, V> curr = after(prev, level);
+      while (curr != null && curr != bound) {
+        if (order(curr, key, prefix) >= 0) {
+          bound = curr;
+          break;
+        } // if
+        rank += widthsOf(prev)[level];
+        prev = curr;
+        curr = after(curr, level);
+      } // while
+    } // for
+    return rank;
+  } // rankOf(K)
+
+  /**
+   * Get an iterator for the keys at positions fromIndex (inclusive) to toIndex (exclusive).
+   * Finding the first one takes O(log n) in an indexed list.
+   *
+   * @throws IndexOutOfBoundsException if the positions are out of order or out of range.
+   */
+  public Iterator<K> keys(int fromIndex, int toIndex) {
+    Iterator<SLNode<K, V>> nit = nodes(fromIndex, toIndex);
+    return new Iterator<K>() {
+      @Override
+      public boolean hasNext() {
+        return nit.hasNext();
+      } // hasNext()
+
+      @Override
+      public K next() {
+        return nit.next().key;
+      } // next()
+    };
+  } // keys(int, int)
+
+  /**
+   * Get an iterator for the values at positions fromIndex (inclusive) to toIndex (exclusive).
+   *
+   * @throws IndexOutOfBoundsException if the positions are out of order or out of range.
+   */
+  public Iterator<V> values(int fromIndex, int toIndex) {
+    Iterator<SLNode<K, V>> nit = nodes(fromIndex, toIndex);
+    return new Iterator<V>() {
+      @Override
+      public boolean hasNext() {
+        return nit.hasNext();
+      } // hasNext()
+
+      @Override
+      public V next() {
+        return valueOf(nit.next());
+      } // next()
+    };
+  } // values(int, int)
+
+  /**
+   * Apply action to the entries at positions fromIndex (inclusive) to toIndex (exclusive).
+   *
+   * @throws IndexOutOfBoundsException if the positions are out of order or out of range.
+   */
+  public void forEach(int fromIndex, int toIndex, BiConsumer<? super K, ? super V> action) {
+    for (Iterator<SLNode<K, V>> nit = nodes(fromIndex, toIndex); nit.hasNext();) {
+      SLNode<K, V> node = nit.next();
+      action.accept(node.key, valueOf(node));
+    } // for
+  } // forEach(int, int, BiConsumer)
+
+  // +---------------+-----------------------------------------------
+  // | Finger search |
+  // +---------------+
+
+  /**
+   * Turn finger search on or off. With it on, the list remembers where the last get, set or
+   * remove ended, and a search climbs up from there only as far as it needs to, costing O(log d)
+   * for a key d positions away (in either direction) instead of O(log n). In single-writer mode,
+   * only the writer's operations use the finger.
+   */
+  public void useFinger(boolean on) {
+    this.finger = on ? newNodeArray(this.maxHeight) : null;
+    this.fingerRanks = on ? new int[this.maxHeight] : null;
+    this.fingerValid = false;
+  } // useFinger(boolean)
+
+  /**
+   * Get the number of searches that started from the finger.
+   */
+  public long fingerHits() {
+    return this.fingerHits;
+  } // fingerHits()
+
+  /**
+   * Get the number of searches that could not use the finger and started from the top.
+   */
+  public long fingerMisses() {
+    return this.fingerMisses;
+  } // fingerMisses()
+
+  /**
+   * Reset the finger hit and miss counts.
+   */
+  public void resetFingerStats() {
+    this.fingerHits = 0;
+    this.fingerMisses = 0;
+  } // resetFingerStats()
+
+  // +----------------+----------------------------------------------
+  // | Node recycling |
+  // +----------------+
+
+  /**
+   * Keep up to limit removed nodes of each height, and reuse them for new keys of the same
+   * height, so that a list whose keys come and go rarely allocates. 0 turns recycling off (the
+   * default). With it on, an iterator (or forEach) must not go on after the node it is about to
+   * visit is removed, since that node may come back with another key.
+   *
+   * @throws IllegalArgumentException if limit is negative.
+   * @throws IllegalStateException if other threads may read the list, since a reader may still
+   *         be standing on a removed node.
+   */
+  public void recycleNodes(int limit) {
+    if (limit < 0) {
+      throw new IllegalArgumentException("Negative pool limit: " + limit);
+    } // if
+    if (limit > 0 && this.concurrentReads) {
+      throw new IllegalStateException("Cannot recycle nodes with readers on other threads");
+    } // if
+    this.poolLimit = limit;
+    this.pool = (limit > 0) ? newNodeArray(this.maxHeight) : null;
+    this.pooled = (limit > 0) ? new int[this.maxHeight] : null;
+  } // recycleNodes(int)
+
+  /**
+   * Get the number of removed nodes waiting to be reused.
+   */
+  public int pooledNodes() {
+    int total = 0;
+    if (this.pooled != null) {
+      for (int count : this.pooled) {
+        total += count;
+      } // for
+    } // if
+    return total;
+  } // pooledNodes()
+
+  // +----------------------+----------------------------------------
+  // | Other public methods |
+  // +----------------------+
+
+  /**
+   * Dump the tree to some output location.
+   */
+  public void dump(PrintWriter pen) {
+    String leading = "          ";
+
+    SLNode<K, V> current = front[0];
+
+    // Print some X's at the start
+    pen.print(leading);
+    for (int level = 0; level < this.height; level++) {
+      pen.print(" X");
+    } // for
+    pen.println();
+    printLinks(pen, leading);
+
+    while (current != null) {
+      // Print out the key as a fixed-width field.
+      // (There's probably a better way to do this.)
+      String str;
+      if (current.key == null) {
+        str = "<null>";
+      } else {
+        str = current.key.toString();
+      } // if/else
+      if (str.length() < leading.length()) {
+        pen.print(leading.substring(str.length()) + str);
+      } else {
+        pen.print(str.substring(0, leading.length()));
+      } // if/else
+
+      // Print an indication for the links it has.
+      for (int level = 0; level < current.next.length; level++) {
+        pen.print("-*");
+      } // for
+      // Print an indication for the links it lacks.
+      for (int level = current.next.length; level < this.height; level++) {
+        pen.print(" |");
+      } // for
+      pen.println();
+      printLinks(pen, leading);
+
+      current = current.next[0];
+    } // while
+
+    // Print some O's at the start
+    pen.print(leading);
+    for (int level = 0; level < this.height; level++) {
+      pen.print(" O");
+    } // for
+    pen.println();
+    // Forthcoming
+  } // dump(PrintWriter)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Find the first node whose key is at least key (or null, if there is no such node). If
+   * prevStorage is non-null, also fill it with the last node before key at each level (null
+   * stands for the front of the list), and rankStorage with the positions of those nodes (0 for
+   * the front, 1 for the first node, and so on).
+   */
+  SLNode<K, V> search(K key, SLNode<K, V>[] prevStorage, int[] rankStorage) {
+    long prefix = prefixOf(key);
+    boolean ranked = this.indexed && rankStorage != null;
+    int steps = 0;
+    int rank = 0;
+    SLNode<K, V> prev = null;
+    SLNode<K, V> curr = null;
+    // The first node known to be at least key, and how it compared: a search that drops a level
+    // usually meets the same node again, and need not compare it twice
+    SLNode<K, V> bound = null;
+    int boundOrder = 1;
+    for (int level = this.height - 1; level >= 0; level--) {
+      curr = after(prev, level);
+      while (curr != null && curr != bound) {
+        int order = order(curr, key, prefix);
+        if (order >= 0) {
+          bound = curr;
+          boundOrder = order;
+          break;
+        } // if
+        if (ranked) {
+          rank += widthsOf(prev)[level];
+        } // if
+        prev = curr;
+        curr = after(curr, level);
+        steps++;
+      } // while
+      if (prevStorage != null) {
+        prevStorage[level] = prev;
+        rankStorage[level] = rank;
+      } // if
+    } // for
+    // Readers on other threads leave the counter and match alone, rather than fight over them
+    if (!this.concurrentReads) {
+      this.stepCounter = steps;
+      this.match = (curr != null && boundOrder == 0) ? curr : null;
+    } // if
+    return curr;
+  } // search(K, SLNode<K, V>[])
+
+  /**
+   * Get an array for the writer to search with: the finger, if finger search is on, or else
+   * update.
+   */
+  SLNode<K, V>[] scratch() {
+    return (this.finger != null) ? this.finger : this.update;
+  } // scratch()
+
+  /**
+   * Get an array to keep ranks in: the finger's, if finger search is on, or else update's.
+   */
+  int[] scratchRanks() {
+    return (this.finger != null) ? this.fingerRanks : this.updateRanks;
+  } // scratchRanks()
+
+  /**
+   * Search for key, filling prevStorage and rankStorage as search does. If prevStorage is the
+   * finger, start from where the last search ended, and leave the finger valid. For a key at or
+   * before that spot, first climb the finger until it is before key.
+   */
+  SLNode<K, V> locate(K key, SLNode<K, V>[] prevStorage, int[] rankStorage) {
+    if (prevStorage != this.finger) {
+      return search(key, prevStorage, rankStorage);
+    } // if
+    if (!this.fingerValid) {
+      this.fingerMisses++;
+      SLNode<K, V> found = search(key, prevStorage, rankStorage);
+      this.fingerValid = true;
+      return found;
+    } // if
+    this.fingerHits++;
+    long prefix = prefixOf(key);
+    int level = 0;
+    while (level < this.height && prevStorage[level] != null
+        && order(prevStorage[level], key, prefix) >= 0) {
+      level++;
+    } // while
+    if (level > 0) {
+      // prevStorage[level] is before key, and so, being the last node before the old key at its
+      // level and above, also the last before key; the levels below start from it
+      SLNode<K, V> start = (level < this.height) ? prevStorage[level] : null;
+      int rank = (start != null) ? rankStorage[level] : 0;
+      for (int i = 0; i < level; i++) {
+        prevStorage[i] = start;
+        rankStorage[i] = rank;
+      } // for
+    } // if
+    return searchFrom(key, prevStorage, rankStorage);
+  } // locate(K, SLNode<K, V>[], int[])
+
+  /**
+   * Like search, but starting from prevStorage, which must hold the nodes that come before some
+   * key no larger than key (as left by an earlier search, or all null for the front). Rather
+   * than descending from the top, climbs from level 0 only until the next node is at least key,
+   * so the cost depends on how far key is from the earlier key rather than on the size of the
+   * list.
+   */
+  SLNode<K, V> searchFrom(K key, SLNode<K, V>[] prevStorage, int[] rankStorage) {
+    long prefix = prefixOf(key);
+    boolean ranked = this.indexed;
+    int steps = 0;
+
+    // Climb until the next node is far enough along; the levels above that are already right
+    SLNode<K, V> bound = null;
+    int boundOrder = 1;
+    int top = 0;
+    while (top < this.height) {
+      SLNode<K, V> next = after(prevStorage[top], top);
+      if (next == null) {
+        break;
+      } // if
+      int order = order(next, key, prefix);
+      if (order >= 0) {
+        bound = next;
+        boundOrder = order;
+        break;
+      } // if
+      top++;
+    } // while
+
+    // Then go back down, moving forward at each level
+    SLNode<K, V> prev = (top > 0) ? prevStorage[top - 1] : null;
+    int rank = (top > 0) ? rankStorage[top - 1] : 0;
+    SLNode<K, V> curr = (top > 0) ? null : after(prevStorage[0], 0);
+    for (int level = top - 1; level >= 0; level--) {
+      curr = after(prev, level);
+      while (curr != null && curr != bound) {
+        int order = order(curr, key, prefix);
+        if (order >= 0) {
+          bound = curr;
+          boundOrder = order;
+          break;
+        } // if
+        if (ranked) {
+          rank += widthsOf(prev)[level];
+        } // if
+        prev = curr;
+        curr = after(curr, level);
+        steps++;
+      } // while
+      prevStorage[level] = prev;
+      rankStorage[level] = rank;
+    } // for
+    if (!this.concurrentReads) {
+      this.stepCounter = steps;
+      this.match = (curr != null && curr == bound && boundOrder == 0) ? curr : null;
+    } // if
+    return curr;
+  } // searchFrom(K, SLNode<K, V>[], int[])
+
+  /**
+   * Set the value for key, given the result of searching for it: found is the first node whose
+   * key is at least key, and prevStorage and rankStorage hold the nodes before key at each level
+   * and their positions.
+   */
+  V setAt(K key, V value, SLNode<K, V> found, SLNode<K, V>[] prevStorage, int[] rankStorage) {
+    if (matches(found, key)) {
+      V rVal = found.value;
+      setValue(found, value);
+      return rVal;
+    } // if
+    insertAt(key, value, prevStorage, rankStorage);
+    return null;
+  } // setAt(K, V, SLNode<K, V>, SLNode<K, V>[], int[])
+
+  /**
+   * Add key, which the search that filled prevStorage and rankStorage did not find. Callers that
+   * have let other code read the list since that search must use this rather than setAt, since
+   * those reads forget which node the search matched.
+   */
+  void insertAt(K key, V value, SLNode<K, V>[] prevStorage, int[] rankStorage) {
+    // Insert the node, linking it in from the bottom up so that a reader who finds it at some
+    // level can always follow it down
+    SLNode<K, V> newAdd = newNode(key, value, randomHeight());
+    for (int i = this.height; i < newAdd.next.length; i++) {
+      // A level the list did not use yet: the node goes right after the front
+      prevStorage[i] = null;
+    } // for
+    for (int i = 0; i < newAdd.next.length; i++) {
+      newAdd.next[i] = after(prevStorage[i], i);
+    } // for
+    if (this.indexed) {
+      insertWidths((IndexedNode<K, V>) newAdd, prevStorage, rankStorage);
+    } // if
+    for (int i = 0; i < newAdd.next.length; i++) {
+      link(prevStorage[i], i, newAdd);
+    } // for
+    this.height = Math.max(this.height, newAdd.next.length);
+    size++;
+    modCount++;
+  } // insertAt(K, V, SLNode<K, V>[], int[])
+
+  /**
+   * Work out the widths of the links into and out of node, which is about to be linked in after
+   * the nodes in prevStorage, at the positions in rankStorage.
+   */
+  void insertWidths(IndexedNode<K, V> node, SLNode<K, V>[] prevStorage, int[] rankStorage) {
+    int rank = rankStorage[0] + 1;
+    for (int i = this.height; i < node.next.length; i++) {
+      rankStorage[i] = 0;
+      this.frontWidth[i] = this.size + 1;
+    } // for
+    for (int i = 0; i < node.next.length; i++) {
+      int[] prevWidth = widthsOf(prevStorage[i]);
+      node.width[i] = rankStorage[i] + prevWidth[i] + 1 - rank;
+      prevWidth[i] = rank - rankStorage[i];
+    } // for
+    for (int i = node.next.length; i < this.height; i++) {
+      widthsOf(prevStorage[i])[i]++;
+    } // for
+  } // insertWidths(IndexedNode<K, V>, SLNode<K, V>[], int[])
+
+  /**
+   * Give key the value computed by compute or merge, given the result of searching for it
+   * (present says whether found holds key): set it, add it, or remove the key if value is null.
+   */
+  V replaceAt(K key, V value, boolean present, SLNode<K, V> found, SLNode<K, V>[] prevStorage,
+      int[] rankStorage) {
+    if (value == null) {
+      if (present) {
+        this.fingerValid = false;
+        unlink(found, prevStorage);
+      } // if
+    } else if (present) {
+      setValue(found, value);
+    } else {
+      this.fingerValid = false;
+      insertAt(key, value, prevStorage, rankStorage);
+    } // if/else
+    return value;
+  } // replaceAt(K, V, boolean, SLNode<K, V>, SLNode<K, V>[], int[])
+
+  /**
+   * Create an empty list with the same options as this one (other than single-writer mode), and
+   * a level generator of its own.
+   */
+  SkipList<K, V> emptyCopy() {
+    return new SkipList<K, V>(this.comparator, this.levels.fresh(), this.maxHeight, false,
+        this.prefixes, this.indexed);
+  } // emptyCopy()
+
+  /**
+   * Add a combined value to the end of a list being built, unless it is null.
+   */
+  static <K, V> void appendCombined(SkipListBuilder<K, V> builder, K key, V value) {
+    if (value != null) {
+      builder.append(key, value);
+    } // if
+  } // appendCombined(SkipListBuilder<K, V>, K, V)
+
+  /**
+   * Make sure that a function passed to compute and the like left the list's keys alone.
+   *
+   * @throws ConcurrentModificationException if keys were added or removed since modCount was
+   *         expectedMods.
+   */
+  void checkUnchanged(int expectedMods) {
+    if (this.modCount != expectedMods) {
+      throw new ConcurrentModificationException("The function changed the list");
+    } // if
+  } // checkUnchanged(int)
+
+  /**
+   * Remove target, given the nodes before it at each level.
+   */
+  void unlink(SLNode<K, V> target, SLNode<K, V>[] prevStorage) {
+    // Unlink the node from the top down, leaving its own links alone so that a reader who is
+    // standing on it can still move on
+    for (int i = target.next.length - 1; i >= 0; i--) {
+      link(prevStorage[i], i, target.next[i]);
+    } // for
+    if (this.indexed) {
+      int[] width = ((IndexedNode<K, V>) target).width;
+      for (int i = 0; i < this.height; i++) {
+        widthsOf(prevStorage[i])[i] += (i < width.length) ? width[i] - 1 : -1;
+      } // for
+    } // if
+    while (this.height > 1 && this.front[this.height - 1] == null) {
+      this.height--;
+    } // while
+    if (this.match == target) {
+      this.match = null;
+    } // if
+    size--;
+    modCount++;
+    recycle(target);
+  } // unlink(SLNode<K, V>, SLNode<K, V>[])
+
+  /**
+   * Put a node that has just been removed into the pool, if recycling is on and the pool has
+   * room for another of its height. Its key, value and links are cleared, so that the pool
+   * holds on to nothing else.
+   */
+  void recycle(SLNode<K, V> node) {
+    int h = node.next.length;
+    if (this.pool == null || this.pooled[h - 1] >= this.poolLimit) {
+      return;
+    } // if
+    node.key = null;
+    node.value = null;
+    Arrays.fill(node.next, null);
+    node.next[0] = this.pool[h - 1];
+    this.pool[h - 1] = node;
+    this.pooled[h - 1]++;
+  } // recycle(SLNode<K, V>)
+
+  /**
+   * Determine whether a batch is already in increasing order of key.
+   */
+  <T> boolean inOrder(List<T> batch, Function<? super T, ? extends K> keyOf) {
+    for (int i = 1; i < batch.size(); i++) {
+      if (comparator.compare(keyOf.apply(batch.get(i - 1)), keyOf.apply(batch.get(i))) > 0) {
+        return false;
+      } // if
+    } // for
+    return true;
+  } // inOrder(List<T>, Function)
+
+  /**
+   * Copy a batch of keys, sorting the copy if it is not already in order.
+   *
+   * @throws NullPointerException if any key is null.
+   */
+  ArrayList<K> sortedBatch(Collection<? extends K> keys) {
+    ArrayList<K> sorted = checkedBatch(keys);
+    if (!inOrder(sorted, Function.identity())) {
+      sorted.sort(comparator);
+    } // if
+    return sorted;
+  } // sortedBatch(Collection)
+
+  /**
+   * Copy a batch of keys, making sure that none of them is null.
+   */
+  ArrayList<K> checkedBatch(Collection<? extends K> keys) {
+    ArrayList<K> batch = new ArrayList<K>(keys);
+    for (K key : batch) {
+      if (key == null) {
+        throw new NullPointerException("null key");
+      } // if
+    } // for
+    return batch;
+  } // checkedBatch(Collection)
+
+  /**
+   * Find the order of the keys in a batch: the i-th smallest key is at position order[i] of the
+   * batch. Returns null if the batch is already in order.
+   */
+  Integer[] sortedOrder(List<K> batch) {
+    if (inOrder(batch, Function.identity())) {
+      return null;
+    } // if
+    Integer[] order = new Integer[batch.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    } // for
+    Arrays.sort(order, (i, j) -> comparator.compare(batch.get(i), batch.get(j)));
+    return order;
+  } // sortedOrder(List<K>)
+
+  /**
+   * Find the first node whose key is at least key (or, if inclusive is false, greater than key).
+   */
+  SLNode<K, V> ceiling(K key, boolean inclusive) {
+    SLNode<K, V> found = search(key, null, null);
+    if (!inclusive && matches(found, key)) {
+      found = after(found, 0);
+    } // if
+    return found;
+  } // ceiling(K, boolean)
+
+  /**
+   * Compare the key of node with key, whose prefix (if prefixes are on) is prefix: negative if
+   * the node comes first, zero if it holds key, positive if it comes after. Decided by the
+   * prefixes when they differ, and by the keys themselves otherwise.
+   */
+  @SuppressWarnings("unchecked")
+  int order(SLNode<K, V> node, K key, long prefix) {
+    if (this.prefixes != null) {
+      int byPrefix = Long.compareUnsigned(prefixIn(node), prefix);
+      if (byPrefix != 0) {
+        return byPrefix;
+      } // if
+    } // if
+    if (this.natural) {
+      return ((Comparable<Object>) node.key).compareTo(key);
+    } // if
+    return this.comparator.compare(node.key, key);
+  } // order(SLNode<K, V>, K, long)
+
+  /**
+   * Get the prefix cached in node, which must belong to a list with prefixes on.
+   */
+  static long prefixIn(SLNode<?, ?> node) {
+    if (node instanceof PrefixedNode) {
+      return ((PrefixedNode<?, ?>) node).prefix;
+    } // if
+    return ((IndexedPrefixedNode<?, ?>) node).prefix;
+  } // prefixIn(SLNode<?, ?>)
+
+  /**
+   * Get the prefix of key (or 0, if prefixes are off).
+   */
+  long prefixOf(K key) {
+    return (this.prefixes == null) ? 0 : this.prefixes.applyAsLong(key);
+  } // prefixOf(K)
+
+  /**
+   * Determine whether found, the node the search for key just returned, holds key. Without
+   * readers on other threads, the search has already worked it out.
+   */
+  boolean matches(SLNode<K, V> found, K key) {
+    if (found == null) {
+      return false;
+    } // if
+    if (!this.concurrentReads) {
+      return found == this.match;
+    } // if
+    return order(found, key, prefixOf(key)) == 0;
+  } // matches(SLNode<K, V>, K)
+
+  /**
+   * Make a node for this list: one that caches the key's prefix, if prefixes are on. Takes it
+   * from the pool, if there is one of the right height.
+   */
+  @SuppressWarnings("unchecked")
+  SLNode<K, V> newNode(K key, V value, int height) {
+    SLNode<K, V> node = (this.pool == null) ? null : this.pool[height - 1];
+    if (node != null) {
+      this.pool[height - 1] = node.next[0];
+      this.pooled[height - 1]--;
+      node.next[0] = null;
+      node.key = key;
+      node.value = value;
+      if (node instanceof PrefixedNode) {
+        ((PrefixedNode<K, V>) node).prefix = this.prefixes.applyAsLong(key);
+      } else if (node instanceof IndexedPrefixedNode) {
+        ((IndexedPrefixedNode<K, V>) node).prefix = this.prefixes.applyAsLong(key);
+      } // if/else
+      return node;
+    } // if
+    if (this.prefixes == null) {
+      return this.indexed ? new IndexedNode<K, V>(key, value, height)
+          : new SLNode<K, V>(key, value, height);
+    } // if
+    long prefix = this.prefixes.applyAsLong(key);
+    return this.indexed ? new IndexedPrefixedNode<K, V>(key, value, height, prefix)
+        : new PrefixedNode<K, V>(key, value, height, prefix);
+  } // newNode(K, V, int)
+
+  /**
+   * Get the widths of the links out of prev (with null standing for the front). Only indexed
+   * lists have them.
+   */
+  int[] widthsOf(SLNode<K, V> prev) {
+    return (prev == null) ? this.frontWidth : ((IndexedNode<K, V>) prev).width;
+  } // widthsOf(SLNode<K, V>)
+
+  /**
+   * Get the node at the given position (1 for the first node), or null for position 0. Takes
+   * O(log n) in an indexed list, and a walk from the front otherwise.
+   */
+  SLNode<K, V> nodeAt(int position) {
+    SLNode<K, V> prev = null;
+    if (!this.indexed) {
+      for (int rank = 0; rank < position; rank++) {
+        prev = after(prev, 0);
+      } // for
+      return prev;
+    } // if
+    int rank = 0;
+    for (int level = this.height - 1; level >= 0 && rank < position; level--) {
+      while (after(prev, level) != null && rank + widthsOf(prev)[level] <= position) {
+        rank += widthsOf(prev)[level];
+        prev = after(prev, level);
+      } // while
+    } // for
+    return prev;
+  } // nodeAt(int)
+
+  /**
+   * Find a node roughly halfway from from to stop (exclusive; null for the end of the list)
+   * without knowing the widths: of the nodes strictly between them, take the middle one of those
+   * on the highest level that has any. Returns null if none of them is above level 0.
+   */
+  SLNode<K, V> splitPoint(SLNode<K, V> from, SLNode<K, V> stop) {
+    long fromPrefix = prefixOf(from.key);
+    long stopPrefix = (stop == null) ? 0 : prefixOf(stop.key);
+    SLNode<K, V> prev = null;
+    for (int level = this.height - 1; level > 0; level--) {
+      SLNode<K, V> curr = after(prev, level);
+      while (curr != null && order(curr, from.key, fromPrefix) <= 0) {
+        prev = curr;
+        curr = after(curr, level);
+      } // while
+      int count = 0;
+      for (SLNode<K, V> node = curr; node != null
+          && (stop == null || order(node, stop.key, stopPrefix) < 0); node = after(node, level)) {
+        count++;
+      } // for
+      if (count > 0) {
+        for (int i = 0; i < count / 2; i++) {
+          curr = after(curr, level);
+        } // for
+        return curr;
+      } // if
+    } // for
+    return null;
+  } // splitPoint(SLNode<K, V>, SLNode<K, V>)
+
+  /**
+   * Get the node that follows prev at the given level (with null standing for the front).
+   */
+  @SuppressWarnings("unchecked")
+  SLNode<K, V> after(SLNode<K, V> prev, int level) {
+    SLNode<K, V>[] links = (prev == null) ? this.front : prev.next;
+    if (this.concurrentReads) {
+      return (SLNode<K, V>) LINKS.getAcquire(links, level);
+    } // if
+    return links[level];
+  } // after(SLNode<K, V>, int)
+
+  /**
+   * Make node follow prev at the given level (with null standing for the front).
+   */
+  void link(SLNode<K, V> prev, int level, SLNode<K, V> node) {
+    SLNode<K, V>[] links = (prev == null) ? this.front : prev.next;
+    if (this.concurrentReads) {
+      LINKS.setRelease(links, level, node);
+    } else {
+      links[level] = node;
+    } // if/else
+  } // link(SLNode<K, V>, int, SLNode<K, V>)
+
+  /**
+   * Get the value stored in a node.
+   */
+  @SuppressWarnings("unchecked")
+  V valueOf(SLNode<K, V> node) {
+    if (this.concurrentReads) {
+      return (V) VALUE.getAcquire(node);
+    } // if
+    return node.value;
+  } // valueOf(SLNode<K, V>)
+
+  /**
+   * Change the value stored in a node.
+   */
+  void setValue(SLNode<K, V> node, V value) {
+    if (this.concurrentReads) {
+      VALUE.setRelease(node, value);
+    } else {
+      node.value = value;
+    } // if/else
+  } // setValue(SLNode<K, V>, V)
+
+  /**
+   * In single-writer mode, make sure that the current thread is the writer (adopting it as the
+   * writer if there is none yet).
+   */
+  void checkWriter() {
+    if (this.concurrentReads) {
+      Thread current = Thread.currentThread();
+      if (this.writer == null) {
+        this.writer = current;
+      } else if (this.writer != current) {
+        throw new IllegalStateException("Only " + this.writer.getName() + " may modify this list");
+      } // if/else
+    } // if
+  } // checkWriter()
+
+  /**
+   * Pick a random height for a new node.
+   */
+  int randomHeight() {
+    return this.levels.nextLevel(this.maxHeight);
+  } // randomHeight()
+
+  /**
+   * Create an array of n node pointers, all null.
+   */
+  @SuppressWarnings("unchecked")
+  static <K, V> SLNode<K, V>[] newNodeArray(int n) {
+    return (SLNode<K, V>[]) new SLNode<?, ?>[n];
+  } // newNodeArray(int)
+
+  /**
+   * Get an iterator for all of the nodes. (Useful for implementing the other iterators.)
+   */
+  Iterator<SLNode<K, V>> nodes() {
+    return new Iterator<SLNode<K, V>>() {
+
+      /**
+       * A reference to the next node to return.
        */
-      SLNode<K, V> next = SkipList.this.front.get(0);
+      SLNode<K, V> next = SkipList.this.after(null, 0);
 
       @Override
       public boolean hasNext() {
@@ -462,12 +1844,64 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
           throw new IllegalStateException();
         }
         SLNode<K, V> temp = this.next;
-        this.next = this.next.next.get(0);
+        this.next = SkipList.this.after(this.next, 0);
         return temp;
       } // next();
     }; // new Iterator
   } // nodes()
 
+  /**
+   * Get an iterator for the nodes at positions fromIndex (inclusive) to toIndex (exclusive),
+   * counting from 0.
+   */
+  Iterator<SLNode<K, V>> nodes(int fromIndex, int toIndex) {
+    if (fromIndex < 0 || toIndex > this.size || fromIndex > toIndex) {
+      throw new IndexOutOfBoundsException(
+          "Range [" + fromIndex + ", " + toIndex + ") of list of size " + this.size);
+    } // if
+    return new Iterator<SLNode<K, V>>() {
+
+      /**
+       * A reference to the next node to return.
+       */
+      SLNode<K, V> next = (fromIndex < toIndex) ? nodeAt(fromIndex + 1) : null;
+
+      /**
+       * How many nodes remain, counting next.
+       */
+      int remaining = toIndex - fromIndex;
+
+      @Override
+      public boolean hasNext() {
+        return this.remaining > 0;
+      } // hasNext()
+
+      @Override
+      public SLNode<K, V> next() {
+        if (this.remaining <= 0) {
+          throw new NoSuchElementException();
+        } // if
+        SLNode<K, V> temp = this.next;
+        if (--this.remaining > 0) {
+          this.next = SkipList.this.after(this.next, 0);
+        } // if
+        return temp;
+      } // next()
+    }; // new Iterator
+  } // nodes(int, int)
+
+  /**
+   * Make sure that index names an entry.
+   *
+   * @throws IndexOutOfBoundsException if it does not.
+   */
+  int checkIndex(int index) {
+    if (index < 0 || index >= this.size) {
+      throw new IndexOutOfBoundsException("Index " + index + " of list of size " + this.size);
+    } // if
+    return index;
+  } // checkIndex(int)
+
   /**
    * Print some links (for dump).
    */
@@ -505,9 +1939,10 @@ class SLNode<K, V> {
   V value;
 
   /**
-   * Pointers to the next nodes.
+   * Pointers to the next nodes. (A plain array, rather than a list, so that each hop is a single
+   * array load.)
    */
-  ArrayList<SLNode<K, V>> next;
+  SLNode<K, V>[] next;
 
   // +--------------+------------------------------------------------
   // | Constructors |
@@ -519,16 +1954,74 @@ class SLNode<K, V> {
   public SLNode(K key, V value, int n) {
     this.key = key;
     this.value = value;
-    this.next = new ArrayList<SLNode<K, V>>(n);
-    for (int i = 0; i < n; i++) {
-      this.next.add(null);
-    } // for
+    this.next = SkipList.newNodeArray(n);
   } // SLNode(K, V, int)
 
   // +---------+-----------------------------------------------------
   // | Methods |
   // +---------+
   public SLNode<K, V> next(int n) {
-    return this.next.get(n);
+    return this.next[n];
   }
 } // SLNode<K,V>
+
+
+/**
+ * Nodes that also cache an order-preserving prefix of their key.
+ */
+class PrefixedNode<K, V> extends SLNode<K, V> {
+
+  /**
+   * The prefix of the key. (Not final, so that a recycled node can take a new key.)
+   */
+  long prefix;
+
+  /**
+   * Create a new node of height n with the specified key, value and key prefix.
+   */
+  PrefixedNode(K key, V value, int n, long prefix) {
+    super(key, value, n);
+    this.prefix = prefix;
+  } // PrefixedNode(K, V, int, long)
+} // PrefixedNode<K, V>
+
+
+/**
+ * Nodes of indexed lists, which also record how far each link reaches.
+ */
+class IndexedNode<K, V> extends SLNode<K, V> {
+
+  /**
+   * How many positions each link moves forward (with a null link reaching just past the last
+   * node).
+   */
+  int[] width;
+
+  /**
+   * Create a new node of height n with the specified key and value.
+   */
+  IndexedNode(K key, V value, int n) {
+    super(key, value, n);
+    this.width = new int[n];
+  } // IndexedNode(K, V, int)
+} // IndexedNode<K, V>
+
+
+/**
+ * Nodes of indexed lists that also cache an order-preserving prefix of their key.
+ */
+class IndexedPrefixedNode<K, V> extends IndexedNode<K, V> {
+
+  /**
+   * The prefix of the key. (Not final, so that a recycled node can take a new key.)
+   */
+  long prefix;
+
+  /**
+   * Create a new node of height n with the specified key, value and key prefix.
+   */
+  IndexedPrefixedNode(K key, V value, int n, long prefix) {
+    super(key, value, n);
+    this.prefix = prefix;
+  } // IndexedPrefixedNode(K, V, int, long)
+} // IndexedPrefixedNode<K, V>
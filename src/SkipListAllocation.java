@@ -0,0 +1,92 @@
+import java.lang.management.ManagementFactory;
+import java.util.function.IntConsumer;
+
+/**
+ * Measures how many bytes the common operations allocate once the list is warmed up, using the
+ * JVM's count of the bytes each thread has allocated. The keys and values are allocated before
+ * the measurements start, so any bytes reported are the lists' own. Takes the number of entries
+ * (default 100000). Exits with status 1 if an operation that should allocate nothing allocates
+ * a byte or more per operation, or if recycling does not cut the allocation of remove + set
+ * to a tenth.
+ */
+public class SkipListAllocation {
+
+  /**
+   * Whether some measurement went over its limit.
+   */
+  static boolean failed = false;
+
+  /**
+   * Get the number of bytes the current thread has allocated so far.
+   */
+  static long allocatedBytes() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+        .getThreadAllocatedBytes(Thread.currentThread().getId());
+  } // allocatedBytes()
+
+  /**
+   * Apply op to 0 .. ops - 1 once to warm up, then once more, and report the bytes allocated
+   * per operation the second time around.
+   */
+  static double bytesPerOp(int ops, IntConsumer op) {
+    for (int i = 0; i < ops; i++) {
+      op.accept(i);
+    } // for
+    long before = allocatedBytes();
+    for (int i = 0; i < ops; i++) {
+      op.accept(i);
+    } // for
+    long after = allocatedBytes();
+    return (after - before) / (double) ops;
+  } // bytesPerOp(int, IntConsumer)
+
+  /**
+   * Report one measurement, and note whether it is over limit bytes per operation.
+   */
+  static double report(String name, double bytes, double limit) {
+    boolean over = (bytes >= limit);
+    System.out.printf("%-28s %8.2f bytes/op%s%n", name, bytes,
+        over ? "  (limit " + limit + ")" : "");
+    failed |= over;
+    return bytes;
+  } // report(String, double, double)
+
+  public static void main(String[] args) {
+    int amount = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+    Integer[] keys = new Integer[2 * amount];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = i;
+    } // for
+    String value = "value";
+    String other = "other";
+
+    // Even keys are present, odd ones missing
+    SkipList<Integer, String> list = new SkipList<Integer, String>((i, j) -> i - j);
+    ConcurrentSkipList<Integer, String> concurrent =
+        new ConcurrentSkipList<Integer, String>((i, j) -> i - j);
+    for (int i = 0; i < amount; i++) {
+      list.set(keys[2 * i], value);
+      concurrent.set(keys[2 * i], value);
+    } // for
+
+    report("SkipList get (hit)", bytesPerOp(amount, (i) -> list.get(keys[2 * i])), 1);
+    report("SkipList find (miss)", bytesPerOp(amount, (i) -> list.find(keys[2 * i + 1])), 1);
+    report("SkipList set (update)",
+        bytesPerOp(amount, (i) -> list.set(keys[2 * i], (i % 2 == 0) ? value : other)), 1);
+    report("SkipList remove (miss)", bytesPerOp(amount, (i) -> list.remove(keys[2 * i + 1])),
+        1);
+    double churn = report("SkipList remove + set",
+        bytesPerOp(amount, (i) -> list.set(keys[2 * i], list.remove(keys[2 * i]))),
+        Double.POSITIVE_INFINITY);
+    list.recycleNodes(64);
+    report("  with recycling",
+        bytesPerOp(amount, (i) -> list.set(keys[2 * i], list.remove(keys[2 * i]))), churn / 10);
+    report("ConcurrentSkipList get", bytesPerOp(amount, (i) -> concurrent.get(keys[2 * i])), 1);
+    report("ConcurrentSkipList set",
+        bytesPerOp(amount, (i) -> concurrent.set(keys[2 * i], (i % 2 == 0) ? value : other)), 1);
+    if (failed) {
+      System.exit(1);
+    } // if
+  } // main(String[])
+
+} // class SkipListAllocation
@@ -0,0 +1,119 @@
+import java.util.Comparator;
+
+/**
+ * Builds a skip list from entries that arrive in increasing order of key, in a single linear
+ * pass. Instead of random heights, the i-th node (counting from 1) gets height one more than the
+ * number of trailing zeros in i, so every second node reaches level 1, every fourth level 2, and
+ * so on: a perfectly balanced list for a probability of 1/2.
+ */
+public class SkipListBuilder<K, V> {
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The list being built (null once it has been handed out).
+   */
+  SkipList<K, V> list;
+
+  /**
+   * The last node at each level (null if there is none yet).
+   */
+  SLNode<K, V>[] last;
+
+  /**
+   * The position of the last node at each level (0 if there is none yet).
+   */
+  int[] lastRank;
+
+  /**
+   * The most recently appended node.
+   */
+  SLNode<K, V> previous;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Start building a list that orders values using the specified comparator.
+   */
+  public SkipListBuilder(Comparator<K> comparator) {
+    this(new SkipList<K, V>(comparator));
+  } // SkipListBuilder(Comparator<K>)
+
+  /**
+   * Start building into list, which must be empty, so that the result has its options (height
+   * cap, key prefixes and so on).
+   */
+  SkipListBuilder(SkipList<K, V> list) {
+    this.list = list;
+    this.last = SkipList.newNodeArray(this.list.maxHeight);
+    this.lastRank = new int[this.list.maxHeight];
+  } // SkipListBuilder(SkipList<K, V>)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Add an entry to the end of the list.
+   *
+   * @throws IllegalArgumentException if key is not larger than the previous key.
+   * @throws IllegalStateException if the list has already been built.
+   * @throws NullPointerException if the key or value is null.
+   */
+  public SkipListBuilder<K, V> append(K key, V value) {
+    if (this.list == null) {
+      throw new IllegalStateException("Already built");
+    } // if
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    } // if
+    if (this.previous != null && this.list.comparator.compare(this.previous.key, key) >= 0) {
+      throw new IllegalArgumentException(
+          "Keys out of order: " + key + " after " + this.previous.key);
+    } // if
+
+    int position = this.list.size + 1;
+    int height = Math.min(this.list.maxHeight, Integer.numberOfTrailingZeros(position) + 1);
+    SLNode<K, V> node = this.list.newNode(key, value, height);
+    for (int i = 0; i < height; i++) {
+      if (this.last[i] == null) {
+        this.list.front[i] = node;
+      } else {
+        this.last[i].next[i] = node;
+      } // if/else
+      if (this.list.indexed) {
+        this.list.widthsOf(this.last[i])[i] = position - this.lastRank[i];
+      } // if
+      this.last[i] = node;
+      this.lastRank[i] = position;
+    } // for
+    this.previous = node;
+    this.list.height = Math.max(this.list.height, height);
+    this.list.size++;
+    this.list.modCount++;
+    return this;
+  } // append(K, V)
+
+  /**
+   * Finish the list. The builder may not be used afterwards.
+   */
+  public SkipList<K, V> build() {
+    if (this.list == null) {
+      throw new IllegalStateException("Already built");
+    } // if
+    SkipList<K, V> result = this.list;
+    for (int i = 0; result.indexed && i < result.height; i++) {
+      result.widthsOf(this.last[i])[i] = result.size + 1 - this.lastRank[i];
+    } // for
+    this.list = null;
+    this.last = null;
+    this.lastRank = null;
+    this.previous = null;
+    return result;
+  } // build()
+
+} // class SkipListBuilder
@@ -4,18 +4,21 @@ import java.util.Random;
 public class SkipListExp {
 
   // An experiment meant to check the average cost of a set, get, remove function at the input size
-  // level.
+  // level. Usage: SkipListExp [amount [seed]] (for wall-clock times and other workloads, see
+  // SkipListWorkload and the JMH benchmarks).
   public static void main(String[] args) {
-    SkipList sL = new SkipList();
-    int steps = 0;
-    Random random = new Random(2);
-    int rand;
+    long steps = 0;
 
-    // customize size of the SkipList here
-    int amount = 124000;
-    int totalSet = 0;
-    int totalGet = 0;
-    int totalRem = 0;
+    // customize size of the SkipList and the seed here, or on the command line
+    int amount = (args.length > 0) ? Integer.parseInt(args[0]) : 124000;
+    long seed = (args.length > 1) ? Long.parseLong(args[1]) : 2;
+    SkipList<Integer, Integer> sL = new SkipList<Integer, Integer>(
+        (k1, k2) -> k1.toString().compareTo(k2.toString()), LevelGenerator.seeded(0.5, seed));
+    Random random = new Random(seed);
+    int rand;
+    long totalSet = 0;
+    long totalGet = 0;
+    long totalRem = 0;
     int[] arr = new int[amount];
     for (int i = 0; i < amount; i++) {
       arr[i] = i;
@@ -42,7 +45,7 @@ public class SkipListExp {
 
       // Show cost of Set
       System.out.println("SetExp:");
-      System.out.println(steps / amount);
+      System.out.println((double) steps / amount);
       steps = 0;
       for (int i = 0; i < amount; i++) {
         rand = random.nextInt(amount);
@@ -53,7 +56,7 @@ public class SkipListExp {
 
       // Show cost of Get
       System.out.println("GetExp:");
-      System.out.println(steps / amount);
+      System.out.println((double) steps / amount);
       steps = 0;
       for (int i = 0; i < amount; i++) {
         rand = random.nextInt(amount);
@@ -64,7 +67,7 @@ public class SkipListExp {
 
       // Show cost of Remove
       System.out.println("RemoveExp:");
-      System.out.println(steps / amount);
+      System.out.println((double) steps / amount);
       steps = 0;
       System.out.println();
     }
@@ -72,8 +75,8 @@ public class SkipListExp {
     // Print averages
     System.out.println();
     System.out.println("Averages:");
-    System.out.println("SetAverage: " + (totalSet / 3 / amount));
-    System.out.println("GetAverage: " + (totalGet / 3 / amount));
-    System.out.println("RemAverage: " + (totalRem / 3 / amount));
+    System.out.println("SetAverage: " + ((double) totalSet / 3 / amount));
+    System.out.println("GetAverage: " + ((double) totalGet / 3 / amount));
+    System.out.println("RemAverage: " + ((double) totalRem / 3 / amount));
   }
 }
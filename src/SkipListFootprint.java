@@ -0,0 +1,49 @@
+/**
+ * Estimates the heap cost per entry of a SkipList (or, given "indexed" or "unrolled" after the
+ * amount, an indexed SkipList or an UnrolledSkipList): the keys and the value are allocated
+ * before the measurement starts, so the reported number covers only the skip list's own
+ * structure.
+ */
+public class SkipListFootprint {
+
+  /**
+   * Determine how much heap is in use, after giving the collector a chance to run.
+   */
+  static long usedHeap() {
+    Runtime rt = Runtime.getRuntime();
+    for (int i = 0; i < 5; i++) {
+      System.gc();
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } // try/catch
+    } // for
+    return rt.totalMemory() - rt.freeMemory();
+  } // usedHeap()
+
+  public static void main(String[] args) {
+    int amount = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+    Integer[] keys = new Integer[amount];
+    for (int i = 0; i < amount; i++) {
+      keys[i] = i;
+    } // for
+    Integer value = -1;
+
+    String kind = (args.length > 1) ? args[1] : "";
+
+    long before = usedHeap();
+    SimpleMap<Integer, Integer> sL = kind.equals("unrolled")
+        ? new UnrolledSkipList<Integer, Integer>((i, j) -> i - j)
+        : kind.equals("indexed") ? SkipList.<Integer, Integer>indexed((i, j) -> i - j)
+        : new SkipList<Integer, Integer>((i, j) -> i - j);
+    for (int i = 0; i < amount; i++) {
+      sL.set(keys[i], value);
+    } // for
+    long after = usedHeap();
+
+    System.out.println("Entries: " + sL.size());
+    System.out.printf("Bytes per entry: %.1f%n", (after - before) / (double) amount);
+  } // main(String[])
+
+} // class SkipListFootprint
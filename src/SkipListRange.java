@@ -0,0 +1,258 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+
+/**
+ * A view of the part of a skip list whose keys fall between two bounds. The view finds its first
+ * node with an ordinary O(log n) search and then walks level 0 lazily, stopping at the upper
+ * bound, so nothing outside the range is visited. Changes to the list show up in the view, and
+ * changes made through the view (within its bounds) go to the list.
+ */
+public class SkipListRange<K, V> implements SimpleMap<K, V> {
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The underlying list.
+   */
+  final SkipList<K, V> list;
+
+  /**
+   * The lower bound (or null, if there is none).
+   */
+  final K lo;
+
+  /**
+   * Whether the lower bound itself is in the range.
+   */
+  final boolean loInclusive;
+
+  /**
+   * The upper bound (or null, if there is none).
+   */
+  final K hi;
+
+  /**
+   * Whether the upper bound itself is in the range.
+   */
+  final boolean hiInclusive;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a view of the keys of list between lo and hi. A null bound means there is no bound on
+   * that side.
+   *
+   * @throws IllegalArgumentException if lo is larger than hi.
+   */
+  SkipListRange(SkipList<K, V> list, K lo, boolean loInclusive, K hi, boolean hiInclusive) {
+    if (lo != null && hi != null && list.comparator.compare(lo, hi) > 0) {
+      throw new IllegalArgumentException("Lower bound " + lo + " is above upper bound " + hi);
+    } // if
+    this.list = list;
+    this.lo = lo;
+    this.loInclusive = loInclusive;
+    this.hi = hi;
+    this.hiInclusive = hiInclusive;
+  } // SkipListRange(SkipList<K, V>, K, boolean, K, boolean)
+
+  // +-------------------+-------------------------------------------
+  // | SimpleMap methods |
+  // +-------------------+
+
+  /**
+   * Set the value associated with a key in the range.
+   *
+   * @throws IllegalArgumentException if the key is outside the range.
+   */
+  @Override
+  public V set(K key, V value) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    } // if
+    if (!inRange(key)) {
+      throw new IllegalArgumentException("Key out of range: " + key);
+    } // if
+    return list.set(key, value);
+  } // set(K, V)
+
+  /**
+   * Get the value associated with a key in the range.
+   *
+   * @throws IndexOutOfBoundsException if the key is not in the range.
+   */
+  @Override
+  public V get(K key) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    } // if
+    if (!inRange(key)) {
+      throw new IndexOutOfBoundsException("Key out of range: " + key);
+    } // if
+    return list.get(key);
+  } // get(K)
+
+  /**
+   * Count the values in the range. In an indexed list, that is the difference of the ranks of
+   * the bounds, which takes O(log n); otherwise, it walks them.
+   */
+  @Override
+  public int size() {
+    if (list.indexed) {
+      int from = (lo == null) ? 0 : countUpTo(lo, !loInclusive);
+      int to = (hi == null) ? list.size() : countUpTo(hi, hiInclusive);
+      return Math.max(0, to - from);
+    } // if
+    int count = 0;
+    for (Iterator<SLNode<K, V>> it = nodes(); it.hasNext(); it.next()) {
+      count++;
+    } // for
+    return count;
+  } // size()
+
+  @Override
+  public boolean containsKey(K key) {
+    return key != null && inRange(key) && list.containsKey(key);
+  } // containsKey(K)
+
+  /**
+   * Remove the value with the given key, if it is in the range.
+   */
+  @Override
+  public V remove(K key) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    } // if
+    return inRange(key) ? list.remove(key) : null;
+  } // remove(K)
+
+  @Override
+  public Iterator<K> keys() {
+    return new Iterator<K>() {
+      Iterator<SLNode<K, V>> nit = SkipListRange.this.nodes();
+
+      @Override
+      public boolean hasNext() {
+        return nit.hasNext();
+      } // hasNext()
+
+      @Override
+      public K next() {
+        return nit.next().key;
+      } // next()
+    };
+  } // keys()
+
+  @Override
+  public Iterator<V> values() {
+    return new Iterator<V>() {
+      Iterator<SLNode<K, V>> nit = SkipListRange.this.nodes();
+
+      @Override
+      public boolean hasNext() {
+        return nit.hasNext();
+      } // hasNext()
+
+      @Override
+      public V next() {
+        return list.valueOf(nit.next());
+      } // next()
+    };
+  } // values()
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    for (SLNode<K, V> curr = first(); curr != null && !tooHigh(curr.key);
+        curr = list.after(curr, 0)) {
+      action.accept(curr.key, list.valueOf(curr));
+    } // for
+  } // forEach(BiConsumer)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Determine whether a key falls within the bounds.
+   */
+  boolean inRange(K key) {
+    return !tooLow(key) && !tooHigh(key);
+  } // inRange(K)
+
+  /**
+   * Count the keys of the list that are smaller than key, and key itself if withKey is true.
+   */
+  int countUpTo(K key, boolean withKey) {
+    int rank = list.rankOf(key);
+    return (withKey && list.containsKey(key)) ? rank + 1 : rank;
+  } // countUpTo(K, boolean)
+
+  /**
+   * Determine whether a key falls below the lower bound.
+   */
+  boolean tooLow(K key) {
+    if (lo == null) {
+      return false;
+    } // if
+    int c = list.comparator.compare(key, lo);
+    return c < 0 || (c == 0 && !loInclusive);
+  } // tooLow(K)
+
+  /**
+   * Determine whether a key falls above the upper bound.
+   */
+  boolean tooHigh(K key) {
+    if (hi == null) {
+      return false;
+    } // if
+    int c = list.comparator.compare(key, hi);
+    return c > 0 || (c == 0 && !hiInclusive);
+  } // tooHigh(K)
+
+  /**
+   * Find the first node in the range (which may be past the upper bound, if the range is empty).
+   */
+  SLNode<K, V> first() {
+    return (lo == null) ? list.after(null, 0) : list.ceiling(lo, loInclusive);
+  } // first()
+
+  /**
+   * Get an iterator for the nodes in the range.
+   */
+  Iterator<SLNode<K, V>> nodes() {
+    return new Iterator<SLNode<K, V>>() {
+
+      /**
+       * A reference to the next node to return.
+       */
+      SLNode<K, V> next = upTo(first());
+
+      @Override
+      public boolean hasNext() {
+        return this.next != null;
+      } // hasNext()
+
+      @Override
+      public SLNode<K, V> next() {
+        if (this.next == null) {
+          throw new NoSuchElementException();
+        } // if
+        SLNode<K, V> temp = this.next;
+        this.next = upTo(list.after(this.next, 0));
+        return temp;
+      } // next()
+    }; // new Iterator
+  } // nodes()
+
+  /**
+   * Return node, unless it is past the upper bound.
+   */
+  SLNode<K, V> upTo(SLNode<K, V> node) {
+    return (node == null || tooHigh(node.key)) ? null : node;
+  } // upTo(SLNode<K, V>)
+
+} // class SkipListRange
@@ -0,0 +1,682 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A skip list saved to a file in key order, in a compact binary format: a header, the entries in
+ * deflate-compressed blocks of about 64 KiB, a sparse index holding the first key and position
+ * of each block, and a fixed-size trailer that says where the index is.
+ *
+ * <pre>
+ *   header:  magic (8)  version (4)
+ *   block:   raw length (4)  compressed length (4)  CRC-32 of compressed bytes (4)  bytes
+ *   index:   block count (4), then per block: offset (8)  entries (4)  first key
+ *   trailer: index offset (8)  entries (8)  magic (8)
+ * </pre>
+ *
+ * write streams a list's level 0 straight into blocks (a Writer does the same for any sorted
+ * source of entries), and load streams the blocks back through
+ * SkipListBuilder. open instead reads only the trailer and index and answers get by finding the
+ * one block that could hold the key, so a snapshot can serve reads as soon as it is opened. An
+ * open snapshot is a read-only SimpleMap; close it when done.
+ */
+public class SkipListSnapshot<K, V> implements SimpleMap<K, V>, AutoCloseable {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * Marks a snapshot file, at both ends.
+   */
+  static final long MAGIC = 0x534b4c534e415031L;
+
+  /**
+   * The format version.
+   */
+  static final int VERSION = 1;
+
+  /**
+   * The size of the header and of the trailer.
+   */
+  static final int HEADER_SIZE = 12;
+  static final int TRAILER_SIZE = 24;
+
+  /**
+   * The size of each block before compression.
+   */
+  static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The file (null once closed).
+   */
+  FileChannel channel;
+
+  final Comparator<K> comparator;
+  final Codec<K> keyCodec;
+  final Codec<V> valueCodec;
+
+  /**
+   * The first key in each block.
+   */
+  final ArrayList<K> firstKeys = new ArrayList<K>();
+
+  /**
+   * Where each block starts.
+   */
+  long[] offsets;
+
+  /**
+   * The number of entries.
+   */
+  int size;
+
+  /**
+   * The number of the most recently read block (-1 if none), and its entries.
+   */
+  int cachedBlock = -1;
+  Block<K, V> cached;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Open a snapshot for lazy reading.
+   */
+  SkipListSnapshot(FileChannel channel, Comparator<K> comparator, Codec<K> keyCodec,
+      Codec<V> valueCodec) {
+    this.channel = channel;
+    this.comparator = comparator;
+    this.keyCodec = keyCodec;
+    this.valueCodec = valueCodec;
+  } // SkipListSnapshot(FileChannel, Comparator<K>, Codec<K>, Codec<V>)
+
+  // +----------------+----------------------------------------------
+  // | Static methods |
+  // +----------------+
+
+  /**
+   * Save list to file, replacing anything there, and sync the file.
+   *
+   * @throws IOException if the file cannot be written.
+   */
+  public static <K, V> void write(SkipList<K, V> list, Path file, Codec<K> keyCodec,
+      Codec<V> valueCodec) throws IOException {
+    write(list, file, keyCodec, valueCodec, DEFAULT_BLOCK_SIZE);
+  } // write(SkipList<K, V>, Path, Codec<K>, Codec<V>)
+
+  /**
+   * Save list to file in blocks of about blockSize bytes before compression.
+   *
+   * @throws IOException if the file cannot be written.
+   */
+  public static <K, V> void write(SkipList<K, V> list, Path file, Codec<K> keyCodec,
+      Codec<V> valueCodec, int blockSize) throws IOException {
+    try (Writer<K, V> writer = new Writer<K, V>(file, list.comparator, keyCodec,
+        valueCodec, blockSize)) {
+      for (Iterator<SLNode<K, V>> it = list.nodes(); it.hasNext();) {
+        SLNode<K, V> node = it.next();
+        writer.append(node.key, list.valueOf(node));
+      } // for
+      writer.finish();
+    } // try
+  } // write(SkipList<K, V>, Path, Codec<K>, Codec<V>, int)
+
+  /**
+   * Read a whole snapshot into a new list, in one linear pass.
+   *
+   * @throws IOException if the file cannot be read or is not a valid snapshot.
+   */
+  public static <K, V> SkipList<K, V> load(Path file, Comparator<K> comparator,
+      Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+    try (SkipListSnapshot<K, V> snapshot = open(file, comparator, keyCodec, valueCodec)) {
+      SkipListBuilder<K, V> builder = new SkipListBuilder<K, V>(comparator);
+      for (int b = 0; b < snapshot.offsets.length; b++) {
+        Block<K, V> block = snapshot.readBlock(b);
+        for (int i = 0; i < block.keys.size(); i++) {
+          builder.append(block.keys.get(i), block.values.get(i));
+        } // for
+      } // for
+      return builder.build();
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } // try/catch
+  } // load(Path, Comparator<K>, Codec<K>, Codec<V>)
+
+  /**
+   * Open a snapshot for lazy reading: read its trailer and index, and nothing else yet.
+   *
+   * @throws IOException if the file cannot be read or is not a valid snapshot.
+   */
+  public static <K, V> SkipListSnapshot<K, V> open(Path file, Comparator<K> comparator,
+      Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      SkipListSnapshot<K, V> snapshot =
+          new SkipListSnapshot<K, V>(channel, comparator, keyCodec, valueCodec);
+      snapshot.readIndex();
+      return snapshot;
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    } // try/catch
+  } // open(Path, Comparator<K>, Codec<K>, Codec<V>)
+
+  /**
+   * Sync dir itself, so that a file just renamed into it (such as a snapshot written to a
+   * temporary name first) keeps its new name after a crash. Windows cannot open a directory,
+   * and does not need this, so there it does nothing.
+   *
+   * @throws IOException if the directory cannot be synced.
+   */
+  static void syncDirectory(Path dir) throws IOException {
+    if (System.getProperty("os.name").startsWith("Windows")) {
+      return;
+    } // if
+    try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+      channel.force(true);
+    } // try
+  } // syncDirectory(Path)
+
+  // +-------------------+-------------------------------------------
+  // | SimpleMap methods |
+  // +-------------------+
+
+  /**
+   * Snapshots are read-only.
+   *
+   * @throws UnsupportedOperationException always.
+   */
+  @Override
+  public V set(K key, V value) {
+    throw new UnsupportedOperationException("Snapshots are read-only");
+  } // set(K, V)
+
+  /**
+   * Get the value associated with key, reading (at most) the one block that could hold it.
+   *
+   * @throws IndexOutOfBoundsException if the key is not in the snapshot.
+   * @throws UncheckedIOException if the block cannot be read.
+   */
+  @Override
+  public V get(K key) {
+    int found = find(key);
+    if (found < 0) {
+      throw new IndexOutOfBoundsException("OutOfBounds");
+    } // if
+    return this.cached.values.get(found);
+  } // get(K)
+
+  /**
+   * Get the value associated with key, or null if there is none.
+   */
+  V getOrNull(K key) {
+    int found = find(key);
+    return (found < 0) ? null : this.cached.values.get(found);
+  } // getOrNull(K)
+
+  @Override
+  public int size() {
+    return this.size;
+  } // size()
+
+  @Override
+  public boolean containsKey(K key) {
+    return find(key) >= 0;
+  } // containsKey(K)
+
+  /**
+   * Snapshots are read-only.
+   *
+   * @throws UnsupportedOperationException always.
+   */
+  @Override
+  public V remove(K key) {
+    throw new UnsupportedOperationException("Snapshots are read-only");
+  } // remove(K)
+
+  @Override
+  public Iterator<K> keys() {
+    return new BlockIterator<K>() {
+      @Override
+      ArrayList<K> of(Block<K, V> block) {
+        return block.keys;
+      } // of(Block<K, V>)
+    };
+  } // keys()
+
+  @Override
+  public Iterator<V> values() {
+    return new BlockIterator<V>() {
+      @Override
+      ArrayList<V> of(Block<K, V> block) {
+        return block.values;
+      } // of(Block<K, V>)
+    };
+  } // values()
+
+  /**
+   * Get an iterator for the entries, in order.
+   */
+  public Iterator<Map.Entry<K, V>> entries() {
+    return new BlockIterator<Map.Entry<K, V>>() {
+      @Override
+      ArrayList<Map.Entry<K, V>> of(Block<K, V> block) {
+        ArrayList<Map.Entry<K, V>> result = new ArrayList<Map.Entry<K, V>>(block.keys.size());
+        for (int i = 0; i < block.keys.size(); i++) {
+          result.add(new AbstractMap.SimpleImmutableEntry<K, V>(block.keys.get(i),
+              block.values.get(i)));
+        } // for
+        return result;
+      } // of(Block<K, V>)
+    };
+  } // entries()
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    for (int b = 0; b < this.offsets.length; b++) {
+      Block<K, V> block = readBlock(b);
+      for (int i = 0; i < block.keys.size(); i++) {
+        action.accept(block.keys.get(i), block.values.get(i));
+      } // for
+    } // for
+  } // forEach(BiConsumer)
+
+  /**
+   * Close the file.
+   *
+   * @throws UncheckedIOException if it cannot be closed.
+   */
+  @Override
+  public void close() {
+    if (this.channel == null) {
+      return;
+    } // if
+    try {
+      this.channel.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } // try/catch
+    this.channel = null;
+  } // close()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Compress the entries in raw and write them as a block, returning the number of bytes written.
+   */
+  static int writeBlock(DataOutputStream out, ByteArrayOutputStream raw, Deflater deflater)
+      throws IOException {
+    byte[] input = raw.toByteArray();
+    deflater.reset();
+    deflater.setInput(input);
+    deflater.finish();
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream(input.length / 2 + 64);
+    byte[] chunk = new byte[8192];
+    while (!deflater.finished()) {
+      int n = deflater.deflate(chunk);
+      compressed.write(chunk, 0, n);
+    } // while
+    byte[] bytes = compressed.toByteArray();
+    CRC32 crc = new CRC32();
+    crc.update(bytes);
+    out.writeInt(input.length);
+    out.writeInt(bytes.length);
+    out.writeInt((int) crc.getValue());
+    out.write(bytes);
+    return 12 + bytes.length;
+  } // writeBlock(DataOutputStream, ByteArrayOutputStream, Deflater)
+
+  /**
+   * Read the trailer and the index.
+   */
+  void readIndex() throws IOException {
+    long length = this.channel.size();
+    if (length < HEADER_SIZE + TRAILER_SIZE) {
+      throw new IOException("Not a snapshot: too short");
+    } // if
+    ByteBuffer header = readFully(0, HEADER_SIZE);
+    ByteBuffer trailer = readFully(length - TRAILER_SIZE, TRAILER_SIZE);
+    long indexOffset = trailer.getLong();
+    long entries = trailer.getLong();
+    if (header.getLong() != MAGIC || trailer.getLong() != MAGIC) {
+      throw new IOException("Not a snapshot: bad magic number");
+    } // if
+    if (header.getInt() != VERSION) {
+      throw new IOException("Unknown snapshot version");
+    } // if
+    if (indexOffset < HEADER_SIZE || indexOffset > length - TRAILER_SIZE) {
+      throw new IOException("Bad snapshot index offset " + indexOffset);
+    } // if
+    ByteBuffer index = readFully(indexOffset, (int) (length - TRAILER_SIZE - indexOffset));
+    DataInputStream in = new DataInputStream(
+        new ByteArrayInputStream(index.array(), 0, index.limit()));
+    int blocks = in.readInt();
+    this.offsets = new long[blocks];
+    for (int block = 0; block < blocks; block++) {
+      this.offsets[block] = in.readLong();
+      in.readInt();
+      this.firstKeys.add(this.keyCodec.read(in));
+    } // for
+    this.size = (int) entries;
+  } // readIndex()
+
+  /**
+   * Find key, leaving its block in the cache, and return its position in the block (or -1 if it
+   * is not in the snapshot).
+   */
+  int find(K key) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    } // if
+    // Binary search for the last block whose first key is at most key
+    int lo = 0;
+    int hi = this.firstKeys.size() - 1;
+    int block = -1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      if (this.comparator.compare(this.firstKeys.get(mid), key) <= 0) {
+        block = mid;
+        lo = mid + 1;
+      } else {
+        hi = mid - 1;
+      } // if/else
+    } // while
+    if (block < 0) {
+      return -1;
+    } // if
+    ArrayList<K> keys = readBlock(block).keys;
+    lo = 0;
+    hi = keys.size() - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int c = this.comparator.compare(keys.get(mid), key);
+      if (c == 0) {
+        return mid;
+      } else if (c < 0) {
+        lo = mid + 1;
+      } else {
+        hi = mid - 1;
+      } // if/else
+    } // while
+    return -1;
+  } // find(K)
+
+  /**
+   * Read and decode a block, unless it is the one in the cache, and leave it in the cache.
+   *
+   * @throws UncheckedIOException if the block cannot be read or is corrupt.
+   */
+  Block<K, V> readBlock(int block) {
+    if (block == this.cachedBlock) {
+      return this.cached;
+    } // if
+    if (this.channel == null) {
+      throw new IllegalStateException("Snapshot is closed");
+    } // if
+    try {
+      ByteBuffer header = readFully(this.offsets[block], 12);
+      int rawLength = header.getInt();
+      int compressedLength = header.getInt();
+      int checksum = header.getInt();
+      ByteBuffer compressed = readFully(this.offsets[block] + 12, compressedLength);
+      CRC32 crc = new CRC32();
+      crc.update(compressed.array(), 0, compressedLength);
+      if ((int) crc.getValue() != checksum) {
+        throw new IOException("Snapshot block " + block + " is corrupt");
+      } // if
+      byte[] raw = new byte[rawLength];
+      Inflater inflater = new Inflater();
+      try {
+        inflater.setInput(compressed.array(), 0, compressedLength);
+        int n = 0;
+        while (n < rawLength && !inflater.finished()) {
+          n += inflater.inflate(raw, n, rawLength - n);
+        } // while
+      } catch (DataFormatException e) {
+        throw new IOException("Snapshot block " + block + " is corrupt", e);
+      } finally {
+        inflater.end();
+      } // try/finally
+      Block<K, V> result = new Block<K, V>();
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw));
+      while (in.available() > 0) {
+        result.keys.add(this.keyCodec.read(in));
+        result.values.add(this.valueCodec.read(in));
+      } // while
+      this.cached = result;
+      this.cachedBlock = block;
+      return result;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } // try/catch
+  } // readBlock(int)
+
+  /**
+   * Read length bytes starting at position into a new heap buffer, ready to read.
+   */
+  ByteBuffer readFully(long position, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (this.channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Snapshot is cut short");
+      } // if
+    } // while
+    buffer.flip();
+    return buffer;
+  } // readFully(long, int)
+
+  // +---------------+-----------------------------------------------
+  // | Inner classes |
+  // +---------------+
+
+  /**
+   * Writes a snapshot from entries that arrive in increasing order of key, one block at a time.
+   * Call finish to write the index and trailer; a writer closed without finishing leaves a file
+   * that open and load will reject.
+   */
+  public static class Writer<K, V> implements AutoCloseable {
+
+    final FileOutputStream fos;
+    final DataOutputStream out;
+    final Comparator<K> comparator;
+    final Codec<K> keyCodec;
+    final Codec<V> valueCodec;
+    final int blockSize;
+
+    /**
+     * The current block, before compression.
+     */
+    final ByteArrayOutputStream raw;
+    final DataOutputStream rawOut;
+
+    /**
+     * The index, so far.
+     */
+    final ByteArrayOutputStream index = new ByteArrayOutputStream();
+    final DataOutputStream indexOut = new DataOutputStream(index);
+
+    final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+    /**
+     * Where the next block goes.
+     */
+    long position = HEADER_SIZE;
+
+    /**
+     * The first key of the current block, and the number of entries in it.
+     */
+    K firstKey;
+    int entries;
+
+    /**
+     * The key of the last entry, to check that the next one comes after it.
+     */
+    K lastKey;
+
+    int blocks;
+    long total;
+    boolean closed;
+
+    /**
+     * Start writing a snapshot to file, replacing anything there, of keys in the order that
+     * comparator gives.
+     *
+     * @throws IOException if the file cannot be created.
+     */
+    public Writer(Path file, Comparator<K> comparator, Codec<K> keyCodec, Codec<V> valueCodec,
+        int blockSize) throws IOException {
+      this.fos = new FileOutputStream(file.toFile());
+      this.out = new DataOutputStream(new BufferedOutputStream(this.fos, 1 << 16));
+      this.comparator = comparator;
+      this.keyCodec = keyCodec;
+      this.valueCodec = valueCodec;
+      this.blockSize = blockSize;
+      this.raw = new ByteArrayOutputStream(blockSize + 1024);
+      this.rawOut = new DataOutputStream(this.raw);
+      this.out.writeLong(MAGIC);
+      this.out.writeInt(VERSION);
+    } // Writer(Path, Comparator<K>, Codec<K>, Codec<V>, int)
+
+    /**
+     * Add an entry. Its key must be larger than the previous one.
+     *
+     * @throws IllegalArgumentException if it is not, since a search could not find it.
+     * @throws IOException if the block cannot be written.
+     */
+    public void append(K key, V value) throws IOException {
+      if (this.total > 0 && this.comparator.compare(this.lastKey, key) >= 0) {
+        throw new IllegalArgumentException("Key " + key + " is not after " + this.lastKey);
+      } // if
+      this.lastKey = key;
+      if (this.entries == 0) {
+        this.firstKey = key;
+      } // if
+      this.keyCodec.write(key, this.rawOut);
+      this.valueCodec.write(value, this.rawOut);
+      this.entries++;
+      this.total++;
+      if (this.raw.size() >= this.blockSize) {
+        endBlock();
+      } // if
+    } // append(K, V)
+
+    /**
+     * Write the last block, the index and the trailer, sync the file and close it.
+     *
+     * @throws IOException if they cannot be written.
+     */
+    public void finish() throws IOException {
+      if (this.entries > 0) {
+        endBlock();
+      } // if
+      this.out.writeInt(this.blocks);
+      this.index.writeTo(this.out);
+      this.out.writeLong(this.position);
+      this.out.writeLong(this.total);
+      this.out.writeLong(MAGIC);
+      this.out.flush();
+      this.fos.getFD().sync();
+      close();
+    } // finish()
+
+    /**
+     * Close the file (finished or not).
+     */
+    @Override
+    public void close() throws IOException {
+      if (!this.closed) {
+        this.closed = true;
+        this.deflater.end();
+        this.out.close();
+      } // if
+    } // close()
+
+    /**
+     * Compress and write the current block, and add it to the index.
+     */
+    void endBlock() throws IOException {
+      this.indexOut.writeLong(this.position);
+      this.indexOut.writeInt(this.entries);
+      this.keyCodec.write(this.firstKey, this.indexOut);
+      this.position += writeBlock(this.out, this.raw, this.deflater);
+      this.raw.reset();
+      this.entries = 0;
+      this.blocks++;
+    } // endBlock()
+  } // class Writer
+
+  /**
+   * The decoded entries of one block.
+   */
+  static class Block<K, V> {
+    final ArrayList<K> keys = new ArrayList<K>();
+    final ArrayList<V> values = new ArrayList<V>();
+  } // class Block
+
+  /**
+   * Walks the blocks in order, reporting the keys or the values of each.
+   */
+  abstract class BlockIterator<T> implements Iterator<T> {
+    /**
+     * The number of the next block to read.
+     */
+    int next = 0;
+
+    /**
+     * The elements of the current block, and the position of the next one to report.
+     */
+    ArrayList<T> current = new ArrayList<T>();
+    int pos = 0;
+
+    /**
+     * Pick the elements to report from a block.
+     */
+    abstract ArrayList<T> of(Block<K, V> block);
+
+    @Override
+    public boolean hasNext() {
+      while (this.pos >= this.current.size() && this.next < offsets.length) {
+        this.current = of(readBlock(this.next++));
+        this.pos = 0;
+      } // while
+      return this.pos < this.current.size();
+    } // hasNext()
+
+    @Override
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      } // if
+      return this.current.get(this.pos++);
+    } // next()
+  } // class BlockIterator
+
+} // class SkipListSnapshot
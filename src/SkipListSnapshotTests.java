@@ -0,0 +1,162 @@
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Test;
+
+/**
+ * Some tests of skip list snapshots.
+ */
+public class SkipListSnapshotTests {
+
+  /**
+   * A comparator for integer keys.
+   */
+  static final Comparator<Integer> INTS = (i, j) -> Integer.compare(i, j);
+
+  /**
+   * A random number generator for the randomized tests.
+   */
+  Random random = new Random();
+
+  /**
+   * Build a list of random entries, recording them in expected too.
+   */
+  SkipList<Integer, String> randomList(int n, TreeMap<Integer, String> expected) {
+    SkipList<Integer, String> list = new SkipList<Integer, String>(INTS);
+    for (int i = 0; i < n; i++) {
+      int key = random.nextInt(10 * n);
+      list.set(key, "value " + key);
+      expected.put(key, "value " + key);
+    } // for
+    return list;
+  } // randomList(int, TreeMap<Integer, String>)
+
+  /**
+   * A snapshot loads back into the same list, whether loaded in full or read lazily.
+   */
+  @Test
+  public void roundTrip() throws IOException {
+    Path file = Files.createTempFile("snapshot", ".sks");
+    try {
+      TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+      SkipList<Integer, String> list = randomList(5000, expected);
+      SkipListSnapshot.write(list, file, Codec.INTEGER, Codec.STRING, 1024);
+
+      SkipList<Integer, String> loaded =
+          SkipListSnapshot.load(file, INTS, Codec.INTEGER, Codec.STRING);
+      assertEquals(expected.size(), loaded.size());
+      assertEquals(expected.keySet().iterator().next(), loaded.keyAt(0));
+
+      try (SkipListSnapshot<Integer, String> lazy =
+          SkipListSnapshot.open(file, INTS, Codec.INTEGER, Codec.STRING)) {
+        assertTrue(lazy.offsets.length > 10);
+        assertEquals(expected.size(), lazy.size());
+        Iterator<Integer> keys = lazy.keys();
+        Iterator<String> values = loaded.values();
+        for (Integer key : expected.keySet()) {
+          assertEquals(key, keys.next());
+          assertEquals(expected.get(key), values.next());
+          // Lookups in other blocks must not disturb the iterator
+          assertEquals(expected.get(key), lazy.get(key));
+          assertEquals(expected.firstEntry().getValue(), lazy.get(expected.firstKey()));
+        } // for
+        assertFalse(keys.hasNext());
+        for (int key = -1; key < 50001; key += 7) {
+          assertEquals(expected.containsKey(key), lazy.containsKey(key));
+        } // for
+      } // try
+    } finally {
+      Files.delete(file);
+    } // try/finally
+  } // roundTrip()
+
+  /**
+   * An empty list makes an empty snapshot.
+   */
+  @Test
+  public void emptySnapshot() throws IOException {
+    Path file = Files.createTempFile("snapshot", ".sks");
+    try {
+      SkipListSnapshot.write(new SkipList<Integer, String>(INTS), file, Codec.INTEGER,
+          Codec.STRING);
+      assertEquals(0, SkipListSnapshot.load(file, INTS, Codec.INTEGER, Codec.STRING).size());
+      try (SkipListSnapshot<Integer, String> lazy =
+          SkipListSnapshot.open(file, INTS, Codec.INTEGER, Codec.STRING)) {
+        assertFalse(lazy.containsKey(3));
+        assertFalse(lazy.keys().hasNext());
+      } // try
+    } finally {
+      Files.delete(file);
+    } // try/finally
+  } // emptySnapshot()
+
+  /**
+   * Damaged snapshots are reported, not misread.
+   */
+  @Test
+  public void corruptionIsDetected() throws IOException {
+    Path file = Files.createTempFile("snapshot", ".sks");
+    try {
+      TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+      SkipListSnapshot.write(randomList(1000, expected), file, Codec.INTEGER, Codec.STRING);
+      byte[] bytes = Files.readAllBytes(file);
+      bytes[SkipListSnapshot.HEADER_SIZE + 20] ^= 1;
+      Files.write(file, bytes);
+      try (SkipListSnapshot<Integer, String> lazy =
+          SkipListSnapshot.open(file, INTS, Codec.INTEGER, Codec.STRING)) {
+        lazy.get(expected.firstKey());
+        fail("Corrupt block should not be read");
+      } catch (UncheckedIOException e) {
+        // Expected
+      } // try/catch
+      Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+      try {
+        SkipListSnapshot.open(file, INTS, Codec.INTEGER, Codec.STRING);
+        fail("Truncated snapshot should not open");
+      } catch (IOException e) {
+        // Expected
+      } // try/catch
+    } finally {
+      Files.delete(file);
+    } // try/finally
+  } // corruptionIsDetected()
+
+  /**
+   * A writer refuses keys out of order, which would make a snapshot that searches misread.
+   */
+  @Test
+  public void keysOutOfOrderAreRejected() throws IOException {
+    Path file = Files.createTempFile("snapshot", ".sks");
+    try (SkipListSnapshot.Writer<Integer, String> writer =
+        new SkipListSnapshot.Writer<Integer, String>(file, INTS, Codec.INTEGER, Codec.STRING,
+            1024)) {
+      writer.append(1, "one");
+      writer.append(3, "three");
+      for (int key : new int[] {2, 3}) {
+        try {
+          writer.append(key, "again");
+          fail("Key " + key + " should be refused after 3");
+        } catch (IllegalArgumentException e) {
+          // Expected
+        } // try/catch
+      } // for
+      writer.append(4, "four");
+      writer.finish();
+      try (SkipListSnapshot<Integer, String> lazy =
+          SkipListSnapshot.open(file, INTS, Codec.INTEGER, Codec.STRING)) {
+        assertEquals(3, lazy.size());
+        assertEquals("three", lazy.get(3));
+      } // try
+    } finally {
+      Files.delete(file);
+    } // try/finally
+  } // keysOutOfOrderAreRejected()
+
+} // class SkipListSnapshotTests
@@ -0,0 +1,247 @@
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.concurrent.CountedCompleter;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A spliterator over a run of nodes in a skip list. In an indexed list, every link records how
+ * many positions it skips, so a split finds the node halfway along by descending the express
+ * lanes, in O(log n) and without walking the run, and both halves know their exact sizes.
+ * Otherwise a split takes the middle one of the run's nodes on the highest level that has any,
+ * also in O(log n), and the halves only estimate their sizes.
+ *
+ * In single-writer mode, the list may change under readers on other threads, so the
+ * spliterator walks to the end of the list without splitting and only estimates its size.
+ */
+class SkipListSpliterator<K, V, T> implements Spliterator<T> {
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The list.
+   */
+  final SkipList<K, V> list;
+
+  /**
+   * What to make of each node: its key, its value, an entry, or the node itself.
+   */
+  final Function<SLNode<K, V>, ? extends T> view;
+
+  /**
+   * The order of what the view returns, for a spliterator that reports SORTED (null for the
+   * natural order).
+   */
+  final Comparator<? super T> comparator;
+
+  /**
+   * The characteristics, as Spliterator defines them. (Not final, since a split of a list that
+   * is not indexed leaves the halves unSIZED.)
+   */
+  int characteristics;
+
+  /**
+   * The next node to visit (null if there is none).
+   */
+  SLNode<K, V> next;
+
+  /**
+   * The node to stop at, which is not visited (null for the end of the list).
+   */
+  SLNode<K, V> stop;
+
+  /**
+   * The position of next (1 for the first node), if the list is indexed.
+   */
+  int position;
+
+  /**
+   * How many nodes remain: exactly, if the spliterator is SIZED, and otherwise an estimate.
+   */
+  long remaining;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a spliterator over all of list, which is SORTED by comparator if sorted is set.
+   */
+  SkipListSpliterator(SkipList<K, V> list, Function<SLNode<K, V>, ? extends T> view,
+      boolean sorted, Comparator<? super T> comparator) {
+    this(list, view, comparator, characteristics(list, sorted), list.after(null, 0), null, 1,
+        list.size());
+  } // SkipListSpliterator(SkipList<K, V>, Function, boolean, Comparator)
+
+  /**
+   * Create a spliterator over the nodes from next (at position) up to stop.
+   */
+  SkipListSpliterator(SkipList<K, V> list, Function<SLNode<K, V>, ? extends T> view,
+      Comparator<? super T> comparator, int characteristics, SLNode<K, V> next,
+      SLNode<K, V> stop, int position, long remaining) {
+    this.list = list;
+    this.view = view;
+    this.comparator = comparator;
+    this.characteristics = characteristics;
+    this.next = next;
+    this.stop = stop;
+    this.position = position;
+    this.remaining = remaining;
+  } // SkipListSpliterator(...)
+
+  // +---------------------+-----------------------------------------
+  // | Spliterator methods |
+  // +---------------------+
+
+  @Override
+  public boolean tryAdvance(Consumer<? super T> action) {
+    if (this.next == null || this.next == this.stop) {
+      return false;
+    } // if
+    SLNode<K, V> node = this.next;
+    this.next = this.list.after(node, 0);
+    this.position++;
+    if (this.remaining > 0) {
+      this.remaining--;
+    } // if
+    action.accept(this.view.apply(node));
+    return true;
+  } // tryAdvance(Consumer)
+
+  @Override
+  public void forEachRemaining(Consumer<? super T> action) {
+    SLNode<K, V> node = this.next;
+    SLNode<K, V> end = this.stop;
+    this.next = null;
+    this.remaining = 0;
+    while (node != null && node != end) {
+      action.accept(this.view.apply(node));
+      node = this.list.after(node, 0);
+    } // while
+  } // forEachRemaining(Consumer)
+
+  /**
+   * Hand over the first half of the remaining nodes, keeping the second half.
+   */
+  @Override
+  public Spliterator<T> trySplit() {
+    if (this.list.concurrentReads || this.next == null || this.next == this.stop) {
+      return null;
+    } // if
+    SLNode<K, V> mid;
+    long half = this.remaining / 2;
+    int midPosition = 0;
+    if (this.list.indexed) {
+      if (half == 0) {
+        return null;
+      } // if
+      midPosition = this.position + (int) half;
+      mid = this.list.nodeAt(midPosition);
+    } else {
+      mid = this.list.splitPoint(this.next, this.stop);
+      if (mid == null) {
+        return null;
+      } // if
+      // Only an indexed list knows the exact sizes of the halves
+      this.characteristics &= ~SIZED;
+    } // if/else
+    SkipListSpliterator<K, V, T> prefix = new SkipListSpliterator<K, V, T>(this.list, this.view,
+        this.comparator, this.characteristics, this.next, mid, this.position, half);
+    this.next = mid;
+    this.position = midPosition;
+    this.remaining -= half;
+    return prefix;
+  } // trySplit()
+
+  @Override
+  public long estimateSize() {
+    return (this.next == null) ? 0 : this.remaining;
+  } // estimateSize()
+  @Override
+  public int characteristics() {
+    return this.characteristics;
+  } // characteristics()
+
+  @Override
+  public Comparator<? super T> getComparator() {
+    if ((this.characteristics & SORTED) == 0) {
+      throw new IllegalStateException();
+    } // if
+    return this.comparator;
+  } // getComparator()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Work out the characteristics of a spliterator over list.
+   */
+  static int characteristics(SkipList<?, ?> list, boolean sorted) {
+    int result = ORDERED | NONNULL;
+    if (sorted) {
+      result |= SORTED | DISTINCT;
+    } // if
+    if (!list.concurrentReads) {
+      result |= list.indexed ? SIZED | SUBSIZED : SIZED;
+    } // if
+    return result;
+  } // characteristics(SkipList<?, ?>, boolean)
+
+} // class SkipListSpliterator<K, V, T>
+
+
+/**
+ * Applies an action to every entry of a skip list on the fork-join pool, splitting the nodes
+ * until each piece is small enough to run on one thread.
+ */
+class ParallelForEach<K, V> extends CountedCompleter<Void> {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The nodes this task covers.
+   */
+  final SkipListSpliterator<K, V, SLNode<K, V>> nodes;
+
+  /**
+   * The action to apply.
+   */
+  final BiConsumer<? super K, ? super V> action;
+
+  /**
+   * The most nodes a task visits without splitting.
+   */
+  final long threshold;
+
+  /**
+   * Create a task for the given nodes.
+   */
+  ParallelForEach(CountedCompleter<?> parent, SkipListSpliterator<K, V, SLNode<K, V>> nodes,
+      BiConsumer<? super K, ? super V> action, long threshold) {
+    super(parent);
+    this.nodes = nodes;
+    this.action = action;
+    this.threshold = threshold;
+  } // ParallelForEach(CountedCompleter<?>, SkipListSpliterator, BiConsumer, long)
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public void compute() {
+    // Fork off the first half until what is left is small, then do that here
+    SkipListSpliterator<K, V, SLNode<K, V>> rest = this.nodes;
+    SkipListSpliterator<K, V, SLNode<K, V>> half;
+    while (rest.estimateSize() > this.threshold
+        && (half = (SkipListSpliterator<K, V, SLNode<K, V>>) rest.trySplit()) != null) {
+      addToPendingCount(1);
+      new ParallelForEach<K, V>(this, half, this.action, this.threshold).fork();
+    } // while
+    SkipList<K, V> list = rest.list;
+    rest.forEachRemaining((node) -> this.action.accept(node.key, list.valueOf(node)));
+    propagateCompletion();
+  } // compute()
+
+} // class ParallelForEach<K, V>
@@ -1,7 +1,22 @@
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Random;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
 import static org.junit.Assert.*;
 import org.junit.Test;
 import org.junit.jupiter.api.BeforeEach;
@@ -106,6 +121,17 @@ public class SkipListTests {
     return true;
   } // inOrder(Iterator<T> it)
 
+  /**
+   * Collect the remaining elements of an iterator.
+   */
+  static <T> ArrayList<T> toList(Iterator<T> it) {
+    ArrayList<T> result = new ArrayList<T>();
+    while (it.hasNext()) {
+      result.add(it.next());
+    } // while
+    return result;
+  } // toList(Iterator<T>)
+
   /**
    * Generate a value from a string.
    */
@@ -120,6 +146,34 @@ public class SkipListTests {
     return value(i, false);
   } // value(integer)
 
+  /**
+   * Find the height of the tallest node in list (or 1, if it is empty).
+   */
+  static int tallest(SkipList<Integer, String> list) {
+    int result = 1;
+    for (Iterator<SLNode<Integer, String>> it = list.nodes(); it.hasNext();) {
+      result = Math.max(result, it.next().next.length);
+    } // for
+    return result;
+  } // tallest(SkipList<Integer, String>)
+
+  /**
+   * Check keyAt, rankOf and keys(from, to) against a sorted set of the keys in list.
+   */
+  static void assertPositions(TreeSet<Integer> expected, SkipList<Integer, String> list) {
+    ArrayList<Integer> sorted = new ArrayList<Integer>(expected);
+    assertEquals(sorted.size(), list.size());
+    for (int i = 0; i < sorted.size(); i++) {
+      assertEquals(sorted.get(i), list.keyAt(i));
+      assertEquals(i, list.rankOf(sorted.get(i)));
+      assertEquals(expected.headSet(sorted.get(i) + 1).size(), list.rankOf(sorted.get(i) + 1));
+    } // for
+    int from = sorted.size() / 3;
+    int to = 2 * sorted.size() / 3;
+    assertEquals(sorted.subList(from, to), toList(list.keys(from, to)));
+    assertFalse(list.keys(to, to).hasNext());
+  } // assertPositions(TreeSet<Integer>, SkipList<Integer, String>)
+
   /**
    * Generate a value from a non-negative integer; if skipZero is true, returns "" for zero.
    */
@@ -220,6 +274,37 @@ public class SkipListTests {
     assertFalse(strings.containsKey("hello"));
   } // emptyTest()
 
+  /**
+   * Setting an existing key that is not at the front should replace its value.
+   */
+  @Test
+  public void setReplacesValue() {
+    setup();
+    for (int i = 0; i < 20; i++) {
+      set(i);
+    } // for
+    assertEquals(value(13), ints.set(13, "changed"));
+    assertEquals("changed", ints.get(13));
+    assertEquals(20, ints.size());
+  } // setReplacesValue()
+
+  /**
+   * forEach should visit every pair, including the last one.
+   */
+  @Test
+  public void forEachVisitsAll() {
+    setup();
+    ArrayList<Integer> seen = new ArrayList<Integer>();
+    ints.forEach((key, value) -> seen.add(key));
+    assertTrue(seen.isEmpty());
+    for (int i = 0; i < 20; i++) {
+      set(i);
+    } // for
+    ints.forEach((key, value) -> seen.add(key));
+    assertEquals(20, seen.size());
+    assertEquals(Integer.valueOf(19), seen.get(19));
+  } // forEachVisitsAll()
+
   // +-----------------+-------------------------------------------------
   // | RandomizedTests |
   // +-----------------+
@@ -408,7 +493,7 @@ public class SkipListTests {
     for (int i = 0; i < 50; i++) {
       remove(arr[i]);
     } // remove everything
-    if (ints.front.get(0) != null) {
+    if (ints.front[0] != null) {
       fail("The operation did not remove all the nodes.");
     } // ensure SkipList is empty
   } // test addThenRemoveTillEmpty()
@@ -487,6 +572,989 @@ public class SkipListTests {
     } // if (!ok)
   } // randomTest()
 
+  // +-----------+---------------------------------------------------
+  // | Bulk load |
+  // +-----------+
+
+  /**
+   * A list built from sorted input should hold everything, in order, and keep working as a
+   * normal list afterwards.
+   */
+  @Test
+  public void fromSortedBuildsUsableList() {
+    Integer[] keys = new Integer[1000];
+    String[] values = new String[1000];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = 3 * i;
+      values[i] = value(3 * i);
+    } // for
+    ints = SkipList.fromSorted((i, j) -> i - j, keys, values);
+    assertEquals(1000, ints.size());
+    assertTrue(inOrder(ints.keys()));
+    for (int i = 0; i < keys.length; i++) {
+      assertEquals(values[i], ints.get(keys[i]));
+      assertFalse(ints.containsKey(keys[i] + 1));
+    } // for
+    ints.set(1, value(1));
+    assertEquals(value(3), ints.remove(3));
+    assertEquals(1000, ints.size());
+    assertTrue(inOrder(ints.keys()));
+  } // fromSortedBuildsUsableList()
+
+  /**
+   * Bulk-loaded heights follow the number of trailing zeros in each position.
+   */
+  @Test
+  public void fromSortedIsBalanced() {
+    SkipListBuilder<Integer, String> builder =
+        new SkipListBuilder<Integer, String>((i, j) -> i - j);
+    for (int i = 1; i <= 64; i++) {
+      builder.append(i, value(i));
+    } // for
+    ints = builder.build();
+    Iterator<SLNode<Integer, String>> nodes = ints.nodes();
+    for (int i = 1; i <= 64; i++) {
+      assertEquals(Integer.numberOfTrailingZeros(i) + 1, nodes.next().next.length);
+    } // for
+  } // fromSortedIsBalanced()
+
+  /**
+   * Keys that are out of order (or repeated) are rejected.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void fromSortedRejectsDisorder() {
+    TreeMap<Integer, String> map = new TreeMap<Integer, String>();
+    map.put(1, "one");
+    map.put(2, "two");
+    SkipList.fromSorted((Integer i, Integer j) -> j - i, map.entrySet().iterator());
+  } // fromSortedRejectsDisorder()
+
+  // +------------------+--------------------------------------------
+  // | Batch operations |
+  // +------------------+
+
+  /**
+   * Random batches (sorted or not) should have the same effect as the single operations.
+   */
+  @Test
+  public void batchesMatchTreeMap() {
+    setup();
+    TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+    for (int round = 0; round < 50; round++) {
+      HashMap<Integer, String> batch = new HashMap<Integer, String>();
+      ArrayList<Integer> probes = new ArrayList<Integer>();
+      for (int i = 0; i < 40; i++) {
+        int key = random.nextInt(500);
+        batch.put(key, value(key) + round);
+        probes.add(random.nextInt(500));
+      } // for
+      if (round % 2 == 0) {
+        ints.setAll(new TreeMap<Integer, String>(batch));
+      } else {
+        ints.setAll(batch);
+      } // if/else
+      expected.putAll(batch);
+
+      ArrayList<String> values = ints.getAll(probes);
+      for (int i = 0; i < probes.size(); i++) {
+        assertEquals(expected.get(probes.get(i)), values.get(i));
+      } // for
+
+      probes.subList(20, 40).clear();
+      int removed = 0;
+      for (Integer key : new TreeSet<Integer>(probes)) {
+        if (expected.remove(key) != null) {
+          removed++;
+        } // if
+      } // for
+      assertEquals(removed, ints.removeAll(probes));
+      assertEquals(expected.size(), ints.size());
+    } // for
+    assertTrue(inOrder(ints.keys()));
+    assertEquals(new ArrayList<Integer>(expected.keySet()), toList(ints.keys()));
+  } // batchesMatchTreeMap()
+
+  // +-------------+-------------------------------------------------
+  // | Range views |
+  // +-------------+
+
+  /**
+   * Range views should hold exactly the keys that TreeMap's would, and count them the same way
+   * whether the list is indexed or not.
+   */
+  @Test
+  public void rangesMatchTreeMap() {
+    setup();
+    SkipList<Integer, String> indexed = SkipList.indexed((i, j) -> i - j);
+    TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+    for (int i = 0; i < 300; i++) {
+      int key = random.nextInt(1000);
+      set(key);
+      indexed.set(key, value(key));
+      expected.put(key, value(key));
+    } // for
+    for (int i = 0; i < 200; i++) {
+      int lo = random.nextInt(1000);
+      int hi = lo + random.nextInt(200);
+      boolean loIn = random.nextBoolean();
+      boolean hiIn = random.nextBoolean();
+      SkipListRange<Integer, String> range = ints.subMap(lo, loIn, hi, hiIn);
+      NavigableMap<Integer, String> sub = expected.subMap(lo, loIn, hi, hiIn);
+      assertEquals(new ArrayList<Integer>(sub.keySet()), toList(range.keys()));
+      assertEquals(new ArrayList<String>(sub.values()), toList(range.values()));
+      assertEquals(sub.size(), range.size());
+      assertEquals(sub.size(), indexed.subMap(lo, loIn, hi, hiIn).size());
+      assertEquals(expected.headMap(hi, hiIn).size(), indexed.headMap(hi, hiIn).size());
+      assertEquals(expected.tailMap(lo, loIn).size(), indexed.tailMap(lo, loIn).size());
+      assertEquals(new ArrayList<Integer>(expected.headMap(hi, hiIn).keySet()),
+          toList(ints.headMap(hi, hiIn).keys()));
+      assertEquals(new ArrayList<Integer>(expected.tailMap(lo, loIn).keySet()),
+          toList(ints.tailMap(lo, loIn).keys()));
+      ArrayList<Integer> visited = new ArrayList<Integer>();
+      range.forEach((key, value) -> visited.add(key));
+      assertEquals(new ArrayList<Integer>(sub.keySet()), visited);
+    } // for
+  } // rangesMatchTreeMap()
+
+  /**
+   * Changes through a view reach the list, and the view enforces its bounds.
+   */
+  @Test
+  public void rangeUpdatesList() {
+    setup();
+    for (int i = 0; i < 20; i++) {
+      set(i);
+    } // for
+    SkipListRange<Integer, String> range = ints.subMap(5, 10);
+    assertEquals(value(5), range.remove(5));
+    assertNull(range.remove(10));
+    assertFalse(ints.containsKey(5));
+    assertTrue(ints.containsKey(10));
+    assertFalse(range.containsKey(12));
+    range.set(7, "changed");
+    assertEquals("changed", ints.get(7));
+    try {
+      range.set(10, "out");
+      fail("set outside the range succeeded");
+    } catch (IllegalArgumentException e) {
+      // expected
+    } // try/catch
+    assertEquals(4, range.size());
+  } // rangeUpdatesList()
+
+  // +---------------+-----------------------------------------------
+  // | Finger search |
+  // +---------------+
+
+  /**
+   * With the finger on, random operations should still match a TreeMap, including when batch
+   * operations change the list behind the finger's back.
+   */
+  @Test
+  public void fingerMatchesTreeMap() {
+    setup();
+    ints.useFinger(true);
+    TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+    int key = 0;
+    for (int i = 0; i < 5000; i++) {
+      // Mostly walk forward in small steps, sometimes jump
+      key = (random.nextInt(10) == 0) ? random.nextInt(1000) : (key + random.nextInt(5)) % 1000;
+      switch (random.nextInt(4)) {
+        case 0:
+          assertEquals(expected.put(key, value(key)), ints.set(key, value(key)));
+          break;
+        case 1:
+          assertEquals(expected.remove(key), ints.remove(key));
+          break;
+        case 2:
+          assertEquals(expected.containsKey(key), ints.containsKey(key));
+          break;
+        default:
+          if (random.nextInt(50) == 0) {
+            ArrayList<Integer> batch = new ArrayList<Integer>();
+            batch.add(key + 1);
+            batch.add(key + 2);
+            expected.keySet().removeAll(batch);
+            ints.removeAll(batch);
+          } // if
+      } // switch
+    } // for
+    assertEquals(new ArrayList<Integer>(expected.keySet()), toList(ints.keys()));
+    assertTrue(ints.fingerHits() > ints.fingerMisses());
+  } // fingerMatchesTreeMap()
+
+  /**
+   * A forward scan with the finger should cost far fewer steps than without it.
+   */
+  @Test
+  public void fingerSavesSteps() {
+    setup();
+    for (int i = 0; i < 10000; i++) {
+      ints.set(i, value(i));
+    } // for
+    long plain = 0;
+    for (int i = 0; i < 10000; i++) {
+      ints.get(i);
+      plain += ints.stepCounter;
+    } // for
+    ints.useFinger(true);
+    long withFinger = 0;
+    for (int i = 0; i < 10000; i++) {
+      ints.get(i);
+      withFinger += ints.stepCounter;
+    } // for
+    assertTrue(ints.fingerMisses() <= 2);
+    assertTrue(withFinger * 2 < plain);
+  } // fingerSavesSteps()
+
+  /**
+   * So should a backward scan, which climbs the finger rather than starting from the top.
+   */
+  @Test
+  public void fingerSavesStepsBackward() {
+    setup();
+    for (int i = 0; i < 10000; i++) {
+      ints.set(i, value(i));
+    } // for
+    long plain = 0;
+    for (int i = 9999; i >= 0; i--) {
+      ints.get(i);
+      plain += ints.stepCounter;
+    } // for
+    ints.useFinger(true);
+    long withFinger = 0;
+    for (int i = 9999; i >= 0; i--) {
+      assertEquals(value(i), ints.get(i));
+      withFinger += ints.stepCounter;
+    } // for
+    assertTrue(ints.fingerMisses() <= 2);
+    assertTrue(withFinger * 2 < plain);
+  } // fingerSavesStepsBackward()
+
+  // +--------------------+------------------------------------------
+  // | Single-writer mode |
+  // +--------------------+
+
+  /**
+   * Readers on other threads should always see a sorted list that contains the keys nobody
+   * removes, while one writer keeps adding and removing other keys.
+   */
+  @Test
+  public void singleWriterConcurrentReads() throws InterruptedException {
+    SkipList<Integer, String> shared = SkipList.singleWriter((i, j) -> i - j);
+    for (int i = 0; i < 1000; i += 10) {
+      shared.set(i, value(i));
+    } // for
+    AtomicBoolean done = new AtomicBoolean(false);
+    AtomicReference<String> problem = new AtomicReference<String>();
+    ArrayList<Thread> readers = new ArrayList<Thread>();
+    for (int t = 0; t < 4; t++) {
+      Thread reader = new Thread(() -> {
+        while (!done.get()) {
+          for (int i = 0; i < 1000; i += 10) {
+            if (!value(i).equals(shared.get(i))) {
+              problem.compareAndSet(null, "lost " + i);
+            } // if
+          } // for
+          if (!inOrder(shared.keys())) {
+            problem.compareAndSet(null, "out of order");
+          } // if
+        } // while
+      });
+      reader.start();
+      readers.add(reader);
+    } // for
+    Random rand = new Random();
+    for (int i = 0; i < 100000; i++) {
+      int key = rand.nextInt(1000);
+      if (key % 10 != 0) {
+        if (rand.nextBoolean()) {
+          shared.set(key, value(key));
+        } else {
+          shared.remove(key);
+        } // if/else
+      } // if
+    } // for
+    done.set(true);
+    for (Thread reader : readers) {
+      reader.join();
+    } // for
+    assertNull(problem.get());
+  } // singleWriterConcurrentReads()
+
+  /**
+   * Only the first thread to write may write again.
+   */
+  @Test
+  public void singleWriterRejectsSecondWriter() throws InterruptedException {
+    SkipList<Integer, String> shared = SkipList.singleWriter((i, j) -> i - j);
+    shared.set(1, "one");
+    AtomicReference<Throwable> thrown = new AtomicReference<Throwable>();
+    Thread other = new Thread(() -> {
+      try {
+        shared.set(2, "two");
+      } catch (Throwable e) {
+        thrown.set(e);
+      } // try/catch
+    });
+    other.start();
+    other.join();
+    assertTrue(thrown.get() instanceof IllegalStateException);
+    assertFalse(shared.containsKey(2));
+  } // singleWriterRejectsSecondWriter()
+
+  /**
+   * Positions, ranks and index ranges agree with a sorted list of the keys, through sets and
+   * removes, whether or not the list is indexed.
+   */
+  @Test
+  public void positionalAccess() {
+    for (boolean indexed : new boolean[] {false, true}) {
+      ints = indexed ? SkipList.indexed((i, j) -> i - j)
+          : new SkipList<Integer, String>((i, j) -> i - j);
+      TreeSet<Integer> expected = new TreeSet<Integer>();
+      for (int round = 0; round < 2000; round++) {
+        int key = random.nextInt(500);
+        if (random.nextInt(3) == 0) {
+          ints.remove(key);
+          expected.remove(key);
+        } else {
+          ints.set(key, value(key));
+          expected.add(key);
+        } // if/else
+        if (round % 100 == 0) {
+          assertPositions(expected, ints);
+        } // if
+      } // for
+      assertPositions(expected, ints);
+    } // for
+  } // positionalAccess()
+
+  /**
+   * Positional access works on bulk-loaded and finger-searched lists, and rejects bad indices.
+   */
+  @Test
+  public void positionalAccessAfterBulkLoadAndFinger() {
+    Integer[] keys = new Integer[300];
+    String[] values = new String[300];
+    TreeSet<Integer> expected = new TreeSet<Integer>();
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = 2 * i;
+      values[i] = value(2 * i);
+      expected.add(2 * i);
+    } // for
+    SkipListBuilder<Integer, String> builder =
+        new SkipListBuilder<Integer, String>(SkipList.indexed((i, j) -> i - j));
+    for (int i = 0; i < keys.length; i++) {
+      builder.append(keys[i], values[i]);
+    } // for
+    ints = builder.build();
+    assertPositions(expected, ints);
+    assertPositions(expected, SkipList.fromSorted((i, j) -> i - j, keys, values));
+    ints.useFinger(true);
+    for (int i = 1; i < 600; i += 4) {
+      ints.set(i, value(i));
+      expected.add(i);
+    } // for
+    assertPositions(expected, ints);
+    assertEquals("two", ints.getByIndex(2));
+    try {
+      ints.keyAt(ints.size());
+      fail("keyAt(size()) should throw");
+    } catch (IndexOutOfBoundsException e) {
+      // Expected
+    } // try/catch
+    try {
+      ints.keys(5, 4);
+      fail("keys(5, 4) should throw");
+    } catch (IndexOutOfBoundsException e) {
+      // Expected
+    } // try/catch
+  } // positionalAccessAfterBulkLoadAndFinger()
+
+  /**
+   * The height follows the tallest node as the list grows and shrinks.
+   */
+  @Test
+  public void heightTracksTallestNode() {
+    setup();
+    assertEquals(1, ints.height);
+    for (int i = 0; i < 1000; i++) {
+      ints.set(i, value(i));
+      assertEquals(tallest(ints), ints.height);
+    } // for
+    for (int i = 0; i < 1000; i++) {
+      ints.remove(random.nextInt(1000));
+      assertEquals(tallest(ints), ints.height);
+    } // for
+    for (int i = 0; i < 1000; i++) {
+      ints.remove(i);
+    } // for
+    assertEquals(1, ints.height);
+    ints.set(5, "five");
+    assertEquals("five", ints.get(5));
+    assertEquals(0, ints.rankOf(5));
+  } // heightTracksTallestNode()
+
+  /**
+   * A list with a small height cap never grows past it and still works.
+   */
+  @Test
+  public void heightCap() {
+    ints = new SkipList<Integer, String>((i, j) -> i - j, LevelGenerator.withProbability(0.5), 3,
+        false, null, true);
+    TreeSet<Integer> expected = new TreeSet<Integer>();
+    for (int i = 0; i < 5000; i++) {
+      int key = random.nextInt(2000);
+      ints.set(key, value(key));
+      expected.add(key);
+    } // for
+    assertTrue(ints.height <= 3);
+    assertTrue(tallest(ints) <= 3);
+    assertPositions(expected, ints);
+  } // heightCap()
+
+  /**
+   * Seeded level generators build identical lists.
+   */
+  @Test
+  public void seededLevelsAreReproducible() {
+    SkipList<Integer, String> first =
+        new SkipList<Integer, String>((i, j) -> i - j, LevelGenerator.seeded(0.5, 17));
+    SkipList<Integer, String> second =
+        new SkipList<Integer, String>((i, j) -> i - j, LevelGenerator.seeded(0.5, 17));
+    for (int i = 0; i < 1000; i++) {
+      first.set(i, value(i));
+      second.set(i, value(i));
+    } // for
+    Iterator<SLNode<Integer, String>> it = second.nodes();
+    for (Iterator<SLNode<Integer, String>> nodes = first.nodes(); nodes.hasNext();) {
+      assertEquals(nodes.next().next.length, it.next().next.length);
+    } // for
+  } // seededLevelsAreReproducible()
+
+  /**
+   * A fresh generator has its own state and the same probability, its copies of a seeded one are
+   * reproducible, and lists made by set operations do not share the generator of their source.
+   */
+  @Test
+  public void freshLevelGenerators() {
+    LevelGenerator levels = LevelGenerator.seeded(0.25, 5);
+    LevelGenerator copy = levels.fresh();
+    assertNotSame(levels, copy);
+    LevelGenerator again = LevelGenerator.seeded(0.25, 5).fresh();
+    int above = 0;
+    for (int i = 0; i < 100000; i++) {
+      int level = copy.nextLevel(32);
+      assertEquals(level, again.nextLevel(32));
+      above += (level > 1) ? 1 : 0;
+    } // for
+    assertEquals(0.25, above / 100000.0, 0.01);
+
+    SkipList<Integer, String> list = new SkipList<Integer, String>((i, j) -> i - j, levels);
+    list.set(1, "one");
+    assertNotSame(levels, list.union(list, (a, b) -> a).levels);
+    assertNotSame(levels, list.emptyCopy().levels);
+  } // freshLevelGenerators()
+
+  /**
+   * Level generators reach each further level with about the requested probability, for powers
+   * of 1/2 and for other probabilities.
+   */
+  @Test
+  public void levelDistribution() {
+    for (double p : new double[] {0.5, 0.25, 0.3}) {
+      LevelGenerator levels = LevelGenerator.seeded(p, 99);
+      int samples = 200000;
+      int[] counts = new int[9];
+      for (int i = 0; i < samples; i++) {
+        int level = levels.nextLevel(8);
+        assertTrue(level >= 1 && level <= 8);
+        counts[level]++;
+      } // for
+      int atLeast = samples;
+      for (int level = 1; level <= 3; level++) {
+        int above = atLeast - counts[level];
+        assertEquals("p = " + p + ", level " + level, p, (double) above / atLeast, 0.01);
+        atLeast = above;
+      } // for
+    } // for
+    assertEquals(1, LevelGenerator.seeded(0.5, 1).nextLevel(1));
+  } // levelDistribution()
+
+  /**
+   * natural() orders Comparable keys naturally (so 9 comes before 10) through compareTo, while
+   * the no-argument constructor still orders them by their strings (so 10 comes before 9).
+   */
+  @Test
+  public void naturalOrder() {
+    SkipList<Integer, String> byDefault = new SkipList<Integer, String>();
+    SkipList<Integer, String> natural = SkipList.natural();
+    assertTrue(natural.natural);
+    assertFalse(byDefault.natural);
+    TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+    for (int i = 0; i < 1000; i++) {
+      int key = random.nextInt(500);
+      assertEquals(expected.put(key, value(key)), natural.set(key, value(key)));
+      byDefault.set(key, value(key));
+    } // for
+    assertPositions(new TreeSet<Integer>(expected.keySet()), natural);
+    ArrayList<Integer> byString = new ArrayList<Integer>(expected.keySet());
+    byString.sort((i, j) -> i.toString().compareTo(j.toString()));
+    assertEquals(byString, toList(byDefault.keys()));
+  } // naturalOrder()
+
+  /**
+   * The prefix functions preserve order: a smaller prefix always means a smaller key.
+   */
+  @Test
+  public void keyPrefixesPreserveOrder() {
+    for (int i = 0; i < 10000; i++) {
+      String s = randomString(random.nextInt(7));
+      String t = randomString(random.nextInt(7));
+      int byPrefix = Long.compareUnsigned(KeyPrefixes.STRING.applyAsLong(s),
+          KeyPrefixes.STRING.applyAsLong(t));
+      assertTrue(byPrefix == 0 || Integer.signum(byPrefix) == Integer.signum(s.compareTo(t)));
+      byte[] b = s.getBytes();
+      byte[] c = t.getBytes();
+      byPrefix = Long.compareUnsigned(KeyPrefixes.BYTES.applyAsLong(b),
+          KeyPrefixes.BYTES.applyAsLong(c));
+      assertTrue(byPrefix == 0
+          || Integer.signum(byPrefix) == Integer.signum(Arrays.compareUnsigned(b, c)));
+      int x = random.nextInt();
+      int y = random.nextInt();
+      assertEquals(Integer.signum(Integer.compare(x, y)), Integer.signum(Long.compareUnsigned(
+          KeyPrefixes.INTEGER.applyAsLong(x), KeyPrefixes.INTEGER.applyAsLong(y))));
+    } // for
+  } // keyPrefixesPreserveOrder()
+
+  /**
+   * A list with cached prefixes, over strings that often share their first characters, matches
+   * a TreeMap through sets, removes, bulk operations, the finger and positional access, whether
+   * or not it is indexed.
+   */
+  @Test
+  public void prefixedMatchesTreeMap() {
+    prefixedMatchesTreeMap(new SkipList<String, String>((s, t) -> s.compareTo(t),
+        KeyPrefixes.STRING));
+    prefixedMatchesTreeMap(new SkipList<String, String>((s, t) -> s.compareTo(t),
+        LevelGenerator.withProbability(0.5), SkipList.DEFAULT_MAX_HEIGHT, false,
+        KeyPrefixes.STRING, true));
+  } // prefixedMatchesTreeMap()
+
+  /**
+   * Check list, which is empty and has prefixes on, against a TreeMap.
+   */
+  void prefixedMatchesTreeMap(SkipList<String, String> list) {
+    list.useFinger(true);
+    TreeMap<String, String> expected = new TreeMap<String, String>();
+    for (int i = 0; i < 5000; i++) {
+      String key = "key" + randomString(random.nextInt(4));
+      if (random.nextInt(3) == 0) {
+        assertEquals(expected.remove(key), list.remove(key));
+      } else {
+        assertEquals(expected.put(key, "v" + i), list.set(key, "v" + i));
+      } // if/else
+      String probe = "key" + randomString(random.nextInt(4));
+      assertEquals(expected.containsKey(probe), list.containsKey(probe));
+    } // for
+    ArrayList<String> keys = new ArrayList<String>(expected.keySet());
+    assertEquals(expected.size(), list.size());
+    for (int i = 0; i < keys.size(); i++) {
+      assertEquals(keys.get(i), list.keyAt(i));
+      assertEquals(i, list.rankOf(keys.get(i)));
+      assertEquals(expected.get(keys.get(i)), list.get(keys.get(i)));
+    } // for
+    assertEquals(keys.size() / 2, list.removeAll(keys.subList(0, keys.size() / 2)));
+    assertEquals(keys.size() - keys.size() / 2, list.size());
+    assertEquals(keys.get(keys.size() - 1), list.keyAt(list.size() - 1));
+  } // prefixedMatchesTreeMap(SkipList<String, String>)
+
+  /**
+   * find, getOrDefault and containsKey report misses without throwing.
+   */
+  @Test
+  public void lookupsWithoutExceptions() {
+    setup();
+    ints.set(4, "four");
+    assertEquals("four", ints.find(4));
+    assertNull(ints.find(5));
+    assertEquals("none", ints.getOrDefault(5, "none"));
+    assertEquals("four", ints.getOrDefault(4, "none"));
+    assertFalse(ints.containsKey(5));
+    assertFalse(ints.containsKey(null));
+    assertTrue(ints.containsKey(4));
+  } // lookupsWithoutExceptions()
+
+  /**
+   * putIfAbsent, computeIfAbsent, compute and merge match the same operations on a TreeMap,
+   * with and without the finger, and keep the positions of an indexed list right.
+   */
+  @Test
+  public void compoundOperationsMatchTreeMap() {
+    for (boolean finger : new boolean[] {false, true}) {
+      SkipList<Integer, Integer> list = SkipList.indexed((i, j) -> i - j);
+      list.useFinger(finger);
+      TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+      for (int i = 0; i < 5000; i++) {
+        int key = random.nextInt(300);
+        int amount = random.nextInt(5) - 2;
+        switch (random.nextInt(5)) {
+          case 0:
+            assertEquals(expected.putIfAbsent(key, amount), list.putIfAbsent(key, amount));
+            break;
+          case 1:
+            assertEquals(expected.computeIfAbsent(key, (k) -> (k % 3 == 0) ? null : k),
+                list.computeIfAbsent(key, (k) -> (k % 3 == 0) ? null : k));
+            break;
+          case 2:
+            // Counters that disappear when they reach zero
+            assertEquals(expected.merge(key, amount, (a, b) -> (a + b == 0) ? null : a + b),
+                list.merge(key, amount, (a, b) -> (a + b == 0) ? null : a + b));
+            break;
+          case 3:
+            assertEquals(
+                expected.compute(key, (k, v) -> (v == null) ? (Integer) amount
+                    : (v > 1) ? null : v + k),
+                list.compute(key, (k, v) -> (v == null) ? (Integer) amount
+                    : (v > 1) ? null : v + k));
+            break;
+          default:
+            assertEquals(expected.get(key), list.find(key));
+        } // switch
+        assertEquals(expected.size(), list.size());
+      } // for
+      int position = 0;
+      for (Integer key : expected.keySet()) {
+        assertEquals(key, list.keyAt(position));
+        assertEquals(expected.get(key), list.getByIndex(position++));
+      } // for
+    } // for
+  } // compoundOperationsMatchTreeMap()
+
+  /**
+   * A function that adds or removes keys while compute and the like run is caught, even when
+   * it removes one key and adds another, leaving the size alone.
+   */
+  @Test
+  public void computeRejectsChanges() {
+    setup();
+    for (int i = 0; i < 10; i += 2) {
+      set(i);
+    } // for
+    ArrayList<Runnable> changes = new ArrayList<Runnable>();
+    changes.add(() -> ints.compute(1, (k, v) -> ints.set(200, "two hundred")));
+    changes.add(() -> ints.compute(5, (k, v) -> {
+      ints.remove(4);
+      ints.set(100, "x");
+      return "five";
+    }));
+    changes.add(() -> ints.computeIfAbsent(7, (k) -> {
+      ints.remove(100);
+      ints.set(4, "four");
+      return "seven";
+    }));
+    changes.add(() -> ints.merge(6, "six", (a, b) -> {
+      ints.remove(8);
+      ints.set(101, "y");
+      return a + b;
+    }));
+    for (Runnable change : changes) {
+      try {
+        change.run();
+        fail("the function's changes went unnoticed");
+      } catch (ConcurrentModificationException e) {
+        // Expected
+      } // try/catch
+    } // for
+    assertEquals(toList(ints.keys()).size(), ints.size());
+    assertNull(ints.find(5));
+    assertNull(ints.find(7));
+  } // computeRejectsChanges()
+
+  /**
+   * Functions that look up other keys do not confuse the insert that follows them.
+   */
+  @Test
+  public void computeFunctionsMayRead() {
+    SkipList<Integer, String> list = new SkipList<Integer, String>((i, j) -> i - j);
+    list.set(5, "five");
+    assertEquals("three", list.computeIfAbsent(3, (k) -> {
+      list.find(5);
+      return "three";
+    }));
+    assertEquals("four", list.compute(4, (k, v) -> (list.find(5) == null) ? null : "four"));
+    assertEquals("six", list.merge(6, "six", (a, b) -> list.find(5)));
+    assertEquals(Arrays.asList(3, 4, 5, 6), toList(list.keys()));
+    assertEquals(Arrays.asList("three", "four", "five", "six"), toList(list.values()));
+    assertEquals(Integer.valueOf(5), list.keyAt(2));
+    assertEquals(4, list.size());
+  } // computeFunctionsMayRead()
+
+  // +----------------+----------------------------------------------
+  // | Set operations |
+  // +----------------+
+
+  /**
+   * Union, intersection and difference of random lists match the same operations on TreeMaps,
+   * including a combiner that drops some keys.
+   */
+  @Test
+  public void setOperationsMatchTreeMap() {
+    for (int round = 0; round < 20; round++) {
+      SkipList<Integer, String> a = new SkipList<Integer, String>((i, j) -> i - j);
+      SkipList<Integer, String> b = new SkipList<Integer, String>((i, j) -> i - j);
+      TreeMap<Integer, String> ta = new TreeMap<Integer, String>();
+      TreeMap<Integer, String> tb = new TreeMap<Integer, String>();
+      int range = 10 + random.nextInt(2000);
+      for (int i = random.nextInt(500); i > 0; i--) {
+        int key = random.nextInt(range);
+        a.set(key, "a" + key);
+        ta.put(key, "a" + key);
+      } // for
+      for (int i = random.nextInt(500); i > 0; i--) {
+        int key = random.nextInt(range);
+        b.set(key, "b" + key);
+        tb.put(key, "b" + key);
+      } // for
+      // Keep the combined value only for even keys
+      BiFunction<String, String, String> combiner =
+          (x, y) -> (Integer.parseInt(x.substring(1)) % 2 == 0) ? x + y : null;
+
+      TreeMap<Integer, String> union = new TreeMap<Integer, String>(ta);
+      tb.forEach((key, value) -> union.merge(key, value, combiner));
+      TreeMap<Integer, String> both = new TreeMap<Integer, String>();
+      ta.forEach((key, value) -> {
+        if (tb.containsKey(key) && combiner.apply(value, tb.get(key)) != null) {
+          both.put(key, combiner.apply(value, tb.get(key)));
+        } // if
+      });
+      TreeMap<Integer, String> diff = new TreeMap<Integer, String>(ta);
+      diff.keySet().removeAll(tb.keySet());
+
+      assertEntries(union, a.union(b, combiner));
+      assertEntries(both, a.intersection(b, combiner));
+      assertEntries(diff, a.difference(b));
+    } // for
+  } // setOperationsMatchTreeMap()
+
+  /**
+   * Intersecting a few keys with a large list gallops instead of walking: the number of
+   * comparisons is nowhere near the size of the large list.
+   */
+  @Test
+  public void skewedIntersectionGallops() {
+    long[] comparisons = {0};
+    Comparator<Integer> counting = (i, j) -> {
+      comparisons[0]++;
+      return Integer.compare(i, j);
+    };
+    SkipList<Integer, String> large = new SkipList<Integer, String>(counting);
+    for (int i = 0; i < 200000; i++) {
+      large.set(i, "v");
+    } // for
+    SkipList<Integer, String> small = new SkipList<Integer, String>(counting);
+    for (int i = 0; i < 100; i++) {
+      small.set(i * 2000 + 7, "w");
+    } // for
+    for (SkipList<Integer, String> result : Arrays.asList(small.intersection(large, (x, y) -> y),
+        large.intersection(small, (x, y) -> x))) {
+      assertEquals(100, result.size());
+      assertEquals("v", result.get(7));
+    } // for
+    comparisons[0] = 0;
+    small.intersection(large, (x, y) -> x + y);
+    large.intersection(small, (x, y) -> x + y);
+    // About 100 * log2(2000) * a small constant each way, against 200000 for a linear walk
+    assertTrue("comparisons: " + comparisons[0], comparisons[0] < 20000);
+  } // skewedIntersectionGallops()
+
+  /**
+   * Check that list holds exactly the entries of expected, in order, with correct positions.
+   */
+  static void assertEntries(TreeMap<Integer, String> expected, SkipList<Integer, String> list) {
+    assertEquals(new ArrayList<Map.Entry<Integer, String>>(expected.entrySet()),
+        list.entryStream().collect(Collectors.toList()));
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(i, list.rankOf(list.keyAt(i)));
+    } // for
+  } // assertEntries(TreeMap<Integer, String>, SkipList<Integer, String>)
+
+  // +---------+-----------------------------------------------------
+  // | Streams |
+  // +---------+
+
+  /**
+   * Sequential and parallel streams of keys, values and entries match a TreeMap.
+   */
+  @Test
+  public void streamsMatchTreeMap() {
+    setup();
+    TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+    for (int i = 0; i < 5000; i++) {
+      int key = random.nextInt(20000);
+      expected.put(key, value(key));
+      ints.set(key, value(key));
+    } // for
+    assertEquals(new ArrayList<Integer>(expected.keySet()),
+        ints.stream().collect(Collectors.toList()));
+    assertEquals(new ArrayList<Integer>(expected.keySet()),
+        ints.stream().parallel().collect(Collectors.toList()));
+    assertEquals(new ArrayList<String>(expected.values()),
+        ints.valueStream().parallel().collect(Collectors.toList()));
+    assertEquals(new ArrayList<Map.Entry<Integer, String>>(expected.entrySet()),
+        ints.entryStream().parallel().collect(Collectors.toList()));
+    long sum = expected.keySet().stream().mapToLong(Integer::longValue).sum();
+    assertEquals(sum, ints.stream().parallel().mapToLong(Integer::longValue).sum());
+    assertEquals(expected.size(), ints.stream().parallel().distinct().sorted().count());
+    Spliterator<Integer> keys = ints.keySpliterator();
+    assertTrue(keys.hasCharacteristics(Spliterator.ORDERED | Spliterator.SORTED
+        | Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.SIZED));
+    assertEquals(expected.size(), keys.getExactSizeIfKnown());
+  } // streamsMatchTreeMap()
+
+  /**
+   * Splitting all the way down hands out every key exactly once, in order. The halves of an
+   * indexed list know their exact sizes, which differ by at most one.
+   */
+  @Test
+  public void splitsCoverEveryKeyOnce() {
+    for (boolean indexed : new boolean[] {false, true}) {
+      SkipList<Integer, String> list = indexed ? SkipList.indexed((i, j) -> i - j)
+          : new SkipList<Integer, String>((i, j) -> i - j);
+      for (int i = 0; i < 1000; i++) {
+        list.set(random.nextInt(5000), "v");
+      } // for
+      ArrayList<Integer> keys = new ArrayList<Integer>();
+      assertTrue(splitAndCollect(list.keySpliterator(), keys, indexed) > 100);
+      assertEquals(toList(list.keys()), keys);
+    } // for
+  } // splitsCoverEveryKeyOnce()
+
+  /**
+   * Split keys as far as it will go, adding the keys to result in order, and return how many
+   * pieces that made. If exact is set, the halves must know their sizes.
+   */
+  static int splitAndCollect(Spliterator<Integer> keys, ArrayList<Integer> result,
+      boolean exact) {
+    long size = keys.estimateSize();
+    Spliterator<Integer> prefix = keys.trySplit();
+    if (prefix == null) {
+      assertTrue(!exact || size <= 1);
+      keys.forEachRemaining(result::add);
+      return 1;
+    } // if
+    assertEquals(exact, prefix.hasCharacteristics(Spliterator.SIZED));
+    if (exact) {
+      assertEquals(size, prefix.estimateSize() + keys.estimateSize());
+      assertTrue(Math.abs(prefix.estimateSize() - keys.estimateSize()) <= 1);
+    } // if
+    return splitAndCollect(prefix, result, exact) + splitAndCollect(keys, result, exact);
+  } // splitAndCollect(Spliterator<Integer>, ArrayList<Integer>, boolean)
+
+  /**
+   * parallelForEach visits every entry exactly once.
+   */
+  @Test
+  public void parallelForEachVisitsEveryEntry() {
+    setup();
+    for (int i = 0; i < 10000; i++) {
+      ints.set(i, value(i));
+    } // for
+    ConcurrentHashMap<Integer, String> seen = new ConcurrentHashMap<Integer, String>();
+    LongAdder calls = new LongAdder();
+    ints.parallelForEach((key, value) -> {
+      seen.put(key, value);
+      calls.increment();
+    });
+    assertEquals(10000, calls.sum());
+    assertEquals(10000, seen.size());
+    assertEquals(value(1234), seen.get(1234));
+  } // parallelForEachVisitsEveryEntry()
+
+  // +------------+--------------------------------------------------
+  // | Allocation |
+  // +------------+
+
+  /**
+   * Random changes with recycling on (and prefixes, which recycled nodes must pick up afresh,
+   * and widths) match a TreeMap, and the pool stays within its limit.
+   */
+  @Test
+  public void recycledNodesMatchTreeMap() {
+    SkipList<String, String> list = new SkipList<String, String>((s, t) -> s.compareTo(t),
+        LevelGenerator.withProbability(0.5), SkipList.DEFAULT_MAX_HEIGHT, false,
+        KeyPrefixes.STRING, true);
+    list.recycleNodes(4);
+    TreeMap<String, String> expected = new TreeMap<String, String>();
+    for (int i = 0; i < 20000; i++) {
+      String key = randomString(1 + random.nextInt(6));
+      if (random.nextBoolean()) {
+        assertEquals(expected.remove(key), list.remove(key));
+      } else {
+        assertEquals(expected.put(key, "v" + i), list.set(key, "v" + i));
+      } // if/else
+    } // for
+    assertTrue(list.pooledNodes() <= 4 * list.maxHeight);
+    assertEquals(new ArrayList<String>(expected.keySet()), toList(list.keys()));
+    assertEquals(new ArrayList<String>(expected.values()), toList(list.values()));
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(i, list.rankOf(list.keyAt(i)));
+    } // for
+    list.recycleNodes(0);
+    assertEquals(0, list.pooledNodes());
+  } // recycledNodesMatchTreeMap()
+
+  /**
+   * Once warmed up, get, find, set on a key that is there and remove of a key that is not
+   * allocate nothing, and recycling all but stops remove followed by set from allocating.
+   */
+  @Test
+  public void steadyStateAllocatesNothing() {
+    setup();
+    Integer[] keys = new Integer[4000];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = i;
+    } // for
+    for (int i = 0; i < keys.length; i += 2) {
+      ints.set(keys[i], "v");
+    } // for
+    int ops = keys.length / 2;
+    assertTrue(SkipListAllocation.bytesPerOp(ops, (i) -> ints.get(keys[2 * i])) < 1);
+    assertTrue(SkipListAllocation.bytesPerOp(ops, (i) -> ints.find(keys[2 * i + 1])) < 1);
+    assertTrue(SkipListAllocation.bytesPerOp(ops, (i) -> ints.set(keys[2 * i], "w")) < 1);
+    assertTrue(SkipListAllocation.bytesPerOp(ops, (i) -> ints.remove(keys[2 * i + 1])) < 1);
+    double churn = SkipListAllocation.bytesPerOp(ops,
+        (i) -> ints.set(keys[2 * i], ints.remove(keys[2 * i])));
+    ints.recycleNodes(64);
+    double recycled = SkipListAllocation.bytesPerOp(ops,
+        (i) -> ints.set(keys[2 * i], ints.remove(keys[2 * i])));
+    assertTrue(churn + " vs. " + recycled, recycled < churn / 10);
+    assertEquals(ops, ints.size());
+  } // steadyStateAllocatesNothing()
+
+  /**
+   * Recycling is refused when other threads may read the list.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void noRecyclingWithConcurrentReads() {
+    SkipList<Integer, String> list =
+        new SkipList<Integer, String>((i, j) -> i - j, LevelGenerator.withProbability(0.5), 32,
+            true);
+    list.recycleNodes(16);
+  } // noRecyclingWithConcurrentReads()
+
+  /**
+   * A short random string over a small alphabet, so that strings often share prefixes.
+   */
+  String randomString(int length) {
+    StringBuilder result = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      result.append("ab\u00e9z".charAt(random.nextInt(4)));
+    } // for
+    return result.toString();
+  } // randomString(int)
+
   public static void main(String[] args) {
     SkipListTests slt = new SkipListTests();
     slt.setup();
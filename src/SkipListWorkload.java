@@ -0,0 +1,566 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Function;
+
+/**
+ * A workload driver in the style of YCSB: loads a map with keys 0 .. keys-1, then has several
+ * client threads run a mix of reads, writes, deletes, short scans and updates (adding one to a
+ * key's value) over keys drawn from a uniform, Zipfian or sequential distribution, and reports
+ * the throughput and the p50/p99/p999 latency of each kind of operation as JSON or CSV.
+ *
+ * Options are given as name=value arguments, for example
+ *
+ * <pre>
+ *   java SkipListWorkload map=SkipList keys=1000000 ops=2000000 threads=4 \
+ *       read=0.9 write=0.08 delete=0.01 scan=0.01 dist=zipfian format=csv
+ * </pre>
+ *
+ * The seed also fixes the heights of SkipList nodes, and p sets their level probability, so runs
+ * with the same options build the same list.
+ *
+ * The maps are SkipList, UnrolledSkipList, ConcurrentSkipList, TreeMap and
+ * ConcurrentSkipListMap. SkipList, UnrolledSkipList and TreeMap are not thread-safe, so with more
+ * than one thread they are guarded by a lock on the map, much as an application would have to.
+ */
+public class SkipListWorkload {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The kinds of operation, in the order they are reported.
+   */
+  static final String[] OPS = {"read", "write", "delete", "scan", "update"};
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  String map = "SkipList";
+  int keys = 100000;
+  long ops = 1000000;
+  int threads = 1;
+  double[] mix = {0.5, 0.5, 0, 0, 0};
+  int scanLength = 100;
+  String dist = "uniform";
+  double theta = 0.99;
+  long seed = 2;
+  double p = 0.5;
+  String format = "json";
+
+  // +------+--------------------------------------------------------
+  // | Main |
+  // +------+
+
+  public static void main(String[] args) throws InterruptedException {
+    SkipListWorkload workload = new SkipListWorkload();
+    for (String arg : args) {
+      workload.option(arg);
+    } // for
+    workload.run();
+  } // main(String[])
+
+  /**
+   * Set one name=value option.
+   */
+  void option(String arg) {
+    int eq = arg.indexOf('=');
+    if (eq < 0) {
+      throw new IllegalArgumentException("Expected name=value, got " + arg);
+    } // if
+    String name = arg.substring(0, eq);
+    String value = arg.substring(eq + 1);
+    switch (name) {
+      case "map":
+        map = value;
+        break;
+      case "keys":
+        keys = Integer.parseInt(value);
+        break;
+      case "ops":
+        ops = Long.parseLong(value);
+        break;
+      case "threads":
+        threads = Integer.parseInt(value);
+        break;
+      case "read":
+        mix[0] = Double.parseDouble(value);
+        break;
+      case "write":
+        mix[1] = Double.parseDouble(value);
+        break;
+      case "delete":
+        mix[2] = Double.parseDouble(value);
+        break;
+      case "scan":
+        mix[3] = Double.parseDouble(value);
+        break;
+      case "update":
+        mix[4] = Double.parseDouble(value);
+        break;
+      case "scanLength":
+        scanLength = Integer.parseInt(value);
+        break;
+      case "dist":
+        dist = value;
+        break;
+      case "theta":
+        theta = Double.parseDouble(value);
+        break;
+      case "seed":
+        seed = Long.parseLong(value);
+        break;
+      case "p":
+        p = Double.parseDouble(value);
+        break;
+      case "format":
+        format = value;
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown option " + name);
+    } // switch
+  } // option(String)
+
+  /**
+   * Load the map, run the clients, and print the results.
+   */
+  void run() throws InterruptedException {
+    Target target = target(map, threads > 1, LevelGenerator.seeded(p, seed));
+    load(target);
+    Zipfian zipfian = dist.equals("zipfian") ? new Zipfian(keys, theta) : null;
+
+    double totalWeight = 0;
+    for (double weight : mix) {
+      totalWeight += weight;
+    } // for
+    double[] cumulative = new double[OPS.length];
+    double sum = 0;
+    for (int op = 0; op < OPS.length; op++) {
+      sum += mix[op] / totalWeight;
+      cumulative[op] = sum;
+    } // for
+
+    LatencyHistogram[][] histograms = new LatencyHistogram[threads][OPS.length];
+    CountDownLatch start = new CountDownLatch(1);
+    ArrayList<Thread> clients = new ArrayList<Thread>();
+    for (int t = 0; t < threads; t++) {
+      int id = t;
+      long mine = ops / threads + ((t < ops % threads) ? 1 : 0);
+      for (int op = 0; op < OPS.length; op++) {
+        histograms[t][op] = new LatencyHistogram();
+      } // for
+      Thread client = new Thread(() -> {
+        Random random = new Random(seed + 31 * (id + 1));
+        KeyChooser chooser = chooser(zipfian, random, id);
+        LatencyHistogram[] mineHistograms = histograms[id];
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        } // try/catch
+        for (long i = 0; i < mine; i++) {
+          double pick = random.nextDouble();
+          int op = 0;
+          while (op < OPS.length - 1 && pick >= cumulative[op]) {
+            op++;
+          } // while
+          int key = chooser.next();
+          long before = System.nanoTime();
+          switch (op) {
+            case 0:
+              target.get(key);
+              break;
+            case 1:
+              target.set(key);
+              break;
+            case 2:
+              target.remove(key);
+              break;
+            case 3:
+              target.scan(key, scanLength);
+              break;
+            default:
+              target.update(key);
+          } // switch
+          mineHistograms[op].record(System.nanoTime() - before);
+        } // for
+      });
+      client.start();
+      clients.add(client);
+    } // for
+    long began = System.nanoTime();
+    start.countDown();
+    for (Thread client : clients) {
+      client.join();
+    } // for
+    double seconds = (System.nanoTime() - began) / 1e9;
+
+    LatencyHistogram[] merged = new LatencyHistogram[OPS.length];
+    for (int op = 0; op < OPS.length; op++) {
+      merged[op] = new LatencyHistogram();
+      for (int t = 0; t < threads; t++) {
+        merged[op].add(histograms[t][op]);
+      } // for
+    } // for
+    report(merged, seconds);
+  } // run()
+
+  /**
+   * Fill the map with every key, in random order.
+   */
+  void load(Target target) {
+    Random random = new Random(seed);
+    int[] order = new int[keys];
+    for (int i = 0; i < keys; i++) {
+      order[i] = i;
+    } // for
+    for (int i = keys - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int temp = order[i];
+      order[i] = order[j];
+      order[j] = temp;
+    } // for
+    for (int i = 0; i < keys; i++) {
+      target.set(order[i]);
+    } // for
+  } // load(Target)
+
+  /**
+   * Print the results, in the requested format.
+   */
+  void report(LatencyHistogram[] histograms, double seconds) {
+    long total = 0;
+    for (LatencyHistogram histogram : histograms) {
+      total += histogram.count();
+    } // for
+    if (format.equals("csv")) {
+      System.out.println("map,dist,threads,keys,op,count,ops_per_sec,p50_ns,p99_ns,p999_ns,max_ns");
+      for (int op = 0; op <= OPS.length; op++) {
+        LatencyHistogram histogram = (op < OPS.length) ? histograms[op] : null;
+        long count = (histogram == null) ? total : histogram.count();
+        if (count == 0) {
+          continue;
+        } // if
+        System.out.println(String.format(Locale.ROOT, "%s,%s,%d,%d,%s,%d,%.1f,%s", map, dist,
+            threads, keys, (op < OPS.length) ? OPS[op] : "all", count, count / seconds,
+            (histogram == null) ? ",,," : histogram.percentile(50) + "," + histogram.percentile(99)
+                + "," + histogram.percentile(99.9) + "," + histogram.max()));
+      } // for
+    } else {
+      StringBuilder json = new StringBuilder();
+      json.append(String.format(Locale.ROOT,
+          "{\"map\":\"%s\",\"dist\":\"%s\",\"threads\":%d,\"keys\":%d,\"ops\":%d,"
+              + "\"seconds\":%.3f,\"opsPerSec\":%.1f,\"latency\":{",
+          map, dist, threads, keys, total, seconds, total / seconds));
+      boolean first = true;
+      for (int op = 0; op < OPS.length; op++) {
+        LatencyHistogram histogram = histograms[op];
+        if (histogram.count() == 0) {
+          continue;
+        } // if
+        json.append(first ? "" : ",");
+        json.append(String.format(Locale.ROOT,
+            "\"%s\":{\"count\":%d,\"p50Ns\":%d,\"p99Ns\":%d,\"p999Ns\":%d,\"maxNs\":%d}", OPS[op],
+            histogram.count(), histogram.percentile(50), histogram.percentile(99),
+            histogram.percentile(99.9), histogram.max()));
+        first = false;
+      } // for
+      json.append("}}");
+      System.out.println(json);
+    } // if/else
+  } // report(LatencyHistogram[], double)
+
+  // +------------+--------------------------------------------------
+  // | Key choice |
+  // +------------+
+
+  /**
+   * Picks the key for each operation of one client.
+   */
+  interface KeyChooser {
+    int next();
+  } // interface KeyChooser
+
+  /**
+   * Build the key chooser for one client.
+   */
+  KeyChooser chooser(Zipfian zipfian, Random random, int id) {
+    switch (dist) {
+      case "uniform":
+        return () -> random.nextInt(keys);
+      case "zipfian":
+        // Scramble the ranks, so that the popular keys are spread over the key space
+        return () -> (int) Math.floorMod(fnv(zipfian.next(random)), (long) keys);
+      case "sequential":
+        int[] next = {(int) ((long) keys * id / threads)};
+        return () -> {
+          int key = next[0];
+          next[0] = (key + 1 == keys) ? 0 : key + 1;
+          return key;
+        };
+      default:
+        throw new IllegalArgumentException("Unknown distribution " + dist);
+    } // switch
+  } // chooser(Zipfian, Random, int)
+
+  /**
+   * The 64-bit FNV-1a hash of a long.
+   */
+  static long fnv(long value) {
+    long hash = 0xCBF29CE484222325L;
+    for (int i = 0; i < 8; i++) {
+      hash ^= value & 0xFF;
+      hash *= 0x100000001B3L;
+      value >>>= 8;
+    } // for
+    return hash;
+  } // fnv(long)
+
+  /**
+   * Ranks 0 .. items-1 drawn with Zipfian popularity (rank 0 is the most popular), using the
+   * method of Gray et al., "Quickly Generating Billion-Record Synthetic Databases", as YCSB does.
+   */
+  static class Zipfian {
+    final long items;
+    final double theta;
+    final double alpha;
+    final double zetan;
+    final double eta;
+
+    Zipfian(long items, double theta) {
+      this.items = items;
+      this.theta = theta;
+      this.alpha = 1.0 / (1.0 - theta);
+      this.zetan = zeta(items, theta);
+      this.eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta(2, theta) / zetan);
+    } // Zipfian(long, double)
+
+    static double zeta(long n, double theta) {
+      double sum = 0;
+      for (long i = 1; i <= n; i++) {
+        sum += 1 / Math.pow(i, theta);
+      } // for
+      return sum;
+    } // zeta(long, double)
+
+    long next(Random random) {
+      double u = random.nextDouble();
+      double uz = u * zetan;
+      if (uz < 1.0) {
+        return 0;
+      } else if (uz < 1.0 + Math.pow(0.5, theta)) {
+        return 1;
+      } // if/else
+      return Math.min(items - 1, (long) (items * Math.pow(eta * u - eta + 1, alpha)));
+    } // next(Random)
+  } // class Zipfian
+
+  // +---------+-----------------------------------------------------
+  // | Targets |
+  // +---------+
+
+  /**
+   * The operations a client performs on the map under test.
+   */
+  interface Target {
+    void set(int key);
+
+    boolean get(int key);
+
+    void remove(int key);
+
+    int scan(int key, int length);
+
+    void update(int key);
+  } // interface Target
+
+  /**
+   * Build the named map, behind a lock if it is not thread-safe and will be shared. A SkipList
+   * gets its node heights from levels.
+   */
+  static Target target(String name, boolean shared, LevelGenerator levels) {
+    switch (name) {
+      case "SkipList":
+        Target skipList = new SkipListTarget(
+            new SkipList<Integer, Integer>((i, j) -> Integer.compare(i, j), levels));
+        return shared ? new LockedTarget(skipList) : skipList;
+      case "UnrolledSkipList":
+        UnrolledSkipList<Integer, Integer> chunks = new UnrolledSkipList<Integer, Integer>(
+            (i, j) -> Integer.compare(i, j), levels, UnrolledSkipList.DEFAULT_CHUNK_SIZE);
+        Target unrolled = new SimpleMapTarget(chunks, chunks::keys);
+        return shared ? new LockedTarget(unrolled) : unrolled;
+      case "ConcurrentSkipList":
+        ConcurrentSkipList<Integer, Integer> concurrent =
+            new ConcurrentSkipList<Integer, Integer>((i, j) -> Integer.compare(i, j));
+        return new SimpleMapTarget(concurrent, concurrent::keys);
+      case "TreeMap":
+        Target treeMap = new NavigableMapTarget(new TreeMap<Integer, Integer>());
+        return shared ? new LockedTarget(treeMap) : treeMap;
+      case "ConcurrentSkipListMap":
+        return new NavigableMapTarget(new ConcurrentSkipListMap<Integer, Integer>());
+      default:
+        throw new IllegalArgumentException("Unknown map " + name);
+    } // switch
+  } // target(String, boolean, LevelGenerator)
+
+  /**
+   * One of our maps.
+   */
+  static class SimpleMapTarget implements Target {
+    final SimpleMap<Integer, Integer> map;
+
+    /**
+     * Gets an iterator for the keys from a key on, so that scans start where the JDK maps'
+     * tailMap does.
+     */
+    final Function<Integer, Iterator<Integer>> tail;
+
+    SimpleMapTarget(SimpleMap<Integer, Integer> map, Function<Integer, Iterator<Integer>> tail) {
+      this.map = map;
+      this.tail = tail;
+    } // SimpleMapTarget(SimpleMap, Function)
+
+    @Override
+    public void set(int key) {
+      map.set(key, key);
+    } // set(int)
+
+    @Override
+    public boolean get(int key) {
+      return map.containsKey(key);
+    } // get(int)
+
+    @Override
+    public void remove(int key) {
+      map.remove(key);
+    } // remove(int)
+
+    @Override
+    public int scan(int key, int length) {
+      int seen = 0;
+      for (Iterator<Integer> it = tail.apply(key); seen < length && it.hasNext(); it.next()) {
+        seen++;
+      } // for
+      return seen;
+    } // scan(int, int)
+
+    @Override
+    public void update(int key) {
+      // Two searches: one to read the old value and one to set the new
+      Integer old;
+      try {
+        old = map.get(key);
+      } catch (IndexOutOfBoundsException e) {
+        old = null;
+      } // try/catch
+      map.set(key, (old == null) ? 1 : old + 1);
+    } // update(int)
+  } // class SimpleMapTarget
+
+  /**
+   * A SkipList, which can answer a read without an exception and update in one search.
+   */
+  static class SkipListTarget extends SimpleMapTarget {
+    final SkipList<Integer, Integer> list;
+
+    SkipListTarget(SkipList<Integer, Integer> list) {
+      super(list, (key) -> list.tailMap(key).keys());
+      this.list = list;
+    } // SkipListTarget(SkipList)
+
+    @Override
+    public boolean get(int key) {
+      return list.find(key) != null;
+    } // get(int)
+
+    @Override
+    public void update(int key) {
+      list.merge(key, 1, Integer::sum);
+    } // update(int)
+  } // class SkipListTarget
+
+  /**
+   * One of the JDK's sorted maps.
+   */
+  static class NavigableMapTarget implements Target {
+    final NavigableMap<Integer, Integer> map;
+
+    NavigableMapTarget(NavigableMap<Integer, Integer> map) {
+      this.map = map;
+    } // NavigableMapTarget(NavigableMap)
+
+    @Override
+    public void set(int key) {
+      map.put(key, key);
+    } // set(int)
+
+    @Override
+    public boolean get(int key) {
+      return map.get(key) != null;
+    } // get(int)
+
+    @Override
+    public void remove(int key) {
+      map.remove(key);
+    } // remove(int)
+
+    @Override
+    public int scan(int key, int length) {
+      int seen = 0;
+      for (Iterator<Integer> it = map.tailMap(key, true).keySet().iterator();
+          seen < length && it.hasNext(); it.next()) {
+        seen++;
+      } // for
+      return seen;
+    } // scan(int, int)
+
+    @Override
+    public void update(int key) {
+      map.merge(key, 1, Integer::sum);
+    } // update(int)
+  } // class NavigableMapTarget
+
+  /**
+   * Another target, guarded by a lock.
+   */
+  static class LockedTarget implements Target {
+    final Target target;
+
+    LockedTarget(Target target) {
+      this.target = target;
+    } // LockedTarget(Target)
+
+    @Override
+    public synchronized void set(int key) {
+      target.set(key);
+    } // set(int)
+
+    @Override
+    public synchronized boolean get(int key) {
+      return target.get(key);
+    } // get(int)
+
+    @Override
+    public synchronized void remove(int key) {
+      target.remove(key);
+    } // remove(int)
+
+    @Override
+    public synchronized int scan(int key, int length) {
+      return target.scan(key, length);
+    } // scan(int, int)
+
+    @Override
+    public synchronized void update(int key) {
+      target.update(key);
+    } // update(int)
+  } // class LockedTarget
+
+} // class SkipListWorkload
@@ -0,0 +1,535 @@
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+
+/**
+ * A skip list whose nodes are chunks of up to chunkSize entries (32 by default) in sorted
+ * arrays, rather than single entries. The levels link chunks and compare against each chunk's
+ * first key; a search descends to the last chunk that could hold the key and then binary
+ * searches it. So a lookup makes about one hop (and cache miss) per chunk-sized stretch of the
+ * list instead of per entry, and the links and node headers are shared by a chunk's entries.
+ *
+ * set splits a full chunk in two, and remove merges a chunk that falls below a quarter full into
+ * its successor, when the two fit comfortably in one. No chunk is ever empty.
+ */
+public class UnrolledSkipList<K, V> implements SimpleMap<K, V> {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The default number of entries in a chunk.
+   */
+  static final int DEFAULT_CHUNK_SIZE = 32;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * Pointers to the first chunk at each level.
+   */
+  Chunk<K, V>[] front;
+
+  /**
+   * Scratch space for the chunks before a search key (reused between calls).
+   */
+  Chunk<K, V>[] update;
+
+  /**
+   * The comparator used to determine the ordering in the list.
+   */
+  final Comparator<K> comparator;
+
+  /**
+   * The most entries in one chunk.
+   */
+  final int chunkSize;
+
+  /**
+   * The number of values in the list.
+   */
+  int size;
+
+  /**
+   * The number of levels in use: the height of the tallest chunk.
+   */
+  int height = 1;
+
+  /**
+   * Picks the heights of new chunks.
+   */
+  final LevelGenerator levels;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new, empty list with chunks of up to chunkSize entries and chunk heights picked by
+   * levels.
+   *
+   * @throws IllegalArgumentException if chunkSize is less than 4.
+   */
+  public UnrolledSkipList(Comparator<K> comparator, LevelGenerator levels, int chunkSize) {
+    if (chunkSize < 4) {
+      throw new IllegalArgumentException("Chunks must hold at least 4 entries: " + chunkSize);
+    } // if
+    this.comparator = comparator;
+    this.levels = levels;
+    this.chunkSize = chunkSize;
+    this.front = newChunkArray(SkipList.DEFAULT_MAX_HEIGHT);
+    this.update = newChunkArray(SkipList.DEFAULT_MAX_HEIGHT);
+  } // UnrolledSkipList(Comparator<K>, LevelGenerator, int)
+
+  /**
+   * Create a new, empty list with chunks of up to chunkSize entries.
+   *
+   * @throws IllegalArgumentException if chunkSize is less than 4.
+   */
+  public UnrolledSkipList(Comparator<K> comparator, int chunkSize) {
+    this(comparator, LevelGenerator.withProbability(0.5), chunkSize);
+  } // UnrolledSkipList(Comparator<K>, int)
+
+  /**
+   * Create a new, empty list with chunks of up to 32 entries.
+   */
+  public UnrolledSkipList(Comparator<K> comparator) {
+    this(comparator, DEFAULT_CHUNK_SIZE);
+  } // UnrolledSkipList(Comparator<K>)
+
+  // +-------------------+-------------------------------------------
+  // | SimpleMap methods |
+  // +-------------------+
+
+  /**
+   * Set the value associated with key, splitting its chunk if it is full.
+   *
+   * @return the previous value associated with key (or null, if there's no such value)
+   */
+  @Override
+  public V set(K key, V value) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    } // if
+    Chunk<K, V> chunk = search(key, this.update);
+    if (chunk == null) {
+      // The key goes before every other, so at the start of the first chunk
+      chunk = this.front[0];
+      if (chunk == null) {
+        chunk = new Chunk<K, V>(this.chunkSize, randomHeight());
+        link(chunk, this.update);
+      } // if
+    } // if
+    int index = indexOf(chunk, key);
+    if (index >= 0) {
+      V result = chunk.value(index);
+      chunk.values[index] = value;
+      return result;
+    } // if
+
+    index = -index - 1;
+    if (chunk.count == this.chunkSize) {
+      Chunk<K, V> right = split(chunk);
+      if (index > chunk.count) {
+        index -= chunk.count;
+        chunk = right;
+      } // if
+    } // if
+    chunk.insert(index, key, value);
+    this.size++;
+    return null;
+  } // set(K, V)
+
+  /**
+   * Get the value associated with key.
+   *
+   * @throws IndexOutOfBoundsException if the key is not in the list.
+   */
+  @Override
+  public V get(K key) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    } // if
+    Chunk<K, V> chunk = search(key, null);
+    int index = (chunk == null) ? -1 : indexOf(chunk, key);
+    if (index < 0) {
+      throw new IndexOutOfBoundsException("OutOfBounds");
+    } // if
+    return chunk.value(index);
+  } // get(K)
+
+  @Override
+  public int size() {
+    return this.size;
+  } // size()
+
+  @Override
+  public boolean containsKey(K key) {
+    if (key == null) {
+      return false;
+    } // if
+    Chunk<K, V> chunk = search(key, null);
+    return chunk != null && indexOf(chunk, key) >= 0;
+  } // containsKey(K)
+
+  /**
+   * Remove the value with the given key, merging its chunk into the next if it gets too small.
+   *
+   * @return The associated value (or null, if there is no associated value).
+   */
+  @Override
+  public V remove(K key) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    } // if
+    Chunk<K, V> chunk = search(key, null);
+    int index = (chunk == null) ? -1 : indexOf(chunk, key);
+    if (index < 0) {
+      return null;
+    } // if
+    V result = chunk.value(index);
+    chunk.delete(index);
+    this.size--;
+
+    if (chunk.count == 0) {
+      unlink(chunk, key);
+    } else if (chunk.count < this.chunkSize / 4) {
+      Chunk<K, V> next = chunk.next[0];
+      if (next != null && chunk.count + next.count <= this.chunkSize * 3 / 4) {
+        unlink(next, next.key(0));
+        chunk.append(next);
+      } // if
+    } // if/else
+    return result;
+  } // remove(K)
+
+  @Override
+  public Iterator<K> keys() {
+    return keyIterator();
+  } // keys()
+
+  /**
+   * Get an iterator for the keys no smaller than from, in order. Finding the first takes
+   * O(log n).
+   */
+  public Iterator<K> keys(K from) {
+    return keyIterator().from(from);
+  } // keys(K)
+
+  @Override
+  public Iterator<V> values() {
+    return new EntryIterator<V>() {
+      @Override
+      V of(Chunk<K, V> chunk, int index) {
+        return chunk.value(index);
+      } // of(Chunk<K, V>, int)
+    };
+  } // values()
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    for (Chunk<K, V> chunk = this.front[0]; chunk != null; chunk = chunk.next[0]) {
+      for (int i = 0; i < chunk.count; i++) {
+        action.accept(chunk.key(i), chunk.value(i));
+      } // for
+    } // for
+  } // forEach(BiConsumer)
+
+  /**
+   * Get the number of chunks.
+   */
+  public int chunks() {
+    int chunks = 0;
+    for (Chunk<K, V> chunk = this.front[0]; chunk != null; chunk = chunk.next[0]) {
+      chunks++;
+    } // for
+    return chunks;
+  } // chunks()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Find the last chunk whose first key is at most key (or null, if key comes before every
+   * chunk). If preds is non-null, also fill it with that chunk's counterpart at each level (null
+   * stands for the front of the list).
+   */
+  Chunk<K, V> search(K key, Chunk<K, V>[] preds) {
+    Chunk<K, V> prev = null;
+    for (int level = this.height - 1; level >= 0; level--) {
+      Chunk<K, V> curr = (prev == null) ? this.front[level] : prev.next[level];
+      while (curr != null && this.comparator.compare(curr.key(0), key) <= 0) {
+        prev = curr;
+        curr = curr.next[level];
+      } // while
+      if (preds != null) {
+        preds[level] = prev;
+      } // if
+    } // for
+    return prev;
+  } // search(K, Chunk<K, V>[])
+
+  /**
+   * Find key in chunk by binary search. Returns its index or, if it is not there,
+   * -(insertion point) - 1.
+   */
+  int indexOf(Chunk<K, V> chunk, K key) {
+    int lo = 0;
+    int hi = chunk.count - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int order = this.comparator.compare(chunk.key(mid), key);
+      if (order < 0) {
+        lo = mid + 1;
+      } else if (order > 0) {
+        hi = mid - 1;
+      } else {
+        return mid;
+      } // if/else
+    } // while
+    return -lo - 1;
+  } // indexOf(Chunk<K, V>, K)
+
+  /**
+   * Move the upper half of a full chunk to a new chunk just after it, and return the new chunk.
+   */
+  Chunk<K, V> split(Chunk<K, V> chunk) {
+    Chunk<K, V> right = new Chunk<K, V>(this.chunkSize, randomHeight());
+    int half = chunk.count / 2;
+    System.arraycopy(chunk.keys, half, right.keys, 0, chunk.count - half);
+    System.arraycopy(chunk.values, half, right.values, 0, chunk.count - half);
+    right.count = chunk.count - half;
+    for (int i = half; i < chunk.count; i++) {
+      chunk.keys[i] = null;
+      chunk.values[i] = null;
+    } // for
+    chunk.count = half;
+    link(right, this.update);
+    return right;
+  } // split(Chunk<K, V>)
+
+  /**
+   * Link a new chunk into each of its levels. preds holds a chunk (or null, for the front) at or
+   * before where it goes at each level, as search leaves it.
+   */
+  void link(Chunk<K, V> chunk, Chunk<K, V>[] preds) {
+    for (int level = 0; level < chunk.next.length; level++) {
+      Chunk<K, V> prev = (level < this.height) ? preds[level] : null;
+      Chunk<K, V> curr = (prev == null) ? this.front[level] : prev.next[level];
+      // An empty chunk is the first; otherwise, step past any chunks that still come before it
+      while (chunk.count > 0 && curr != null
+          && this.comparator.compare(curr.key(0), chunk.key(0)) < 0) {
+        prev = curr;
+        curr = curr.next[level];
+      } // while
+      chunk.next[level] = curr;
+      if (prev == null) {
+        this.front[level] = chunk;
+      } else {
+        prev.next[level] = chunk;
+      } // if/else
+    } // for
+    this.height = Math.max(this.height, chunk.next.length);
+  } // link(Chunk<K, V>, Chunk<K, V>[])
+
+  /**
+   * Unlink a chunk whose first key is (or, if it is now empty, was) firstKey from every level.
+   */
+  void unlink(Chunk<K, V> chunk, K firstKey) {
+    Chunk<K, V> prev = null;
+    for (int level = this.height - 1; level >= 0; level--) {
+      Chunk<K, V> curr = (prev == null) ? this.front[level] : prev.next[level];
+      while (curr != null && curr != chunk
+          && this.comparator.compare(curr.key(0), firstKey) < 0) {
+        prev = curr;
+        curr = curr.next[level];
+      } // while
+      if (curr == chunk) {
+        if (prev == null) {
+          this.front[level] = chunk.next[level];
+        } else {
+          prev.next[level] = chunk.next[level];
+        } // if/else
+      } // if
+    } // for
+    while (this.height > 1 && this.front[this.height - 1] == null) {
+      this.height--;
+    } // while
+  } // unlink(Chunk<K, V>, K)
+
+  /**
+   * Pick a random height for a new chunk.
+   */
+  int randomHeight() {
+    return this.levels.nextLevel(SkipList.DEFAULT_MAX_HEIGHT);
+  } // randomHeight()
+
+  /**
+   * Get an iterator for the keys, starting at the front.
+   */
+  EntryIterator<K> keyIterator() {
+    return new EntryIterator<K>() {
+      @Override
+      K of(Chunk<K, V> chunk, int index) {
+        return chunk.key(index);
+      } // of(Chunk<K, V>, int)
+    };
+  } // keyIterator()
+
+  /**
+   * Create an array of n chunk pointers, all null.
+   */
+  @SuppressWarnings("unchecked")
+  static <K, V> Chunk<K, V>[] newChunkArray(int n) {
+    return (Chunk<K, V>[]) new Chunk<?, ?>[n];
+  } // newChunkArray(int)
+
+  // +---------------+-----------------------------------------------
+  // | Inner classes |
+  // +---------------+
+
+  /**
+   * Walks the entries in order, reporting something about each.
+   */
+  abstract class EntryIterator<T> implements Iterator<T> {
+    /**
+     * The chunk holding the next entry, and its position there.
+     */
+    Chunk<K, V> chunk = UnrolledSkipList.this.front[0];
+    int index = 0;
+
+    /**
+     * Pick what to report for an entry.
+     */
+    abstract T of(Chunk<K, V> chunk, int index);
+
+    /**
+     * Start at the first entry whose key is at least key, rather than at the front.
+     */
+    EntryIterator<T> from(K key) {
+      Chunk<K, V> found = search(key, null);
+      if (found != null) {
+        int i = indexOf(found, key);
+        this.chunk = found;
+        this.index = (i >= 0) ? i : -i - 1;
+        if (this.index == found.count) {
+          this.chunk = found.next[0];
+          this.index = 0;
+        } // if
+      } // if
+      return this;
+    } // from(K)
+
+    @Override
+    public boolean hasNext() {
+      return this.chunk != null;
+    } // hasNext()
+
+    @Override
+    public T next() {
+      if (this.chunk == null) {
+        throw new NoSuchElementException();
+      } // if
+      T result = of(this.chunk, this.index);
+      if (++this.index == this.chunk.count) {
+        this.chunk = this.chunk.next[0];
+        this.index = 0;
+      } // if
+      return result;
+    } // next()
+  } // class EntryIterator
+
+} // class UnrolledSkipList
+
+
+/**
+ * Chunks of entries in the unrolled skip list.
+ */
+class Chunk<K, V> {
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The keys, in order, in the first count slots.
+   */
+  final Object[] keys;
+
+  /**
+   * The values, in the same slots as their keys.
+   */
+  final Object[] values;
+
+  /**
+   * The number of entries.
+   */
+  int count;
+
+  /**
+   * Pointers to the next chunks.
+   */
+  final Chunk<K, V>[] next;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new, empty chunk with room for capacity entries and of height n.
+   */
+  Chunk(int capacity, int n) {
+    this.keys = new Object[capacity];
+    this.values = new Object[capacity];
+    this.next = UnrolledSkipList.newChunkArray(n);
+  } // Chunk(int, int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  @SuppressWarnings("unchecked")
+  K key(int index) {
+    return (K) this.keys[index];
+  } // key(int)
+
+  @SuppressWarnings("unchecked")
+  V value(int index) {
+    return (V) this.values[index];
+  } // value(int)
+
+  /**
+   * Insert an entry at index, shifting the later ones up. There must be room.
+   */
+  void insert(int index, K key, V value) {
+    System.arraycopy(this.keys, index, this.keys, index + 1, this.count - index);
+    System.arraycopy(this.values, index, this.values, index + 1, this.count - index);
+    this.keys[index] = key;
+    this.values[index] = value;
+    this.count++;
+  } // insert(int, K, V)
+
+  /**
+   * Delete the entry at index, shifting the later ones down.
+   */
+  void delete(int index) {
+    System.arraycopy(this.keys, index + 1, this.keys, index, this.count - index - 1);
+    System.arraycopy(this.values, index + 1, this.values, index, this.count - index - 1);
+    this.count--;
+    this.keys[this.count] = null;
+    this.values[this.count] = null;
+  } // delete(int)
+
+  /**
+   * Add the entries of the chunk that follows this one to the end. There must be room.
+   */
+  void append(Chunk<K, V> other) {
+    System.arraycopy(other.keys, 0, this.keys, this.count, other.count);
+    System.arraycopy(other.values, 0, this.values, this.count, other.count);
+    this.count += other.count;
+  } // append(Chunk<K, V>)
+} // Chunk<K, V>
@@ -0,0 +1,122 @@
+import static org.junit.Assert.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Test;
+
+/**
+ * Some tests of the unrolled skip list.
+ */
+public class UnrolledSkipListTests {
+
+  /**
+   * A comparator for integer keys.
+   */
+  static final Comparator<Integer> INTS = (i, j) -> Integer.compare(i, j);
+
+  /**
+   * A random number generator for the randomized tests.
+   */
+  Random random = new Random();
+
+  /**
+   * Check that the chunks are in order, none is empty or overfull, and every level is a sublist
+   * of the one below.
+   */
+  static void assertWellFormed(UnrolledSkipList<Integer, String> list) {
+    int entries = 0;
+    Integer last = null;
+    for (Chunk<Integer, String> chunk = list.front[0]; chunk != null; chunk = chunk.next[0]) {
+      assertTrue(chunk.count > 0 && chunk.count <= list.chunkSize);
+      for (int i = 0; i < chunk.count; i++) {
+        assertTrue(last == null || last < chunk.key(i));
+        last = chunk.key(i);
+      } // for
+      entries += chunk.count;
+    } // for
+    assertEquals(list.size(), entries);
+    for (int level = 1; level < list.height; level++) {
+      Chunk<Integer, String> below = list.front[level - 1];
+      for (Chunk<Integer, String> chunk = list.front[level]; chunk != null;
+          chunk = chunk.next[level]) {
+        while (below != chunk) {
+          below = below.next[level - 1];
+        } // while
+      } // for
+    } // for
+    assertTrue(list.size() == 0 || list.front[list.height - 1] != null);
+  } // assertWellFormed(UnrolledSkipList<Integer, String>)
+
+  /**
+   * Add and remove random keys, checking against a TreeMap as we go, through growth (splits)
+   * and shrinkage (merges) down to empty.
+   */
+  @Test
+  public void randomAgainstTreeMap() {
+    UnrolledSkipList<Integer, String> list = new UnrolledSkipList<Integer, String>(INTS, 8);
+    TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+    for (int i = 0; i < 20000; i++) {
+      int key = random.nextInt(2000) - 1000;
+      // Mostly add for the first half, mostly remove for the second
+      boolean add = random.nextInt(10) < ((i < 10000) ? 7 : 2);
+      if (add) {
+        assertEquals(expected.put(key, "v" + i), list.set(key, "v" + i));
+      } else {
+        assertEquals(expected.remove(key), list.remove(key));
+      } // if/else
+      assertEquals(expected.size(), list.size());
+      if (i % 1000 == 0) {
+        assertWellFormed(list);
+      } // if
+    } // for
+    assertWellFormed(list);
+    for (int key = -1010; key < 1010; key++) {
+      assertEquals(expected.containsKey(key), list.containsKey(key));
+      if (expected.containsKey(key)) {
+        assertEquals(expected.get(key), list.get(key));
+      } // if
+    } // for
+    DurableSkipListTests.assertSame(expected, list);
+    for (int from = -1010; from < 1010; from += 101) {
+      assertEquals(new ArrayList<Integer>(expected.tailMap(from).keySet()),
+          SkipListTests.toList(list.keys(from)));
+    } // for
+    for (Integer key : expected.keySet().toArray(new Integer[0])) {
+      assertEquals(expected.remove(key), list.remove(key));
+    } // for
+    assertEquals(0, list.size());
+    assertEquals(0, list.chunks());
+    assertFalse(list.keys().hasNext());
+  } // randomAgainstTreeMap()
+
+  /**
+   * Ascending inserts fill chunks at least half full, and values iterate in key order.
+   */
+  @Test
+  public void ascendingInsertsFillChunks() {
+    UnrolledSkipList<Integer, String> list = new UnrolledSkipList<Integer, String>(INTS);
+    for (int i = 0; i < 10000; i++) {
+      list.set(i, "v" + i);
+    } // for
+    assertWellFormed(list);
+    assertTrue(list.chunks() <= 10000 / (UnrolledSkipList.DEFAULT_CHUNK_SIZE / 2) + 1);
+    Iterator<String> values = list.values();
+    for (int i = 0; i < 10000; i++) {
+      assertEquals("v" + i, values.next());
+    } // for
+    assertFalse(values.hasNext());
+  } // ascendingInsertsFillChunks()
+
+  /**
+   * Make sure that get on a missing key throws, as it does for SkipList.
+   */
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void getMissing() {
+    UnrolledSkipList<Integer, String> list = new UnrolledSkipList<Integer, String>(INTS);
+    list.set(5, "five");
+    list.get(4);
+  } // getMissing()
+
+} // class UnrolledSkipListTests
@@ -0,0 +1,447 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of the changes to a map. Each record is its length, a CRC-32 of its body,
+ * and the body: an operation (SET or REMOVE), a key and, for SET, a value. A record whose length
+ * or checksum does not match is taken to be the torn end of the log, written as the process died.
+ *
+ * Records are gathered in memory and written out by a flusher thread, so that one fsync covers
+ * every record appended while the previous one was running (group commit). The sync policy says
+ * whether appenders wait for that fsync (ALWAYS), the flusher syncs on a timer and nobody waits
+ * (INTERVAL), or records are written in large chunks by the appenders and synced only by sync()
+ * and close() (NEVER). Thread-safe.
+ */
+public class WriteAheadLog<K, V> implements AutoCloseable {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The operation that sets a key.
+   */
+  static final byte SET = 1;
+
+  /**
+   * The operation that removes a key.
+   */
+  static final byte REMOVE = 2;
+
+  /**
+   * The largest record body we will believe.
+   */
+  static final int MAX_RECORD = 1 << 26;
+
+  /**
+   * How many bytes of records to gather before writing them under the NEVER policy.
+   */
+  static final int CHUNK = 1 << 16;
+
+  /**
+   * When appended records reach the disk.
+   */
+  public enum Sync {
+    /**
+     * Before append returns (with concurrent appends sharing an fsync).
+     */
+    ALWAYS,
+
+    /**
+     * Within the sync interval, without appenders waiting.
+     */
+    INTERVAL,
+
+    /**
+     * Only on sync() or close().
+     */
+    NEVER
+  } // enum Sync
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The log file.
+   */
+  final FileChannel channel;
+
+  final Codec<K> keyCodec;
+  final Codec<V> valueCodec;
+  final Sync sync;
+
+  /**
+   * How often the flusher syncs under the INTERVAL policy.
+   */
+  final long intervalMillis;
+
+  /**
+   * Records appended but not yet handed to the flusher.
+   */
+  ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+  /**
+   * Scratch space for encoding one record body.
+   */
+  final ByteArrayOutputStream body = new ByteArrayOutputStream();
+  final DataOutputStream bodyOut = new DataOutputStream(body);
+  final CRC32 crc = new CRC32();
+
+  /**
+   * The number of records appended so far.
+   */
+  long appended;
+
+  /**
+   * The number of those records known to be on the disk.
+   */
+  long durable;
+
+  /**
+   * The number of bytes in the log.
+   */
+  long bytes;
+
+  /**
+   * The number of times the log has been synced.
+   */
+  long syncs;
+
+  /**
+   * Whether the flusher is writing a batch right now.
+   */
+  boolean flushing;
+
+  /**
+   * The first error the flusher ran into (null if there has been none).
+   */
+  IOException failure;
+
+  boolean closed;
+
+  /**
+   * The thread that writes and syncs batches (null under the NEVER policy).
+   */
+  final Thread flusher;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Open the log in file for appending, creating it if need be. Anything after the first bad
+   * record is cut off first.
+   *
+   * @throws IOException if the file cannot be opened.
+   */
+  public WriteAheadLog(Path file, Codec<K> keyCodec, Codec<V> valueCodec, Sync sync,
+      long intervalMillis) throws IOException {
+    this.keyCodec = keyCodec;
+    this.valueCodec = valueCodec;
+    this.sync = sync;
+    this.intervalMillis = intervalMillis;
+    long valid = Files.exists(file) ? replay(file, keyCodec, valueCodec, null) : 0;
+    this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    this.channel.truncate(valid);
+    this.channel.position(valid);
+    this.bytes = valid;
+    if (sync == Sync.NEVER) {
+      this.flusher = null;
+    } else {
+      this.flusher = new Thread(this::flushLoop, "wal-flusher");
+      this.flusher.setDaemon(true);
+      this.flusher.start();
+    } // if/else
+  } // WriteAheadLog(Path, Codec<K>, Codec<V>, Sync, long)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Append a record and return its number, to pass to await. The record is not yet durable.
+   *
+   * @throws IOException if the log is closed or writing it has failed.
+   */
+  public synchronized long append(byte op, K key, V value) throws IOException {
+    checkUsable();
+    this.body.reset();
+    this.bodyOut.writeByte(op);
+    this.keyCodec.write(key, this.bodyOut);
+    if (op == SET) {
+      this.valueCodec.write(value, this.bodyOut);
+    } // if
+    this.crc.reset();
+    this.crc.update(this.body.toByteArray());
+    DataOutputStream out = new DataOutputStream(this.pending);
+    out.writeInt(this.body.size());
+    out.writeInt((int) this.crc.getValue());
+    this.body.writeTo(out);
+    this.bytes += 8 + this.body.size();
+    this.appended++;
+    if (this.sync == Sync.NEVER && this.pending.size() >= CHUNK) {
+      writeFully(ByteBuffer.wrap(this.pending.toByteArray()));
+      this.pending.reset();
+    } else if (this.sync == Sync.ALWAYS) {
+      notifyAll();
+    } // if/else
+    return this.appended;
+  } // append(byte, K, V)
+
+  /**
+   * Wait until record number seq is on the disk, if the policy says appenders should.
+   *
+   * @throws IOException if writing the log failed or waiting was interrupted.
+   */
+  public synchronized void await(long seq) throws IOException {
+    if (this.sync != Sync.ALWAYS) {
+      return;
+    } // if
+    while (this.durable < seq) {
+      checkUsable();
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted waiting for the log");
+      } // try/catch
+    } // while
+  } // await(long)
+
+  /**
+   * Write out and sync everything appended so far.
+   *
+   * @throws IOException if that fails.
+   */
+  public synchronized void sync() throws IOException {
+    checkUsable();
+    waitForFlusher();
+    writeFully(ByteBuffer.wrap(this.pending.toByteArray()));
+    this.pending.reset();
+    this.channel.force(false);
+    this.syncs++;
+    this.durable = this.appended;
+    notifyAll();
+  } // sync()
+
+  /**
+   * Throw away every record, once the changes they describe have been saved elsewhere (say, in a
+   * checkpoint). Anyone waiting for those records stops waiting.
+   *
+   * @throws IOException if the log cannot be truncated.
+   */
+  public synchronized void reset() throws IOException {
+    checkUsable();
+    waitForFlusher();
+    this.pending.reset();
+    this.channel.truncate(0);
+    this.channel.position(0);
+    this.channel.force(false);
+    this.bytes = 0;
+    this.durable = this.appended;
+    notifyAll();
+  } // reset()
+
+  /**
+   * Get the number of bytes in the log.
+   */
+  public synchronized long size() {
+    return this.bytes;
+  } // size()
+
+  /**
+   * Get the number of times the log has been synced.
+   */
+  public synchronized long syncs() {
+    return this.syncs;
+  } // syncs()
+
+  /**
+   * Sync the log, stop the flusher and close the file.
+   *
+   * @throws IOException if the last sync or the close fails.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      if (this.closed) {
+        return;
+      } // if
+      if (this.failure == null) {
+        sync();
+      } // if
+      this.closed = true;
+      notifyAll();
+    } // synchronized
+    if (this.flusher != null) {
+      try {
+        this.flusher.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } // try/catch
+    } // if
+    this.channel.close();
+  } // close()
+
+  /**
+   * Read the records in file in order, passing each to handler (if it is not null), and return
+   * the length of the good part of the file: everything before the first record that is cut
+   * short or fails its checksum.
+   *
+   * @throws IOException if the file cannot be read.
+   */
+  public static <K, V> long replay(Path file, Codec<K> keyCodec, Codec<V> valueCodec,
+      Handler<K, V> handler) throws IOException {
+    long valid = 0;
+    CRC32 crc = new CRC32();
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+        Files.newInputStream(file), 1 << 16))) {
+      while (true) {
+        byte[] record;
+        try {
+          int length = in.readInt();
+          int checksum = in.readInt();
+          if (length < 1 || length > MAX_RECORD) {
+            break;
+          } // if
+          record = new byte[length];
+          in.readFully(record);
+          crc.reset();
+          crc.update(record);
+          if ((int) crc.getValue() != checksum) {
+            break;
+          } // if
+        } catch (EOFException e) {
+          break;
+        } // try/catch
+        if (handler != null) {
+          DataInputStream body = new DataInputStream(new ByteArrayInputStream(record));
+          byte op = body.readByte();
+          K key = keyCodec.read(body);
+          V value = (op == SET) ? valueCodec.read(body) : null;
+          handler.record(op, key, value);
+        } // if
+        valid += 8 + record.length;
+      } // while
+    } // try
+    return valid;
+  } // replay(Path, Codec<K>, Codec<V>, Handler<K, V>)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Write and sync batches until the log is closed: as soon as there is anything to write under
+   * the ALWAYS policy, and every intervalMillis under INTERVAL.
+   */
+  void flushLoop() {
+    while (true) {
+      byte[] batch;
+      long upTo;
+      synchronized (this) {
+        try {
+          if (this.sync == Sync.INTERVAL && !this.closed) {
+            wait(Math.max(1, this.intervalMillis));
+          } // if
+          while (this.pending.size() == 0 && !this.closed) {
+            wait(this.sync == Sync.INTERVAL ? Math.max(1, this.intervalMillis) : 0);
+          } // while
+        } catch (InterruptedException e) {
+          return;
+        } // try/catch
+        if (this.closed || this.failure != null) {
+          return;
+        } // if
+        batch = this.pending.toByteArray();
+        this.pending = new ByteArrayOutputStream();
+        upTo = this.appended;
+        this.flushing = true;
+      } // synchronized
+
+      // Write and sync outside the lock, so that appends can gather for the next batch
+      IOException error = null;
+      try {
+        writeFully(ByteBuffer.wrap(batch));
+        this.channel.force(false);
+      } catch (IOException e) {
+        error = e;
+      } // try/catch
+
+      synchronized (this) {
+        this.flushing = false;
+        if (error != null) {
+          this.failure = error;
+        } else {
+          this.syncs++;
+          this.durable = Math.max(this.durable, upTo);
+        } // if/else
+        notifyAll();
+      } // synchronized
+    } // while
+  } // flushLoop()
+
+  /**
+   * Wait for the flusher to finish the batch it is writing. Call only while holding the lock.
+   */
+  void waitForFlusher() throws IOException {
+    while (this.flushing) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted waiting for the log");
+      } // try/catch
+    } // while
+    checkUsable();
+  } // waitForFlusher()
+
+  /**
+   * Write all of buffer at the end of the log.
+   */
+  void writeFully(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      this.channel.write(buffer);
+    } // while
+  } // writeFully(ByteBuffer)
+
+  /**
+   * Make sure the log can still be written.
+   *
+   * @throws IOException if it is closed or a write has failed.
+   */
+  void checkUsable() throws IOException {
+    if (this.failure != null) {
+      throw new IOException("Log write failed", this.failure);
+    } // if
+    if (this.closed) {
+      throw new IOException("Log is closed");
+    } // if
+  } // checkUsable()
+
+  // +---------------+-----------------------------------------------
+  // | Inner classes |
+  // +---------------+
+
+  /**
+   * Receives the records read by replay.
+   */
+  @FunctionalInterface
+  public interface Handler<K, V> {
+    void record(byte op, K key, V value) throws IOException;
+  } // interface Handler
+
+} // class WriteAheadLog